@@ -1,36 +1,146 @@
 package UserInterface.ui;
 
-import se.systementor.DatabaseConnect.Database;
+import se.systementor.Audit.AuditLog;
+import se.systementor.DatabaseConnect.DatabaseConfig;
+import se.systementor.DatabaseConnect.Storage;
+import se.systementor.DatabaseConnect.StorageFactory;
+import se.systementor.Events.OrderArchiveHandler;
+import se.systementor.Events.SaleCompleted;
+import se.systementor.Events.SaleEventBus;
+import se.systementor.Events.SalesExportHandler;
+import se.systementor.Events.SalesStatisticsHandler;
+import se.systementor.Events.StockUpdateHandler;
+import se.systementor.PriceLookup.PriceLookupServer;
+import se.systementor.Promotions.AppliedDiscount;
+import se.systementor.Promotions.Basket;
+import se.systementor.Promotions.PromotionEngine;
+import se.systementor.Scanner.Barcode;
+import se.systementor.Scanner.ScanListener;
+import se.systementor.Scanner.ScannerInput;
+import se.systementor.Services.CatalogSync;
+import se.systementor.Services.CheckoutService;
 import se.systementor.Services.OrderDAO;
+import se.systementor.Services.PaymntService;
 import se.systementor.Services.ProductDAO;
+import se.systementor.Services.PromotionDAO;
+import se.systementor.model.CatalogDelta;
 import se.systementor.model.Item;
 
 import javax.swing.*;
 import java.awt.*;
+import java.io.IOException;
 import java.math.BigDecimal;
+import java.net.InetSocketAddress;
+import java.math.RoundingMode;
+import java.nio.file.Paths;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Level;
+import java.util.logging.Logger;
 
 public class CashRegisterGUI {
+    private static final Logger logger = Logger.getLogger(CashRegisterGUI.class.getName());
+    // Longest pause between two characters of one scan; a scanner types far faster than a person
+    private static final long SCAN_MAX_GAP_MILLIS = 30;
+
     private JFrame frame;
     private JPanel categoryPanel;
     private JPanel itemPanel;
     private JTextArea receiptArea;
     private JButton checkoutButton;
+    private JComboBox<String> paymentMethodBox;
     private JButton statisticsButton;
     private JTextField quantityField; // Replaces textField1
     private BigDecimal totalAmount = BigDecimal.ZERO;
     private BigDecimal totalVat = BigDecimal.ZERO;
-    private final Database database = new Database();
     private final List<Item> cartItems = new ArrayList<>();
+    // The cart after promotion discounts, recomputed once per redraw by updateTotals
+    private List<AppliedDiscount> discounts = Collections.emptyList();
+    private BigDecimal netAmount = BigDecimal.ZERO;
+    private BigDecimal netVat = BigDecimal.ZERO;
     private final ProductDAO productDAO;
     private final OrderDAO orderDAO;
+    private final CheckoutService checkoutService;
+    private final Basket basket;
+    private final SaleEventBus saleEvents = new SaleEventBus(1024);
+    private final SalesStatisticsHandler statistics = new SalesStatisticsHandler();
+    // Scanned lines waiting for the event thread, and whether a drain is already scheduled
+    private final Queue<Item> scannedLines = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger rejectedScans = new AtomicInteger();
+    private final AtomicBoolean scanDrainScheduled = new AtomicBoolean();
+    private final ScannerInput scanner = new ScannerInput(new CartScanListener(), SCAN_MAX_GAP_MILLIS);
+    // Product buttons by product id, patched in place by catalog deltas (event thread only)
+    private final Map<Integer, JButton> productButtons = new HashMap<>();
+    private final CatalogSync catalogSync;
+    private PriceLookupServer priceLookupServer;
 
     public CashRegisterGUI() {
-        this.productDAO = new ProductDAO(database);
-        this.orderDAO = new OrderDAO(database);
+        this(StorageFactory.create());
+    }
+
+    public CashRegisterGUI(Storage storage) {
+        this.productDAO = new ProductDAO(storage);
+        this.orderDAO = new OrderDAO(storage);
+        this.checkoutService = new CheckoutService(orderDAO, new PaymntService(storage));
+        this.basket = PromotionEngine.compile(new PromotionDAO(storage).getActivePromotions()).newBasket();
+
+        // Side effects of a sale run on the bus's own threads, never on the event thread
+        saleEvents.addHandler("statistics", statistics);
+        saleEvents.addHandler("stock", new StockUpdateHandler(storage));
+        saleEvents.addHandler("archive", new OrderArchiveHandler(orderDAO));
+        saleEvents.addHandler("export", new SalesExportHandler(
+                Paths.get(DatabaseConfig.load().get("pos.export.file", "sales-export.csv"))));
+        saleEvents.start();
 
         initializeUI();
+        scanner.start();
+
+        catalogSync = new CatalogSync(productDAO, DatabaseConfig.load().getInt("pos.catalog.syncMillis", 5000),
+                delta -> SwingUtilities.invokeLater(() -> applyCatalogDelta(delta)));
+        catalogSync.start();
+        startPriceLookupServer();
+
+        // The window closes with System.exit, which runs this before the daemon threads die
+        Runtime.getRuntime().addShutdownHook(new Thread(this::shutdown, "register-shutdown"));
+    }
+
+    /**
+     * Stops the background work of the register and lets the sale event handlers finish the sales
+     * already published, so no archived line or exported row is lost on exit.
+     */
+    private void shutdown() {
+        if (priceLookupServer != null) {
+            priceLookupServer.stop();
+        }
+        catalogSync.stop();
+        saleEvents.shutdown(5000);
+    }
+
+    /**
+     * Serves price lookups of handhelds and kiosks from the catalog cache kept fresh by the catalog
+     * sync, if a port is configured. The register works without it.
+     */
+    private void startPriceLookupServer() {
+        DatabaseConfig config = DatabaseConfig.load();
+        int port = config.getInt("pos.lookup.port", 0);
+        if (port <= 0) {
+            return;
+        }
+        priceLookupServer = new PriceLookupServer(productDAO,
+                new InetSocketAddress(config.get("pos.lookup.bindAddress", "127.0.0.1"), port));
+        try {
+            priceLookupServer.start();
+        } catch (IOException e) {
+            logger.log(Level.WARNING, "Could not start the price lookup server on port " + port, e);
+            priceLookupServer = null;
+        }
     }
 
     private void initializeUI() {
@@ -58,10 +168,14 @@ public class CashRegisterGUI {
         receiptScrollPane.getViewport().setPreferredSize(new Dimension(400, 400));
         frame.add(receiptScrollPane, BorderLayout.EAST);
 
-        // Checkout button
+        // Payment method and checkout button
+        JPanel checkoutPanel = new JPanel(new BorderLayout());
+        paymentMethodBox = new JComboBox<>(new String[] {"cash", "creditcard", "paypal"});
+        checkoutPanel.add(paymentMethodBox, BorderLayout.WEST);
         checkoutButton = new JButton("Checkout");
         checkoutButton.addActionListener(e -> checkout());
-        frame.add(checkoutButton, BorderLayout.SOUTH);
+        checkoutPanel.add(checkoutButton, BorderLayout.CENTER);
+        frame.add(checkoutPanel, BorderLayout.SOUTH);
 
         // Statistics button
         statisticsButton = new JButton("Statistics");
@@ -76,16 +190,56 @@ public class CashRegisterGUI {
         try {
             List<Item> products = productDAO.getAllProducts();
             for (Item product : products) {
-                JButton productButton = new JButton(product.getName() + " - " + product.getPrice());
-                productButton.addActionListener(e -> addProductToCart(product));
-                categoryPanel.add(productButton);
+                addProductButton(product);
             }
         } catch (Exception e) {
-            e.printStackTrace();
+            logger.log(Level.SEVERE, "Error fetching products", e);
             JOptionPane.showMessageDialog(frame, "Error fetching products: " + e.getMessage(), "Error", JOptionPane.ERROR_MESSAGE);
         }
     }
 
+    private void addProductButton(Item product) {
+        int productId = product.getId();
+        JButton productButton = new JButton(buttonText(product));
+        // Look the product up on click, so a synced price change applies to the next sale
+        productButton.addActionListener(e -> {
+            Item current = productDAO.getProductsByIds(Collections.singletonList(productId)).get(productId);
+            if (current != null) {
+                addProductToCart(current);
+            }
+        });
+        productButtons.put(productId, productButton);
+        categoryPanel.add(productButton);
+    }
+
+    private static String buttonText(Item product) {
+        return product.getName() + " - " + product.getPrice();
+    }
+
+    /**
+     * Patches the product buttons with a catalog delta: changed products get a new label, new
+     * products a new button, and the buttons of removed products go away. Lines already in the
+     * cart keep the price they were added with.
+     */
+    private void applyCatalogDelta(CatalogDelta delta) {
+        for (Item product : delta.getChangedItems()) {
+            JButton button = productButtons.get(product.getId());
+            if (button != null) {
+                button.setText(buttonText(product));
+            } else {
+                addProductButton(product);
+            }
+        }
+        for (Integer productId : delta.getRemovedIds()) {
+            JButton button = productButtons.remove(productId);
+            if (button != null) {
+                categoryPanel.remove(button);
+            }
+        }
+        categoryPanel.revalidate();
+        categoryPanel.repaint();
+    }
+
     private void addProductToCart(Item product) {
         try {
             int quantity = Integer.parseInt(quantityField.getText());
@@ -93,10 +247,7 @@ public class CashRegisterGUI {
                 throw new IllegalArgumentException("Quantity must be greater than zero");
             }
 
-            BigDecimal itemTotal = product.getPrice().multiply(BigDecimal.valueOf(quantity));
-            cartItems.add(new Item(product.getId(), product.getName(), product.getPrice(), product.getVatRate(), product.getCategory(), quantity, product.getBarcode()));
-            totalAmount = totalAmount.add(itemTotal);
-            totalVat = totalVat.add(itemTotal.multiply(product.getVatRate()));
+            addToCart(product, quantity);
             generateReceipt();
         } catch (NumberFormatException e) {
             JOptionPane.showMessageDialog(frame, "Invalid quantity. Please enter a valid number.", "Error", JOptionPane.ERROR_MESSAGE);
@@ -105,7 +256,85 @@ public class CashRegisterGUI {
         }
     }
 
+    /**
+     * Adds a line to the cart and the promotion basket, without redrawing the receipt.
+     */
+    private void addToCart(Item product, int quantity) {
+        BigDecimal itemTotal = product.getPrice().multiply(BigDecimal.valueOf(quantity));
+        cartItems.add(new Item(product.getId(), product.getName(), product.getPrice(), product.getVatRate(), product.getCategory(), quantity, product.getBarcode()));
+        basket.addLine(product, quantity);
+        totalAmount = totalAmount.add(itemTotal);
+        totalVat = totalVat.add(Item.vatOf(itemTotal, product.getVatRate()));
+    }
+
+    /**
+     * Adds all scanned lines queued so far to the cart and redraws the receipt once. Runs on the
+     * event thread; during a burst of scans, all scans that arrive before it runs share one redraw.
+     */
+    private void drainScannedLines() {
+        scanDrainScheduled.set(false);
+        boolean added = false;
+        Item line;
+        while ((line = scannedLines.poll()) != null) {
+            addToCart(line, line.getStockQuantity());
+            added = true;
+        }
+        if (added) {
+            generateReceipt();
+        }
+        if (rejectedScans.getAndSet(0) > 0) {
+            Toolkit.getDefaultToolkit().beep();
+        }
+    }
+
+    private void scheduleScanDrain() {
+        if (scanDrainScheduled.compareAndSet(false, true)) {
+            SwingUtilities.invokeLater(this::drainScannedLines);
+        }
+    }
+
+    /**
+     * Resolves scans to cart lines on the scanner thread. Variable-measure codes become a line of
+     * quantity one priced by the embedded price, or by the embedded weight times the kilo price.
+     */
+    private class CartScanListener implements ScanListener {
+        @Override
+        public void onScan(Barcode barcode) {
+            Item product = productDAO.getProductByBarcode(barcode.getLookupKey());
+            if (product == null) {
+                logger.warning("Unknown barcode: " + barcode);
+                rejectedScans.incrementAndGet();
+                scheduleScanDrain();
+                return;
+            }
+
+            Item line;
+            if (barcode.hasEmbeddedPrice()) {
+                line = new Item(product.getId(), product.getName(), BigDecimal.valueOf(barcode.getEmbeddedPriceCents(), 2),
+                        product.getVatRate(), product.getCategory(), 1, barcode.getCode());
+            } else if (barcode.hasEmbeddedWeight()) {
+                BigDecimal kilos = BigDecimal.valueOf(barcode.getEmbeddedWeightGrams(), 3);
+                line = new Item(product.getId(), product.getName() + " " + kilos + " kg",
+                        product.getPrice().multiply(kilos).setScale(2, RoundingMode.HALF_UP),
+                        product.getVatRate(), product.getCategory(), 1, barcode.getCode());
+            } else {
+                line = new Item(product.getId(), product.getName(), product.getPrice(), product.getVatRate(),
+                        product.getCategory(), 1, product.getBarcode());
+            }
+            scannedLines.add(line);
+            scheduleScanDrain();
+        }
+
+        @Override
+        public void onInvalidScan(String code, String reason) {
+            logger.warning("Rejected scan " + code + ": " + reason);
+            rejectedScans.incrementAndGet();
+            scheduleScanDrain();
+        }
+    }
+
     private void generateReceipt() {
+        updateTotals();
         receiptArea.setText("");
         receiptArea.append(" STEFANS SUPERSHOP\n");
         receiptArea.append("---\n");
@@ -116,34 +345,121 @@ public class CashRegisterGUI {
                     item.getName(), item.getStockQuantity(), item.getPrice(), itemTotal));
         }
 
+        for (AppliedDiscount discount : discounts) {
+            receiptArea.append(String.format("%-20s %17s -%-8.2f\n", discount.getDescription(), "", discount.getAmount()));
+        }
+
         receiptArea.append("---\n");
-        receiptArea.append(String.format("Subtotal: %-8.2f\n", totalAmount));
-        receiptArea.append(String.format("VAT: %-8.2f\n", totalVat));
-        receiptArea.append(String.format("Total: %-8.2f\n", totalAmount.add(totalVat)));
+        receiptArea.append(String.format("Subtotal: %-8.2f\n", netAmount));
+        receiptArea.append(String.format("VAT: %-8.2f\n", netVat));
+        receiptArea.append(String.format("Total: %-8.2f\n", netAmount.add(netVat)));
         receiptArea.append("TACK FÖR DITT KÖP\n");
     }
 
+    /**
+     * Reads the promotion discounts once and derives the cart totals after discounts from them: the
+     * total excluding VAT, and the VAT, which each discount reduces at the rate of the lines it was
+     * granted on. Called whenever the cart changed, before the receipt is redrawn.
+     */
+    private void updateTotals() {
+        discounts = basket.getDiscounts();
+        BigDecimal discountAmount = BigDecimal.ZERO;
+        BigDecimal discountVat = BigDecimal.ZERO;
+        for (AppliedDiscount discount : discounts) {
+            discountAmount = discountAmount.add(discount.getAmount());
+            discountVat = discountVat.add(Item.vatOf(discount.getAmount(), discount.getVatRate()));
+        }
+        netAmount = totalAmount.subtract(discountAmount);
+        netVat = totalVat.subtract(discountVat);
+    }
+
     private void checkout() {
         if (cartItems.isEmpty()) {
             JOptionPane.showMessageDialog(frame, "Cart is empty. Add items before checkout.", "Error", JOptionPane.ERROR_MESSAGE);
             return;
         }
 
-        int orderId = orderDAO.createOrder(totalAmount.doubleValue(), totalVat.doubleValue());
-        if (orderId != -1) {
-            JOptionPane.showMessageDialog(frame, "Order created successfully with ID: " + orderId, "Success", JOptionPane.INFORMATION_MESSAGE);
-            cartItems.clear();
-            totalAmount = BigDecimal.ZERO;
-            totalVat = BigDecimal.ZERO;
-            generateReceipt();
-        } else {
-            JOptionPane.showMessageDialog(frame, "Error creating order", "Error", JOptionPane.ERROR_MESSAGE);
+        // Every audit record of this checkout carries the same correlation id
+        AuditLog.setCurrentCorrelationId(AuditLog.newCorrelationId());
+        try {
+            completeOrder();
+        } finally {
+            AuditLog.setCurrentCorrelationId(null);
+        }
+    }
+
+    /**
+     * Completes the sale with the {@link CheckoutService} and tells the cashier how it went. A declined
+     * payment leaves no order behind, so the cashier can simply try again.
+     */
+    private void completeOrder() {
+        String paymentMethod = (String) paymentMethodBox.getSelectedItem();
+        CheckoutService.Result result = checkoutService.checkout(netAmount, netVat, paymentMethod, discounts);
+        switch (result.getStatus()) {
+            case DECLINED:
+                JOptionPane.showMessageDialog(frame, "Payment declined", "Error", JOptionPane.ERROR_MESSAGE);
+                return;
+            case ORDER_FAILED:
+                JOptionPane.showMessageDialog(frame, "Payment taken but the order could not be saved. Refund the customer.",
+                        "Error", JOptionPane.ERROR_MESSAGE);
+                return;
+            case PAYMENT_NOT_STORED:
+                JOptionPane.showMessageDialog(frame, "The payment of order " + result.getOrderId() + " could not be stored. " +
+                        "It is in the audit log.", "Warning", JOptionPane.WARNING_MESSAGE);
+                break;
+            default:
+                break;
+        }
+        int orderId = result.getOrderId();
+        publishSale(orderId);
+        JOptionPane.showMessageDialog(frame, "Order created successfully with ID: " + orderId, "Success", JOptionPane.INFORMATION_MESSAGE);
+        cartItems.clear();
+        basket.clear();
+        totalAmount = BigDecimal.ZERO;
+        totalVat = BigDecimal.ZERO;
+        generateReceipt();
+    }
+
+    /**
+     * Publishes the completed sale to the event bus. The event slot is filled in place, so this
+     * only costs a few field writes on the event thread.
+     */
+    private void publishSale(int orderId) {
+        long sequence = saleEvents.next();
+        try {
+            SaleCompleted event = saleEvents.get(sequence);
+            event.reset(orderId, System.currentTimeMillis(),
+                    netAmount.movePointRight(2).longValue(), netVat.movePointRight(2).longValue());
+            for (Item item : cartItems) {
+                event.addLine(item.getId(), item.getStockQuantity(), item.getPriceAsLong() * item.getStockQuantity());
+            }
+        } finally {
+            saleEvents.publish(sequence);
         }
     }
 
     private void showStatistics() {
-        // Placeholder for statistics functionality
-        JOptionPane.showMessageDialog(frame, "Statistics feature not implemented yet.", "Info", JOptionPane.INFORMATION_MESSAGE);
+        StringBuilder text = new StringBuilder();
+        text.append(String.format("Orders: %d\n", statistics.getOrderCount()));
+        text.append(String.format("Revenue: %.2f\n", statistics.getRevenue()));
+        text.append(String.format("VAT: %.2f\n", statistics.getVat()));
+        text.append(String.format("Average sale: %.2f\n", statistics.getAverageSale()));
+
+        List<Map.Entry<Integer, Long>> topProducts = statistics.getTopProducts(5);
+        if (!topProducts.isEmpty()) {
+            List<Integer> productIds = new ArrayList<>();
+            for (Map.Entry<Integer, Long> entry : topProducts) {
+                productIds.add(entry.getKey());
+            }
+            Map<Integer, Item> products = productDAO.getProductsByIds(productIds);
+            text.append("\nTop sellers:\n");
+            for (Map.Entry<Integer, Long> entry : topProducts) {
+                Item product = products.get(entry.getKey());
+                text.append(String.format("%-20s %6d\n",
+                        product != null ? product.getName() : "Product #" + entry.getKey(), entry.getValue()));
+            }
+        }
+        JOptionPane.showMessageDialog(frame, text.toString(), "Statistics", JOptionPane.INFORMATION_MESSAGE);
     }
 
     public void run() {
@@ -0,0 +1,382 @@
+package se.systementor.Audit;
+
+import se.systementor.DatabaseConnect.DatabaseConfig;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.locks.LockSupport;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * The AuditLog class keeps a durable trail of payments, orders and failures.
+ *
+ * Recording an event only claims a slot of a pre-allocated ring buffer with one compare-and-set and
+ * fills it in; it never blocks and never touches the disk. A single background thread drains the
+ * buffer and appends one JSON object per line to the audit file, flushing once per batch of records
+ * rather than once per record. When the file grows past its size limit it is rotated:
+ * {@code audit.jsonl} becomes {@code audit.jsonl.1}, {@code .1} becomes {@code .2}, and so on, and
+ * the oldest file is deleted.
+ *
+ * If the writer falls so far behind that the buffer is full, new records are dropped and counted
+ * instead of stalling the checkout; the count is written to the log once there is room again.
+ *
+ * Records of one checkout share a correlation id, from {@link #newCorrelationId()}, which can also be
+ * bound to the current thread with {@link #setCurrentCorrelationId(String)} for code that has no
+ * other way to receive it, such as the storage backends.
+ */
+public class AuditLog {
+    private static final Logger logger = Logger.getLogger(AuditLog.class.getName());
+    private static final long IDLE_PARK_NANOS = TimeUnit.MILLISECONDS.toNanos(1);
+    private static final ThreadLocal<String> CURRENT_CORRELATION_ID = new ThreadLocal<>();
+    private static final String CORRELATION_PREFIX = Long.toString(System.currentTimeMillis(), 36) + "-";
+    private static final AtomicLong CORRELATION_COUNTER = new AtomicLong();
+    private static volatile AuditLog defaultLog;
+
+    public enum Type { PAYMENT, ORDER, FAILURE }
+
+    private final AuditRecord[] slots;
+    private final int mask;
+    // Sequence of the record each slot holds, or -1 while the first one is being written
+    private final AtomicLongArray published;
+    private final AtomicLong claimed = new AtomicLong();
+    private final AtomicLong consumed = new AtomicLong();
+    private final AtomicLong dropped = new AtomicLong();
+
+    private final Path file;
+    private final long maxFileBytes;
+    private final int maxFiles;
+    private final Thread writerThread;
+    private volatile boolean running = true;
+    private BufferedWriter writer;
+    private long fileBytes;
+
+    /**
+     * Creates an audit log and starts its writer thread.
+     *
+     * @param file         The file to append to; rotated files get a numeric suffix.
+     * @param capacity     The number of ring buffer slots, a power of two.
+     * @param maxFileBytes The size after which the file is rotated.
+     * @param maxFiles     The number of rotated files to keep.
+     * @throws IllegalArgumentException if the capacity is not a power of two or a limit is not positive.
+     */
+    public AuditLog(Path file, int capacity, long maxFileBytes, int maxFiles) {
+        if (file == null) {
+            throw new IllegalArgumentException("Audit file cannot be null");
+        }
+        if (capacity <= 0 || Integer.bitCount(capacity) != 1) {
+            throw new IllegalArgumentException("Capacity must be a power of two: " + capacity);
+        }
+        if (maxFileBytes <= 0 || maxFiles <= 0) {
+            throw new IllegalArgumentException("File size and file count limits must be positive");
+        }
+        this.file = file;
+        this.maxFileBytes = maxFileBytes;
+        this.maxFiles = maxFiles;
+        this.mask = capacity - 1;
+        this.slots = new AuditRecord[capacity];
+        this.published = new AtomicLongArray(capacity);
+        for (int i = 0; i < capacity; i++) {
+            slots[i] = new AuditRecord();
+            published.set(i, -1);
+        }
+
+        writerThread = new Thread(this::drain, "audit-writer");
+        writerThread.setDaemon(true);
+        writerThread.start();
+    }
+
+    /**
+     * Returns the audit log of this register, created on first use from the `pos.audit.*` settings
+     * and closed when the JVM exits.
+     */
+    public static AuditLog getDefault() {
+        AuditLog log = defaultLog;
+        if (log == null) {
+            synchronized (AuditLog.class) {
+                log = defaultLog;
+                if (log == null) {
+                    DatabaseConfig config = DatabaseConfig.load();
+                    log = new AuditLog(Paths.get(config.get("pos.audit.file", "audit/audit.jsonl")),
+                            config.getInt("pos.audit.capacity", 8192),
+                            config.getInt("pos.audit.maxFileBytes", 10 * 1024 * 1024),
+                            config.getInt("pos.audit.maxFiles", 5));
+                    AuditLog created = log;
+                    Runtime.getRuntime().addShutdownHook(new Thread(() -> created.close(2000), "audit-shutdown"));
+                    defaultLog = log;
+                }
+            }
+        }
+        return log;
+    }
+
+    /**
+     * Creates a new correlation id, unique within this register.
+     */
+    public static String newCorrelationId() {
+        return CORRELATION_PREFIX + CORRELATION_COUNTER.incrementAndGet();
+    }
+
+    /**
+     * Binds a correlation id to the current thread, or clears it when null.
+     */
+    public static void setCurrentCorrelationId(String correlationId) {
+        if (correlationId == null) {
+            CURRENT_CORRELATION_ID.remove();
+        } else {
+            CURRENT_CORRELATION_ID.set(correlationId);
+        }
+    }
+
+    /**
+     * Returns the correlation id bound to the current thread, or null.
+     */
+    public static String getCurrentCorrelationId() {
+        return CURRENT_CORRELATION_ID.get();
+    }
+
+    /**
+     * Records a payment.
+     *
+     * @param correlationId The correlation id of the checkout.
+     * @param orderId       The ID of the order paid for, or 0.
+     * @param method        The payment method.
+     * @param amountCents   The amount in öre.
+     * @param success       Whether the payment went through.
+     */
+    public void payment(String correlationId, int orderId, String method, long amountCents, boolean success) {
+        record(Type.PAYMENT, correlationId, orderId, amountCents, 0, method, success ? "approved" : "declined", null);
+    }
+
+    /**
+     * Records a created order.
+     *
+     * @param correlationId The correlation id of the checkout.
+     * @param orderId       The ID of the order.
+     * @param totalCents    The order total excluding VAT, in öre.
+     * @param vatCents      The order VAT, in öre.
+     */
+    public void order(String correlationId, int orderId, long totalCents, long vatCents) {
+        record(Type.ORDER, correlationId, orderId, totalCents, vatCents, "created", null, null);
+    }
+
+    /**
+     * Records a failed operation.
+     *
+     * @param correlationId The correlation id, or null if there is none.
+     * @param operation     The operation that failed, like "createOrder".
+     * @param orderId       The ID of the order involved, or 0.
+     * @param error         The cause, or null.
+     */
+    public void failure(String correlationId, String operation, int orderId, Throwable error) {
+        record(Type.FAILURE, correlationId, orderId, 0, 0, operation, null, error);
+    }
+
+    private void record(Type type, String correlationId, int orderId, long amountCents, long vatCents, String name,
+                        String detail, Throwable error) {
+        long sequence;
+        do {
+            sequence = claimed.get();
+            if (sequence - consumed.get() >= slots.length) {
+                dropped.incrementAndGet();
+                return;
+            }
+        } while (!claimed.compareAndSet(sequence, sequence + 1));
+
+        AuditRecord slot = slots[(int) sequence & mask];
+        slot.type = type;
+        slot.timestampMillis = System.currentTimeMillis();
+        slot.correlationId = correlationId;
+        slot.orderId = orderId;
+        slot.amountCents = amountCents;
+        slot.vatCents = vatCents;
+        slot.name = name;
+        slot.detail = detail;
+        slot.error = error;
+        published.lazySet((int) sequence & mask, sequence);
+    }
+
+    /**
+     * Returns the number of records dropped because the buffer was full.
+     */
+    public long getDroppedCount() {
+        return dropped.get();
+    }
+
+    /**
+     * Stops the writer after it has written everything recorded so far.
+     *
+     * @param timeoutMillis How long to wait for the writer.
+     */
+    public void close(long timeoutMillis) {
+        running = false;
+        LockSupport.unpark(writerThread);
+        try {
+            writerThread.join(timeoutMillis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void drain() {
+        StringBuilder line = new StringBuilder(256);
+        long next = 0;
+        long reportedDrops = 0;
+        try {
+            while (true) {
+                boolean stopping = !running;
+                long start = next;
+                while (published.get((int) next & mask) == next) {
+                    AuditRecord slot = slots[(int) next & mask];
+                    line.setLength(0);
+                    format(slot, line);
+                    slot.clear();
+                    next++;
+                    consumed.lazySet(next);
+                    write(line);
+                }
+
+                long drops = dropped.get();
+                if (drops != reportedDrops) {
+                    line.setLength(0);
+                    line.append("{\"ts\":\"").append(Instant.now()).append("\",\"type\":\"DROPPED\",\"count\":")
+                            .append(drops - reportedDrops).append("}");
+                    write(line);
+                    reportedDrops = drops;
+                }
+
+                if (next != start && writer != null) {
+                    writer.flush();
+                } else if (stopping) {
+                    break;
+                } else {
+                    LockSupport.parkNanos(IDLE_PARK_NANOS);
+                }
+            }
+        } catch (IOException e) {
+            logger.log(Level.SEVERE, "Audit log writer failed, audit records are no longer written", e);
+            running = false;
+        } finally {
+            closeWriter();
+        }
+    }
+
+    private void write(StringBuilder line) throws IOException {
+        if (writer == null || fileBytes >= maxFileBytes) {
+            rotate();
+        }
+        line.append('\n');
+        writer.append(line);
+        fileBytes += line.length();
+    }
+
+    private void rotate() throws IOException {
+        if (writer != null) {
+            closeWriter();
+            Files.deleteIfExists(rotated(maxFiles));
+            for (int i = maxFiles - 1; i >= 1; i--) {
+                if (Files.exists(rotated(i))) {
+                    Files.move(rotated(i), rotated(i + 1), StandardCopyOption.REPLACE_EXISTING);
+                }
+            }
+            Files.move(file, rotated(1), StandardCopyOption.REPLACE_EXISTING);
+        } else if (file.getParent() != null) {
+            Files.createDirectories(file.getParent());
+        }
+        writer = Files.newBufferedWriter(file, StandardCharsets.UTF_8,
+                StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+        fileBytes = Files.size(file);
+    }
+
+    private Path rotated(int index) {
+        return file.resolveSibling(file.getFileName() + "." + index);
+    }
+
+    private void closeWriter() {
+        if (writer != null) {
+            try {
+                writer.close();
+            } catch (IOException e) {
+                logger.log(Level.WARNING, "Could not close audit file", e);
+            }
+            writer = null;
+        }
+    }
+
+    private static void format(AuditRecord record, StringBuilder out) {
+        out.append("{\"ts\":\"").append(Instant.ofEpochMilli(record.timestampMillis)).append('"');
+        out.append(",\"type\":\"").append(record.type).append('"');
+        if (record.correlationId != null) {
+            out.append(",\"correlationId\":");
+            appendString(out, record.correlationId);
+        }
+        if (record.orderId != 0) {
+            out.append(",\"orderId\":").append(record.orderId);
+        }
+        if (record.type != Type.FAILURE) {
+            out.append(",\"amountCents\":").append(record.amountCents);
+        }
+        if (record.type == Type.ORDER) {
+            out.append(",\"vatCents\":").append(record.vatCents);
+        }
+        if (record.name != null) {
+            out.append(",\"name\":");
+            appendString(out, record.name);
+        }
+        if (record.detail != null) {
+            out.append(",\"detail\":");
+            appendString(out, record.detail);
+        }
+        if (record.error != null) {
+            out.append(",\"error\":");
+            appendString(out, record.error.toString());
+            StackTraceElement[] trace = record.error.getStackTrace();
+            if (trace.length > 0) {
+                out.append(",\"at\":");
+                appendString(out, trace[0].toString());
+            }
+        }
+        out.append('}');
+    }
+
+    private static void appendString(StringBuilder out, String value) {
+        out.append('"');
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            switch (c) {
+                case '"':
+                    out.append("\\\"");
+                    break;
+                case '\\':
+                    out.append("\\\\");
+                    break;
+                case '\n':
+                    out.append("\\n");
+                    break;
+                case '\r':
+                    out.append("\\r");
+                    break;
+                case '\t':
+                    out.append("\\t");
+                    break;
+                default:
+                    if (c < 0x20) {
+                        out.append(String.format("\\u%04x", (int) c));
+                    } else {
+                        out.append(c);
+                    }
+            }
+        }
+        out.append('"');
+    }
+}
@@ -0,0 +1,25 @@
+package se.systementor.Audit;
+
+/**
+ * One slot of the {@link AuditLog} ring buffer. Slots are allocated once and overwritten in place,
+ * so recording an event allocates nothing on the calling thread.
+ */
+final class AuditRecord {
+    AuditLog.Type type;
+    long timestampMillis;
+    String correlationId;
+    int orderId;
+    long amountCents;
+    // Only set for orders; kept as a primitive so recording an order does not build a string
+    long vatCents;
+    String name;
+    String detail;
+    Throwable error;
+
+    void clear() {
+        correlationId = null;
+        name = null;
+        detail = null;
+        error = null;
+    }
+}
@@ -1,25 +1,107 @@
 package se.systementor.DatabaseConnect;
 
+import se.systementor.Audit.AuditLog;
+import se.systementor.Promotions.AppliedDiscount;
+import se.systementor.Promotions.PromotionRule;
+import se.systementor.model.CatalogDelta;
+import se.systementor.model.CatalogSnapshot;
 import se.systementor.model.Item;
+import se.systementor.model.Order;
+import se.systementor.model.OrderItem;
 import java.math.BigDecimal;
+import java.math.RoundingMode;
 import java.sql.*;
+import java.time.LocalDateTime;
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
 import java.util.logging.Logger;
 
 /**
- * The Database class provides methods for interacting with the POS system's database.
- * It includes functionality for retrieving, inserting, updating, and deleting items in the 'items' table.
- * It also offers the ability to fetch active products with stock quantity greater than zero.
- * This class handles database connections and executes SQL queries for item management within the system.
+ * The Database class is the MySQL implementation of {@link Storage}.
+ * It handles database connections and executes the SQL queries for items, promotions, orders and
+ * order items. The connection settings come from a {@link DatabaseConfig}.
+ *
+ * Writes always go to the primary at `pos.db.url`. Read-only queries are routed to the read replicas
+ * listed in `pos.db.replicas` (comma-separated JDBC URLs, same credentials as the primary), picked
+ * round-robin or least-loaded as set by `pos.db.replicaSelection`. A replica lagging more than
+ * `pos.db.maxReplicaLagSeconds` behind is skipped, and reads fall back to the primary when no replica
+ * is usable. For read-your-writes, reads also go to the primary for `pos.db.readYourWritesMillis`
+ * after this register's last write, so a checkout never reads back stale data of its own.
  */
-public class Database {
+public class Database implements Storage {
     private static final Logger logger = Logger.getLogger(Database.class.getName());
+    // Maximum number of ids bound in a single IN (...) list
+    private static final int ID_CHUNK_SIZE = 500;
+    private static final String ITEM_COLUMNS = "SELECT id, name, price, vat_rate, category, stock_quantity, barcode FROM items";
+    private static final String ORDER_COLUMNS = "SELECT id, receipt_number, order_time, total_price, total_vat FROM orders";
 
-    // Hardcoded database credentials (for development purposes only)
-    private static final String URL = "jdbc:mysql://localhost:3306/pos_system";
-    private static final String USER = "root";
-    private static final String PASSWORD = "Vicky234";
+    private final String url;
+    private final String user;
+    private final String password;
+    private final ReplicaSet.Connector connector;
+    private final ReplicaSet replicas;
+    private final long readYourWritesNanos;
+    private final AtomicLong lastWriteNanos = new AtomicLong();
+    private volatile boolean hasWritten;
+
+    /**
+     * Creates a Database using the configuration from {@link DatabaseConfig#load()}.
+     */
+    public Database() {
+        this(DatabaseConfig.load());
+    }
+
+    /**
+     * Creates a Database using the given configuration.
+     *
+     * @param config The configuration holding the JDBC URL and credentials.
+     */
+    public Database(DatabaseConfig config) {
+        this(config, DriverManager::getConnection, ReplicaSet::readReplicationLag);
+    }
+
+    /**
+     * Creates a Database that opens its connections and reads replica lag through the given functions,
+     * so the connection routing can be tested without MySQL.
+     */
+    Database(DatabaseConfig config, ReplicaSet.Connector connector, ReplicaSet.LagReader lagReader) {
+        this.url = config.getUrl();
+        this.connector = connector;
+        this.user = config.getUser();
+        this.password = config.getPassword();
+
+        List<String> replicaUrls = new ArrayList<>();
+        for (String replicaUrl : config.get("pos.db.replicas", "").split(",")) {
+            if (!replicaUrl.trim().isEmpty()) {
+                replicaUrls.add(replicaUrl.trim());
+            }
+        }
+        String selection = config.get("pos.db.replicaSelection", "round-robin");
+        ReplicaSet.Selection mode;
+        if ("round-robin".equalsIgnoreCase(selection)) {
+            mode = ReplicaSet.Selection.ROUND_ROBIN;
+        } else if ("least-loaded".equalsIgnoreCase(selection)) {
+            mode = ReplicaSet.Selection.LEAST_LOADED;
+        } else {
+            throw new IllegalArgumentException("Unknown replica selection: " + selection);
+        }
+        int maxLagSeconds = config.getInt("pos.db.maxReplicaLagSeconds", 5);
+        if (maxLagSeconds < 0) {
+            throw new IllegalArgumentException("pos.db.maxReplicaLagSeconds cannot be negative");
+        }
+        this.replicas = new ReplicaSet(replicaUrls, user, password, mode, maxLagSeconds, connector, lagReader);
+        // By default, wait out the largest lag a replica may have before reading from it again
+        int readYourWritesMillis = config.getInt("pos.db.readYourWritesMillis", (maxLagSeconds + 1) * 1000);
+        this.readYourWritesNanos = TimeUnit.MILLISECONDS.toNanos(readYourWritesMillis);
+    }
 
     /**
      * Establishes a connection to the database.
@@ -28,7 +110,37 @@ public class Database {
      * @throws SQLException if a database access error occurs.
      */
     public Connection getConnection() throws SQLException {
-        return DriverManager.getConnection(URL, USER, PASSWORD);
+        return connector.open(url, user, password);
+    }
+
+    /**
+     * Establishes a connection for a read-only query: to a read replica if one is usable and this
+     * register has not written recently, otherwise to the primary.
+     *
+     * @return A Connection object.
+     * @throws SQLException if a database access error occurs.
+     */
+    public Connection getReadConnection() throws SQLException {
+        if (!replicas.isEmpty() && !wroteRecently()) {
+            Connection replica = replicas.getConnection();
+            if (replica != null) {
+                return replica;
+            }
+        }
+        return getConnection();
+    }
+
+    /**
+     * Establishes a connection to the primary for a write, and starts the read-your-writes window.
+     */
+    Connection getWriteConnection() throws SQLException {
+        lastWriteNanos.set(System.nanoTime());
+        hasWritten = true;
+        return getConnection();
+    }
+
+    private boolean wroteRecently() {
+        return hasWritten && System.nanoTime() - lastWriteNanos.get() < readYourWritesNanos;
     }
 
     /**
@@ -38,6 +150,7 @@ public class Database {
      * @return true if the item was successfully inserted or updated; false otherwise.
      * @throws IllegalArgumentException if the item is null.
      */
+    @Override
     public boolean insertItem(Item item) {
         if (item == null) {
             throw new IllegalArgumentException("Item cannot be null");
@@ -52,7 +165,7 @@ public class Database {
                 "category = VALUES(category), " +
                 "stock_quantity = VALUES(stock_quantity)";
 
-        try (Connection conn = getConnection();
+        try (Connection conn = getWriteConnection();
              PreparedStatement stmt = conn.prepareStatement(query)) {
             stmt.setString(1, item.getName());
             stmt.setBigDecimal(2, item.getPrice());
@@ -67,5 +180,694 @@ public class Database {
         }
     }
 
-    // Add other CRUD methods with similar improvements...
+    /**
+     * Retrieves a list of all products from the database.
+     *
+     * @return A list of {@link Item} objects representing all products.
+     */
+    @Override
+    public List<Item> getAllProducts() {
+        List<Item> items = new ArrayList<>();
+
+        try (Connection conn = getReadConnection();
+             PreparedStatement stmt = conn.prepareStatement(ITEM_COLUMNS);
+             ResultSet rs = stmt.executeQuery()) {
+
+            while (rs.next()) {
+                items.add(mapItem(rs));
+            }
+        } catch (SQLException e) {
+            logger.log(Level.SEVERE, "Error retrieving products", e);
+        }
+        return items;
+    }
+
+    /**
+     * Retrieves the products with the given ids with one {@code IN (...)} query per chunk of 500 ids.
+     *
+     * @param ids The product ids to look up.
+     * @return A map from product id to {@link Item}; ids that do not exist are absent.
+     */
+    @Override
+    public Map<Integer, Item> getProductsByIds(Collection<Integer> ids) {
+        Map<Integer, Item> result = new HashMap<>();
+        if (ids == null || ids.isEmpty()) {
+            return result;
+        }
+        List<Integer> distinct = new ArrayList<>(new LinkedHashSet<>(ids));
+        distinct.remove(null);
+
+        try (Connection conn = getReadConnection()) {
+            for (int from = 0; from < distinct.size(); from += ID_CHUNK_SIZE) {
+                List<Integer> chunk = distinct.subList(from, Math.min(from + ID_CHUNK_SIZE, distinct.size()));
+                StringBuilder query = new StringBuilder(ITEM_COLUMNS).append(" WHERE id IN (");
+                for (int i = 0; i < chunk.size(); i++) {
+                    query.append(i == 0 ? "?" : ", ?");
+                }
+                query.append(')');
+
+                try (PreparedStatement stmt = conn.prepareStatement(query.toString())) {
+                    for (int i = 0; i < chunk.size(); i++) {
+                        stmt.setInt(i + 1, chunk.get(i));
+                    }
+                    try (ResultSet rs = stmt.executeQuery()) {
+                        while (rs.next()) {
+                            Item item = mapItem(rs);
+                            result.put(item.getId(), item);
+                        }
+                    }
+                }
+            }
+        } catch (SQLException e) {
+            logger.log(Level.SEVERE, "Error retrieving products by id", e);
+        }
+        return result;
+    }
+
+    /**
+     * Changes the stock quantity of an item with a single relative update, so concurrent sales
+     * from several registers do not overwrite each other.
+     *
+     * @param productId The ID of the item.
+     * @param delta The change in stock; negative for sales.
+     * @return true if the item exists and was updated; false otherwise.
+     */
+    @Override
+    public boolean adjustStock(int productId, int delta) {
+        String query = "UPDATE items SET stock_quantity = GREATEST(stock_quantity + ?, 0) WHERE id = ?";
+
+        try (Connection conn = getWriteConnection();
+             PreparedStatement stmt = conn.prepareStatement(query)) {
+            stmt.setInt(1, delta);
+            stmt.setInt(2, productId);
+            return stmt.executeUpdate() > 0;
+        } catch (SQLException e) {
+            logger.severe("Error adjusting stock of item " + productId + ": " + e.getMessage());
+            return false;
+        }
+    }
+
+    /**
+     * Returns the highest version in the `item_changes` table, which triggers on `items` fill with
+     * every catalog change (see {@link SchemaMigrator}). The triggers take versions from the
+     * `catalog_version` sequence row, which stays locked until the change commits, so versions become
+     * visible in order and a reader never sees a version before all lower ones.
+     *
+     * @return The catalog version, or 0 if it cannot be read.
+     */
+    @Override
+    public long getCatalogVersion() {
+        try (Connection conn = getReadConnection();
+             PreparedStatement stmt = conn.prepareStatement("SELECT COALESCE(MAX(version), 0) FROM item_changes");
+             ResultSet rs = stmt.executeQuery()) {
+            return rs.next() ? rs.getLong(1) : 0;
+        } catch (SQLException e) {
+            logger.log(Level.SEVERE, "Error reading catalog version", e);
+            return 0;
+        }
+    }
+
+    /**
+     * Reads the catalog version and all items in one REPEATABLE READ transaction on one connection,
+     * so both come from the same InnoDB snapshot even when the read goes to a replica.
+     */
+    @Override
+    public CatalogSnapshot getCatalogSnapshot() {
+        try (Connection conn = getReadConnection()) {
+            conn.setTransactionIsolation(Connection.TRANSACTION_REPEATABLE_READ);
+            conn.setAutoCommit(false);
+            try {
+                long version;
+                try (PreparedStatement stmt = conn.prepareStatement("SELECT COALESCE(MAX(version), 0) FROM item_changes");
+                     ResultSet rs = stmt.executeQuery()) {
+                    version = rs.next() ? rs.getLong(1) : 0;
+                }
+                List<Item> items = new ArrayList<>();
+                try (PreparedStatement stmt = conn.prepareStatement(ITEM_COLUMNS);
+                     ResultSet rs = stmt.executeQuery()) {
+                    while (rs.next()) {
+                        items.add(mapItem(rs));
+                    }
+                }
+                conn.commit();
+                return new CatalogSnapshot(version, items);
+            } catch (SQLException e) {
+                conn.rollback();
+                throw e;
+            }
+        } catch (SQLException e) {
+            logger.log(Level.SEVERE, "Error reading catalog snapshot", e);
+            return new CatalogSnapshot(0, new ArrayList<>());
+        }
+    }
+
+    /**
+     * Retrieves the catalog changes after a version with one query: the latest change of each item
+     * after the version, joined with the item's current row. An item without a row was deleted.
+     *
+     * @param version The version the caller is up to date with.
+     * @return The changes, or an empty delta at the given version if they cannot be read.
+     */
+    @Override
+    public CatalogDelta getCatalogChangesSince(long version) {
+        String query = "SELECT ch.item_id, ch.version, i.id, i.name, i.price, i.vat_rate, i.category, " +
+                "i.stock_quantity, i.barcode " +
+                "FROM (SELECT item_id, MAX(version) AS version FROM item_changes WHERE version > ? GROUP BY item_id) ch " +
+                "LEFT JOIN items i ON i.id = ch.item_id";
+        List<Item> changed = new ArrayList<>();
+        Set<Integer> removed = new LinkedHashSet<>();
+        long latest = version;
+
+        try (Connection conn = getReadConnection();
+             PreparedStatement stmt = conn.prepareStatement(query)) {
+            stmt.setLong(1, version);
+            try (ResultSet rs = stmt.executeQuery()) {
+                while (rs.next()) {
+                    latest = Math.max(latest, rs.getLong("version"));
+                    rs.getInt("id");
+                    if (rs.wasNull()) {
+                        removed.add(rs.getInt("item_id"));
+                    } else {
+                        changed.add(mapItem(rs));
+                    }
+                }
+            }
+        } catch (SQLException e) {
+            logger.log(Level.SEVERE, "Error retrieving catalog changes since version " + version, e);
+            return new CatalogDelta(version, new ArrayList<>(), new LinkedHashSet<>());
+        }
+        return new CatalogDelta(latest, changed, removed);
+    }
+
+    /**
+     * Retrieves all active promotion rules from the `promotions` table.
+     *
+     * Targeted product ids and categories are stored as comma-separated lists in the
+     * `product_ids` and `categories` columns. Rows that cannot be parsed are skipped and logged.
+     *
+     * @return A list of {@link PromotionRule} objects, empty if none could be loaded.
+     */
+    @Override
+    public List<PromotionRule> getActivePromotions() {
+        List<PromotionRule> rules = new ArrayList<>();
+        String query = "SELECT id, type, description, product_ids, categories, group_size, pay_quantity, percent, bundle_price " +
+                "FROM promotions WHERE active = TRUE ORDER BY id";
+
+        try (Connection conn = getReadConnection();
+             PreparedStatement stmt = conn.prepareStatement(query);
+             ResultSet rs = stmt.executeQuery()) {
+
+            while (rs.next()) {
+                try {
+                    rules.add(mapPromotion(rs));
+                } catch (IllegalArgumentException e) {
+                    logger.warning("Skipping invalid promotion " + rs.getInt("id") + ": " + e.getMessage());
+                }
+            }
+        } catch (SQLException e) {
+            logger.log(Level.SEVERE, "Error retrieving promotions", e);
+        }
+        return rules;
+    }
+
+    /**
+     * Creates a new order in the database and returns the generated order ID.
+     *
+     * This method inserts a new record into the `orders` table, including the total price and total VAT of the order.
+     * The receipt number is taken from the `receipt_number` row of the `sequences` table in the same
+     * transaction: the row stays locked until the order is committed, so receipt numbers are unique
+     * and a failed order does not use one up.
+     *
+     * @param totalPrice The total price of the order.
+     * @param totalVat The total VAT of the order.
+     * @return The generated order ID, or -1 if the operation fails.
+     */
+    @Override
+    public int createOrder(double totalPrice, double totalVat) {
+        int orderId = -1;
+
+        try (Connection conn = getWriteConnection()) {
+            conn.setAutoCommit(false);
+            try {
+                int receiptNumber = nextReceiptNumber(conn);
+                try (PreparedStatement stmt = conn.prepareStatement(
+                        "INSERT INTO orders (receipt_number, total_price, total_vat) VALUES (?, ?, ?)",
+                        Statement.RETURN_GENERATED_KEYS)) {
+                    stmt.setInt(1, receiptNumber);
+                    stmt.setDouble(2, totalPrice);
+                    stmt.setDouble(3, totalVat);
+                    stmt.executeUpdate();
+
+                    // Get the generated order ID
+                    try (ResultSet rs = stmt.getGeneratedKeys()) {
+                        if (rs.next()) {
+                            orderId = rs.getInt(1);
+                        }
+                    }
+                }
+                conn.commit();
+            } catch (SQLException e) {
+                orderId = -1;
+                conn.rollback();
+                throw e;
+            }
+        } catch (SQLException e) {
+            logger.log(Level.SEVERE, "Failed to create order", e);
+            AuditLog.getDefault().failure(AuditLog.getCurrentCorrelationId(), "createOrder", 0, e);
+        }
+        return orderId;
+    }
+
+    /**
+     * Takes the next receipt number. The update locks the sequence row until the caller's transaction
+     * ends; LAST_INSERT_ID(expr) hands the new value back on this connection without a second read.
+     */
+    private int nextReceiptNumber(Connection conn) throws SQLException {
+        try (Statement stmt = conn.createStatement()) {
+            int updated = stmt.executeUpdate(
+                    "UPDATE sequences SET next_value = LAST_INSERT_ID(next_value + 1) WHERE name = 'receipt_number'");
+            if (updated != 1) {
+                throw new SQLException("Sequence receipt_number is missing; run the schema migration");
+            }
+            try (ResultSet rs = stmt.executeQuery("SELECT LAST_INSERT_ID() - 1")) {
+                rs.next();
+                return rs.getInt(1);
+            }
+        }
+    }
+
+    /**
+     * Adds an item to an existing order in the database.
+     *
+     * This method inserts a new record into the `order_items` table, associating a product with a specific order.
+     * It records the order ID, product ID, quantity, and subtotal for the item.
+     *
+     * @param orderId The ID of the order to which the item will be added.
+     * @param productId The ID of the product being added.
+     * @param quantity The quantity of the product being ordered.
+     * @param subtotal The subtotal for the item (price * quantity).
+     */
+    @Override
+    public void addOrderItem(int orderId, int productId, int quantity, double subtotal) {
+        String query = "INSERT INTO order_items (order_id, product_id, quantity, subtotal) VALUES (?, ?, ?, ?)";
+
+        try (Connection conn = getWriteConnection();
+             PreparedStatement stmt = conn.prepareStatement(query)) {
+            stmt.setInt(1, orderId);
+            stmt.setInt(2, productId);
+            stmt.setInt(3, quantity);
+            stmt.setDouble(4, subtotal);
+            stmt.executeUpdate();
+        } catch (SQLException e) {
+            logger.log(Level.SEVERE, "Failed to add item to order " + orderId, e);
+            AuditLog.getDefault().failure(AuditLog.getCurrentCorrelationId(), "addOrderItem", orderId, e);
+        }
+    }
+
+    /**
+     * Adds order items with multi-row INSERTs of up to 500 rows, on one connection and in one
+     * transaction, so a batch of sales costs one round trip per 500 lines and is stored completely
+     * or not at all.
+     */
+    @Override
+    public boolean addOrderItems(List<OrderItem> items) {
+        if (items == null || items.isEmpty()) {
+            return true;
+        }
+        try (Connection conn = getWriteConnection()) {
+            conn.setAutoCommit(false);
+            try {
+                for (int from = 0; from < items.size(); from += ID_CHUNK_SIZE) {
+                    List<OrderItem> chunk = items.subList(from, Math.min(from + ID_CHUNK_SIZE, items.size()));
+                    StringBuilder query = new StringBuilder("INSERT INTO order_items (order_id, product_id, quantity, subtotal) VALUES ");
+                    for (int i = 0; i < chunk.size(); i++) {
+                        query.append(i == 0 ? "(?, ?, ?, ?)" : ", (?, ?, ?, ?)");
+                    }
+                    try (PreparedStatement stmt = conn.prepareStatement(query.toString())) {
+                        int parameter = 1;
+                        for (OrderItem item : chunk) {
+                            stmt.setInt(parameter++, item.getOrderId());
+                            stmt.setInt(parameter++, item.getProductId());
+                            stmt.setInt(parameter++, item.getQuantity());
+                            stmt.setBigDecimal(parameter++, item.getSubtotal());
+                        }
+                        stmt.executeUpdate();
+                    }
+                }
+                conn.commit();
+                return true;
+            } catch (SQLException e) {
+                conn.rollback();
+                throw e;
+            }
+        } catch (SQLException e) {
+            logger.log(Level.SEVERE, "Failed to add " + items.size() + " order items", e);
+            AuditLog.getDefault().failure(AuditLog.getCurrentCorrelationId(), "addOrderItems", items.get(0).getOrderId(), e);
+            return false;
+        }
+    }
+
+    /**
+     * Stores the discounts of an order with one multi-row INSERT into `order_discounts`.
+     */
+    @Override
+    public boolean addOrderDiscounts(int orderId, List<AppliedDiscount> discounts) {
+        if (discounts == null || discounts.isEmpty()) {
+            return true;
+        }
+        StringBuilder query = new StringBuilder("INSERT INTO order_discounts (order_id, position, promotion_id, description, amount, vat_rate) VALUES ");
+        for (int i = 0; i < discounts.size(); i++) {
+            query.append(i == 0 ? "(?, ?, ?, ?, ?, ?)" : ", (?, ?, ?, ?, ?, ?)");
+        }
+
+        try (Connection conn = getWriteConnection();
+             PreparedStatement stmt = conn.prepareStatement(query.toString())) {
+            int parameter = 1;
+            for (int i = 0; i < discounts.size(); i++) {
+                AppliedDiscount discount = discounts.get(i);
+                stmt.setInt(parameter++, orderId);
+                stmt.setInt(parameter++, i);
+                stmt.setInt(parameter++, discount.getPromotionId());
+                stmt.setString(parameter++, discount.getDescription());
+                stmt.setBigDecimal(parameter++, discount.getAmount());
+                stmt.setBigDecimal(parameter++, discount.getVatRate());
+            }
+            return stmt.executeUpdate() == discounts.size();
+        } catch (SQLException e) {
+            logger.log(Level.SEVERE, "Failed to add discounts to order " + orderId, e);
+            AuditLog.getDefault().failure(AuditLog.getCurrentCorrelationId(), "addOrderDiscounts", orderId, e);
+            return false;
+        }
+    }
+
+    @Override
+    public List<AppliedDiscount> getOrderDiscounts(int orderId) {
+        List<AppliedDiscount> discounts = new ArrayList<>();
+        String query = "SELECT promotion_id, description, amount, vat_rate FROM order_discounts " +
+                "WHERE order_id = ? ORDER BY position";
+
+        try (Connection conn = getReadConnection();
+             PreparedStatement stmt = conn.prepareStatement(query)) {
+            stmt.setInt(1, orderId);
+            try (ResultSet rs = stmt.executeQuery()) {
+                while (rs.next()) {
+                    discounts.add(new AppliedDiscount(rs.getInt("promotion_id"), rs.getString("description"),
+                            rs.getBigDecimal("amount"), rs.getBigDecimal("vat_rate")));
+                }
+            }
+        } catch (SQLException e) {
+            logger.log(Level.SEVERE, "Error retrieving discounts of order " + orderId, e);
+        }
+        return discounts;
+    }
+
+    @Override
+    public Order getOrder(int orderId) {
+        try (Connection conn = getReadConnection();
+             PreparedStatement stmt = conn.prepareStatement(ORDER_COLUMNS + " WHERE id = ?")) {
+            stmt.setInt(1, orderId);
+            try (ResultSet rs = stmt.executeQuery()) {
+                return rs.next() ? mapOrder(rs) : null;
+            }
+        } catch (SQLException e) {
+            logger.log(Level.SEVERE, "Error loading order " + orderId, e);
+            return null;
+        }
+    }
+
+    /**
+     * Retrieves one page of the orders placed in a time range, oldest first.
+     *
+     * Pages are read with keyset (seek) pagination on (`order_time`, `id`) instead of OFFSET. The cursor
+     * order's time is resolved with a primary key lookup, and the page query then seeks directly to that
+     * position in the `order_time` index, so a late page costs the same as the first.
+     */
+    @Override
+    public List<Order> getOrdersBetween(LocalDateTime from, LocalDateTime to, int afterId, int limit) {
+        List<Order> orders = new ArrayList<>();
+        try (Connection conn = getReadConnection()) {
+            if (afterId <= 0) {
+                String query = ORDER_COLUMNS + " WHERE order_time >= ? AND order_time < ? ORDER BY order_time, id LIMIT ?";
+                try (PreparedStatement stmt = conn.prepareStatement(query)) {
+                    stmt.setTimestamp(1, Timestamp.valueOf(from));
+                    stmt.setTimestamp(2, Timestamp.valueOf(to));
+                    stmt.setInt(3, limit);
+                    readOrders(stmt, orders);
+                }
+                return orders;
+            }
+
+            // Resolve the cursor's position in the (order_time, id) order with a primary key lookup
+            Timestamp cursorTime = null;
+            try (PreparedStatement stmt = conn.prepareStatement("SELECT order_time FROM orders WHERE id = ?")) {
+                stmt.setInt(1, afterId);
+                try (ResultSet rs = stmt.executeQuery()) {
+                    if (rs.next()) {
+                        cursorTime = rs.getTimestamp("order_time");
+                    }
+                }
+            }
+            if (cursorTime == null) {
+                logger.warning("Unknown pagination cursor: order " + afterId);
+                return orders;
+            }
+
+            Timestamp lower = cursorTime.after(Timestamp.valueOf(from)) ? cursorTime : Timestamp.valueOf(from);
+            String query = ORDER_COLUMNS + " WHERE order_time >= ? AND order_time < ? AND (order_time > ? OR id > ?) " +
+                    "ORDER BY order_time, id LIMIT ?";
+            try (PreparedStatement stmt = conn.prepareStatement(query)) {
+                stmt.setTimestamp(1, lower);
+                stmt.setTimestamp(2, Timestamp.valueOf(to));
+                stmt.setTimestamp(3, cursorTime);
+                stmt.setInt(4, afterId);
+                stmt.setInt(5, limit);
+                readOrders(stmt, orders);
+            }
+        } catch (SQLException e) {
+            logger.log(Level.SEVERE, "Error retrieving orders between " + from + " and " + to, e);
+        }
+        return orders;
+    }
+
+    @Override
+    public Order getOrderByReceiptNumber(int receiptNumber) {
+        try (Connection conn = getReadConnection();
+             PreparedStatement stmt = conn.prepareStatement(ORDER_COLUMNS + " WHERE receipt_number = ?")) {
+            stmt.setInt(1, receiptNumber);
+            try (ResultSet rs = stmt.executeQuery()) {
+                return rs.next() ? mapOrder(rs) : null;
+            }
+        } catch (SQLException e) {
+            logger.log(Level.SEVERE, "Error retrieving order with receipt number " + receiptNumber, e);
+            return null;
+        }
+    }
+
+    /**
+     * Retrieves the lines of an order, with product names and VAT rates joined from the `items` table.
+     */
+    @Override
+    public List<OrderItem> getOrderItems(int orderId) {
+        List<OrderItem> orderItems = new ArrayList<>();
+        String query = "SELECT oi.order_id, oi.product_id, i.name, oi.quantity, oi.subtotal, i.vat_rate " +
+                "FROM order_items oi LEFT JOIN items i ON i.id = oi.product_id " +
+                "WHERE oi.order_id = ? ORDER BY oi.id";
+
+        try (Connection conn = getReadConnection();
+             PreparedStatement stmt = conn.prepareStatement(query)) {
+            stmt.setInt(1, orderId);
+            try (ResultSet rs = stmt.executeQuery()) {
+                while (rs.next()) {
+                    int productId = rs.getInt("product_id");
+                    String name = rs.getString("name");
+                    BigDecimal vatRate = rs.getBigDecimal("vat_rate");
+                    orderItems.add(new OrderItem(
+                            rs.getInt("order_id"),
+                            productId,
+                            name != null ? name : "Product #" + productId,
+                            rs.getInt("quantity"),
+                            rs.getBigDecimal("subtotal"),
+                            vatRate != null ? vatRate : BigDecimal.ZERO
+                    ));
+                }
+            }
+        } catch (SQLException e) {
+            logger.log(Level.SEVERE, "Error retrieving items of order " + orderId, e);
+        }
+        return orderItems;
+    }
+
+    /**
+     * Records a payment in the `payments` table.
+     */
+    @Override
+    public boolean recordPayment(int orderId, String correlationId, String method, double amount, boolean success) {
+        String query = "INSERT INTO payments (order_id, correlation_id, method, amount, success) VALUES (?, ?, ?, ?, ?)";
+
+        try (Connection conn = getWriteConnection();
+             PreparedStatement stmt = conn.prepareStatement(query)) {
+            if (orderId > 0) {
+                stmt.setInt(1, orderId);
+            } else {
+                stmt.setNull(1, Types.INTEGER);
+            }
+            stmt.setString(2, correlationId);
+            stmt.setString(3, method);
+            stmt.setBigDecimal(4, BigDecimal.valueOf(amount).setScale(2, RoundingMode.HALF_UP));
+            stmt.setBoolean(5, success);
+            return stmt.executeUpdate() > 0;
+        } catch (SQLException e) {
+            logger.log(Level.SEVERE, "Failed to record payment for order " + orderId, e);
+            AuditLog.getDefault().failure(correlationId, "recordPayment", orderId, e);
+            return false;
+        }
+    }
+
+    /**
+     * Streams the order totals of a time range with one streaming query on the `order_time` index.
+     */
+    @Override
+    public boolean streamOrderTotals(LocalDateTime from, LocalDateTime to, OrderTotalConsumer consumer) {
+        String query = "SELECT id, CAST(ROUND((total_price + total_vat) * 100) AS SIGNED) FROM orders " +
+                "WHERE order_time >= ? AND order_time < ?";
+
+        try (Connection conn = getReadConnection();
+             PreparedStatement stmt = conn.prepareStatement(query, ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY)) {
+            stmt.setFetchSize(Integer.MIN_VALUE);
+            stmt.setTimestamp(1, Timestamp.valueOf(from));
+            stmt.setTimestamp(2, Timestamp.valueOf(to));
+            try (ResultSet rs = stmt.executeQuery()) {
+                while (rs.next()) {
+                    consumer.accept(rs.getInt(1), rs.getLong(2));
+                }
+            }
+            return true;
+        } catch (SQLException e) {
+            logger.log(Level.SEVERE, "Error streaming orders between " + from + " and " + to, e);
+            return false;
+        }
+    }
+
+    /**
+     * Streams the successful payments of a time range with one streaming query on the `paid_at` index.
+     */
+    @Override
+    public boolean streamPayments(LocalDateTime from, LocalDateTime to, PaymentConsumer consumer) {
+        String query = "SELECT id, COALESCE(order_id, 0), CAST(ROUND(amount * 100) AS SIGNED) FROM payments " +
+                "WHERE paid_at >= ? AND paid_at < ? AND success = TRUE";
+
+        try (Connection conn = getReadConnection();
+             PreparedStatement stmt = conn.prepareStatement(query, ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY)) {
+            stmt.setFetchSize(Integer.MIN_VALUE);
+            stmt.setTimestamp(1, Timestamp.valueOf(from));
+            stmt.setTimestamp(2, Timestamp.valueOf(to));
+            try (ResultSet rs = stmt.executeQuery()) {
+                while (rs.next()) {
+                    consumer.accept(rs.getLong(1), rs.getInt(2), rs.getLong(3));
+                }
+            }
+            return true;
+        } catch (SQLException e) {
+            logger.log(Level.SEVERE, "Error streaming payments between " + from + " and " + to, e);
+            return false;
+        }
+    }
+
+    /**
+     * Streams the sales history of a product range with one query. The driver is asked to stream the
+     * rows (a fetch size of {@code Integer.MIN_VALUE} makes MySQL Connector/J read them one at a time)
+     * instead of buffering the whole result, and the range is served by the
+     * `order_items (product_id, order_id)` index.
+     */
+    @Override
+    public boolean streamSalesHistory(LocalDateTime from, LocalDateTime to, int fromProductId, int toProductId,
+                                      SalesLineConsumer consumer) {
+        String query = "SELECT oi.product_id, o.order_time, oi.quantity " +
+                "FROM order_items oi JOIN orders o ON o.id = oi.order_id " +
+                "WHERE oi.product_id >= ? AND oi.product_id < ? AND o.order_time >= ? AND o.order_time < ?";
+
+        try (Connection conn = getReadConnection();
+             PreparedStatement stmt = conn.prepareStatement(query, ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY)) {
+            stmt.setFetchSize(Integer.MIN_VALUE);
+            stmt.setInt(1, fromProductId);
+            stmt.setInt(2, toProductId);
+            stmt.setTimestamp(3, Timestamp.valueOf(from));
+            stmt.setTimestamp(4, Timestamp.valueOf(to));
+            try (ResultSet rs = stmt.executeQuery()) {
+                while (rs.next()) {
+                    consumer.accept(rs.getInt(1), rs.getTimestamp(2).getTime(), rs.getInt(3));
+                }
+            }
+            return true;
+        } catch (SQLException e) {
+            logger.log(Level.SEVERE, "Error streaming sales history of products " + fromProductId + " to " + toProductId, e);
+            return false;
+        }
+    }
+
+    private void readOrders(PreparedStatement stmt, List<Order> orders) throws SQLException {
+        try (ResultSet rs = stmt.executeQuery()) {
+            while (rs.next()) {
+                orders.add(mapOrder(rs));
+            }
+        }
+    }
+
+    private Item mapItem(ResultSet rs) throws SQLException {
+        return new Item(
+                rs.getInt("id"),
+                rs.getString("name"),
+                rs.getBigDecimal("price"),
+                rs.getBigDecimal("vat_rate"),
+                rs.getString("category"),
+                rs.getInt("stock_quantity"),
+                rs.getString("barcode")
+        );
+    }
+
+    private Order mapOrder(ResultSet rs) throws SQLException {
+        return new Order(
+                rs.getInt("id"),
+                rs.getInt("receipt_number"),
+                rs.getTimestamp("order_time").toLocalDateTime(),
+                rs.getBigDecimal("total_price"),
+                rs.getBigDecimal("total_vat")
+        );
+    }
+
+    private PromotionRule mapPromotion(ResultSet rs) throws SQLException {
+        int id = rs.getInt("id");
+        String description = rs.getString("description");
+        Set<Integer> productIds = new LinkedHashSet<>();
+        for (String token : split(rs.getString("product_ids"))) {
+            productIds.add(Integer.parseInt(token));
+        }
+        Set<String> categories = new LinkedHashSet<>(split(rs.getString("categories")));
+
+        PromotionRule.Type type = PromotionRule.Type.valueOf(rs.getString("type"));
+        switch (type) {
+            case MULTI_BUY:
+                return PromotionRule.multiBuy(id, description, productIds, categories,
+                        rs.getInt("group_size"), rs.getInt("pay_quantity"));
+            case PERCENT_DISCOUNT:
+                return PromotionRule.percentDiscount(id, description, productIds, categories, rs.getBigDecimal("percent"));
+            case MIX_AND_MATCH:
+                return PromotionRule.mixAndMatch(id, description, productIds, categories,
+                        rs.getInt("group_size"), rs.getBigDecimal("bundle_price"));
+            default:
+                throw new IllegalArgumentException("Unsupported promotion type: " + type);
+        }
+    }
+
+    private static List<String> split(String value) {
+        List<String> tokens = new ArrayList<>();
+        if (value != null) {
+            for (String token : value.split(",")) {
+                if (!token.trim().isEmpty()) {
+                    tokens.add(token.trim());
+                }
+            }
+        }
+        return tokens;
+    }
 }
\ No newline at end of file
@@ -0,0 +1,115 @@
+package se.systementor.DatabaseConnect;
+
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Properties;
+import java.util.logging.Logger;
+
+/**
+ * The DatabaseConfig class holds the storage configuration of a register.
+ *
+ * Settings are read from `pos.properties` on the classpath, then from the file named by the
+ * `pos.config` system property (if any), and finally from `pos.*` system properties, each source
+ * overriding the previous one. This lets a register be pointed at another database, or run fully
+ * in memory, without rebuilding.
+ */
+public class DatabaseConfig {
+    private static final Logger logger = Logger.getLogger(DatabaseConfig.class.getName());
+    private static final String RESOURCE = "/pos.properties";
+
+    /** Storage backed by MySQL through {@link Database}. */
+    public static final String STORAGE_MYSQL = "mysql";
+    /** Storage kept in memory by {@link InMemoryStorage}. */
+    public static final String STORAGE_MEMORY = "memory";
+
+    private final Properties properties;
+
+    public DatabaseConfig(Properties properties) {
+        this.properties = new Properties();
+        this.properties.putAll(properties);
+    }
+
+    /**
+     * Loads the configuration from the classpath, the optional `pos.config` file and system properties.
+     *
+     * @return The merged configuration.
+     */
+    public static DatabaseConfig load() {
+        Properties properties = new Properties();
+        try (InputStream in = DatabaseConfig.class.getResourceAsStream(RESOURCE)) {
+            if (in != null) {
+                properties.load(in);
+            }
+        } catch (IOException e) {
+            logger.warning("Could not read " + RESOURCE + ": " + e.getMessage());
+        }
+
+        String file = System.getProperty("pos.config");
+        if (file != null) {
+            try (InputStream in = new FileInputStream(file)) {
+                properties.load(in);
+            } catch (IOException e) {
+                logger.warning("Could not read " + file + ": " + e.getMessage());
+            }
+        }
+
+        for (String name : System.getProperties().stringPropertyNames()) {
+            if (name.startsWith("pos.")) {
+                properties.setProperty(name, System.getProperty(name));
+            }
+        }
+        return new DatabaseConfig(properties);
+    }
+
+    /**
+     * Returns a copy of this configuration with one setting changed.
+     */
+    public DatabaseConfig with(String name, String value) {
+        Properties copy = new Properties();
+        copy.putAll(properties);
+        copy.setProperty(name, value);
+        return new DatabaseConfig(copy);
+    }
+
+    public String get(String name, String defaultValue) {
+        return properties.getProperty(name, defaultValue);
+    }
+
+    public int getInt(String name, int defaultValue) {
+        String value = properties.getProperty(name);
+        if (value == null || value.trim().isEmpty()) {
+            return defaultValue;
+        }
+        try {
+            return Integer.parseInt(value.trim());
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Invalid integer for " + name + ": " + value);
+        }
+    }
+
+    public String getStorage() {
+        return get("pos.storage", STORAGE_MYSQL);
+    }
+
+    public String getUrl() {
+        return get("pos.db.url", "jdbc:mysql://localhost:3306/pos_system");
+    }
+
+    public String getUser() {
+        return get("pos.db.user", "root");
+    }
+
+    public String getPassword() {
+        return get("pos.db.password", "");
+    }
+
+    @Override
+    public String toString() {
+        return "DatabaseConfig{" +
+                "storage=" + getStorage() +
+                ", url='" + getUrl() + '\'' +
+                ", user='" + getUser() + '\'' +
+                '}';
+    }
+}
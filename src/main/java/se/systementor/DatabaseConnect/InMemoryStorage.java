@@ -0,0 +1,403 @@
+package se.systementor.DatabaseConnect;
+
+import se.systementor.Promotions.AppliedDiscount;
+import se.systementor.Promotions.PromotionRule;
+import se.systementor.model.CatalogDelta;
+import se.systementor.model.CatalogSnapshot;
+import se.systementor.model.Item;
+import se.systementor.model.Order;
+import se.systementor.model.OrderItem;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Logger;
+
+/**
+ * The InMemoryStorage class is a {@link Storage} that keeps everything in concurrent in-memory
+ * structures. It needs no database and runs at memory speed, which makes it suitable for demo mode,
+ * benchmarks and load simulation.
+ *
+ * Items live in a lock-free map with a barcode index that gives {@link #insertItem} the same upsert
+ * semantics as the unique barcode key in MySQL. Every catalog change takes the next catalog version;
+ * only the latest version of each item is kept, so a delta holds each changed item once. Orders are append-only: an order is never changed after
+ * {@link #createOrder}, and its lines are appended to a per-order queue. Orders are indexed by ID, by
+ * receipt number and by (order time, ID) so that history pages can seek like the MySQL queries do.
+ * Sales are also indexed by product, so the sales history of a product range is read without going
+ * through the orders of other products.
+ *
+ * Items are copied on the way in and out, because {@link Item} is mutable.
+ */
+public class InMemoryStorage implements Storage {
+    private static final Logger logger = Logger.getLogger(InMemoryStorage.class.getName());
+
+    private final Map<Integer, Item> items = new ConcurrentHashMap<>();
+    private final Map<String, Integer> itemIdsByBarcode = new ConcurrentHashMap<>();
+    private final AtomicInteger nextItemId = new AtomicInteger(1);
+    // Catalog writes and delta reads are serialized, so a delta never skips a version still being written
+    private final Object catalogLock = new Object();
+    private final NavigableMap<Long, Integer> itemIdsByVersion = new ConcurrentSkipListMap<>();
+    private final Map<Integer, Long> versionsByItemId = new HashMap<>();
+    private long catalogVersion;
+
+    private final List<PromotionRule> promotions = new CopyOnWriteArrayList<>();
+
+    private final Map<Integer, Order> ordersById = new ConcurrentHashMap<>();
+    private final Map<Integer, Integer> orderIdsByReceiptNumber = new ConcurrentHashMap<>();
+    private final NavigableMap<OrderKey, Order> ordersByTime = new ConcurrentSkipListMap<>();
+    private final Map<Integer, Queue<OrderLine>> orderLines = new ConcurrentHashMap<>();
+    private final Map<Integer, List<AppliedDiscount>> orderDiscounts = new ConcurrentHashMap<>();
+    private final AtomicInteger nextOrderId = new AtomicInteger(1);
+    // Sales per product, for the sales history of a product range
+    private final NavigableMap<Integer, Queue<Sale>> salesByProduct = new ConcurrentSkipListMap<>();
+
+    private final Queue<PaymentRecord> payments = new ConcurrentLinkedQueue<>();
+    private final AtomicLong nextPaymentId = new AtomicLong(1);
+
+    @Override
+    public List<Item> getAllProducts() {
+        List<Item> result = new ArrayList<>(items.size());
+        for (Item item : items.values()) {
+            result.add(copy(item));
+        }
+        return result;
+    }
+
+    @Override
+    public Map<Integer, Item> getProductsByIds(Collection<Integer> ids) {
+        Map<Integer, Item> result = new HashMap<>();
+        if (ids != null) {
+            for (Integer id : ids) {
+                Item item = id == null ? null : items.get(id);
+                if (item != null) {
+                    result.put(id, copy(item));
+                }
+            }
+        }
+        return result;
+    }
+
+    @Override
+    public boolean insertItem(Item item) {
+        if (item == null) {
+            throw new IllegalArgumentException("Item cannot be null");
+        }
+        // Like the unique barcode key in MySQL: the first insert assigns the id, later ones update
+        int id = itemIdsByBarcode.computeIfAbsent(item.getBarcode(), barcode -> nextItemId.getAndIncrement());
+        Item stored = new Item(id, item.getName(), item.getPrice(), item.getVatRate(), item.getCategory(),
+                item.getStockQuantity(), item.getBarcode());
+        synchronized (catalogLock) {
+            Item previous = items.put(id, stored);
+            if (previous == null || !sameCatalogData(previous, stored)) {
+                Long previousVersion = versionsByItemId.put(id, ++catalogVersion);
+                if (previousVersion != null) {
+                    itemIdsByVersion.remove(previousVersion);
+                }
+                itemIdsByVersion.put(catalogVersion, id);
+            }
+        }
+        return true;
+    }
+
+    @Override
+    public long getCatalogVersion() {
+        synchronized (catalogLock) {
+            return catalogVersion;
+        }
+    }
+
+    @Override
+    public CatalogDelta getCatalogChangesSince(long version) {
+        synchronized (catalogLock) {
+            List<Item> changed = new ArrayList<>();
+            for (Integer id : itemIdsByVersion.tailMap(version, false).values()) {
+                changed.add(copy(items.get(id)));
+            }
+            return new CatalogDelta(Math.max(version, catalogVersion), changed, new HashSet<>());
+        }
+    }
+
+    /**
+     * Copies the items under the catalog lock, so no catalog change lands between the items and the
+     * version.
+     */
+    @Override
+    public CatalogSnapshot getCatalogSnapshot() {
+        synchronized (catalogLock) {
+            return new CatalogSnapshot(catalogVersion, getAllProducts());
+        }
+    }
+
+    private static boolean sameCatalogData(Item a, Item b) {
+        return a.getName().equals(b.getName()) && a.getPrice().compareTo(b.getPrice()) == 0
+                && a.getVatRate().compareTo(b.getVatRate()) == 0 && a.getCategory().equals(b.getCategory())
+                && a.getBarcode().equals(b.getBarcode());
+    }
+
+    @Override
+    public boolean adjustStock(int productId, int delta) {
+        return items.computeIfPresent(productId, (id, item) -> new Item(id, item.getName(), item.getPrice(),
+                item.getVatRate(), item.getCategory(), Math.max(0, item.getStockQuantity() + delta), item.getBarcode())) != null;
+    }
+
+    @Override
+    public List<PromotionRule> getActivePromotions() {
+        return new ArrayList<>(promotions);
+    }
+
+    /**
+     * Adds an active promotion rule.
+     *
+     * @param rule The rule to add.
+     * @throws IllegalArgumentException if rule is null.
+     */
+    public void addPromotion(PromotionRule rule) {
+        if (rule == null) {
+            throw new IllegalArgumentException("Promotion cannot be null");
+        }
+        promotions.add(rule);
+    }
+
+    /**
+     * Creates a new order. In memory the receipt number is the order ID.
+     */
+    @Override
+    public int createOrder(double totalPrice, double totalVat) {
+        int orderId = nextOrderId.getAndIncrement();
+        Order order = new Order(orderId, orderId, LocalDateTime.now(),
+                BigDecimal.valueOf(totalPrice), BigDecimal.valueOf(totalVat));
+        orderLines.put(orderId, new ConcurrentLinkedQueue<>());
+        ordersById.put(orderId, order);
+        orderIdsByReceiptNumber.put(order.getReceiptNumber(), orderId);
+        ordersByTime.put(new OrderKey(order.getOrderTime(), orderId), order);
+        return orderId;
+    }
+
+    @Override
+    public void addOrderItem(int orderId, int productId, int quantity, double subtotal) {
+        addLine(orderId, new OrderLine(productId, quantity, BigDecimal.valueOf(subtotal)));
+    }
+
+    @Override
+    public boolean addOrderItems(List<OrderItem> items) {
+        boolean stored = true;
+        for (OrderItem item : items) {
+            stored &= addLine(item.getOrderId(), new OrderLine(item.getProductId(), item.getQuantity(), item.getSubtotal()));
+        }
+        return stored;
+    }
+
+    private boolean addLine(int orderId, OrderLine line) {
+        Queue<OrderLine> lines = orderLines.get(orderId);
+        Order order = ordersById.get(orderId);
+        if (lines == null || order == null) {
+            logger.warning("Cannot add item to unknown order " + orderId);
+            return false;
+        }
+        lines.add(line);
+        long orderTimeMillis = order.getOrderTime().atZone(ZoneId.systemDefault()).toInstant().toEpochMilli();
+        salesByProduct.computeIfAbsent(line.productId, id -> new ConcurrentLinkedQueue<>())
+                .add(new Sale(orderTimeMillis, line.quantity));
+        return true;
+    }
+
+    @Override
+    public boolean addOrderDiscounts(int orderId, List<AppliedDiscount> discounts) {
+        if (!ordersById.containsKey(orderId)) {
+            logger.warning("Cannot add discounts to unknown order " + orderId);
+            return false;
+        }
+        orderDiscounts.computeIfAbsent(orderId, id -> new CopyOnWriteArrayList<>()).addAll(discounts);
+        return true;
+    }
+
+    @Override
+    public List<AppliedDiscount> getOrderDiscounts(int orderId) {
+        List<AppliedDiscount> discounts = orderDiscounts.get(orderId);
+        return discounts == null ? new ArrayList<>() : new ArrayList<>(discounts);
+    }
+
+    @Override
+    public boolean recordPayment(int orderId, String correlationId, String method, double amount, boolean success) {
+        payments.add(new PaymentRecord(nextPaymentId.getAndIncrement(), orderId, LocalDateTime.now(),
+                BigDecimal.valueOf(amount).setScale(2, RoundingMode.HALF_UP).movePointRight(2).longValue(), success));
+        return true;
+    }
+
+    @Override
+    public Order getOrder(int orderId) {
+        return ordersById.get(orderId);
+    }
+
+    @Override
+    public List<Order> getOrdersBetween(LocalDateTime from, LocalDateTime to, int afterId, int limit) {
+        List<Order> result = new ArrayList<>();
+        OrderKey start = new OrderKey(from, Integer.MIN_VALUE);
+        boolean startInclusive = true;
+        if (afterId > 0) {
+            Order cursor = ordersById.get(afterId);
+            if (cursor == null) {
+                return result;
+            }
+            OrderKey cursorKey = new OrderKey(cursor.getOrderTime(), cursor.getId());
+            if (cursorKey.compareTo(start) >= 0) {
+                start = cursorKey;
+                startInclusive = false;
+            }
+        }
+        OrderKey end = new OrderKey(to, Integer.MIN_VALUE);
+        if (start.compareTo(end) >= 0) {
+            return result;
+        }
+
+        for (Order order : ordersByTime.subMap(start, startInclusive, end, false).values()) {
+            if (result.size() >= limit) {
+                break;
+            }
+            result.add(order);
+        }
+        return result;
+    }
+
+    @Override
+    public Order getOrderByReceiptNumber(int receiptNumber) {
+        Integer orderId = orderIdsByReceiptNumber.get(receiptNumber);
+        return orderId == null ? null : ordersById.get(orderId);
+    }
+
+    @Override
+    public List<OrderItem> getOrderItems(int orderId) {
+        List<OrderItem> result = new ArrayList<>();
+        Queue<OrderLine> lines = orderLines.get(orderId);
+        if (lines == null) {
+            return result;
+        }
+        for (OrderLine line : lines) {
+            Item product = items.get(line.productId);
+            result.add(new OrderItem(orderId, line.productId,
+                    product != null ? product.getName() : "Product #" + line.productId,
+                    line.quantity, line.subtotal,
+                    product != null ? product.getVatRate() : BigDecimal.ZERO));
+        }
+        return result;
+    }
+
+    @Override
+    public boolean streamSalesHistory(LocalDateTime from, LocalDateTime to, int fromProductId, int toProductId,
+                                      SalesLineConsumer consumer) {
+        if (!from.isBefore(to)) {
+            return true;
+        }
+        ZoneId zone = ZoneId.systemDefault();
+        long fromMillis = from.atZone(zone).toInstant().toEpochMilli();
+        long toMillis = to.atZone(zone).toInstant().toEpochMilli();
+        for (Map.Entry<Integer, Queue<Sale>> product : salesByProduct.subMap(fromProductId, toProductId).entrySet()) {
+            for (Sale sale : product.getValue()) {
+                if (sale.orderTimeMillis >= fromMillis && sale.orderTimeMillis < toMillis) {
+                    consumer.accept(product.getKey(), sale.orderTimeMillis, sale.quantity);
+                }
+            }
+        }
+        return true;
+    }
+
+    @Override
+    public boolean streamOrderTotals(LocalDateTime from, LocalDateTime to, OrderTotalConsumer consumer) {
+        if (!from.isBefore(to)) {
+            return true;
+        }
+        for (Order order : ordersByTime.subMap(new OrderKey(from, Integer.MIN_VALUE), true,
+                new OrderKey(to, Integer.MIN_VALUE), false).values()) {
+            consumer.accept(order.getId(), order.getTotalPrice().add(order.getTotalVat())
+                    .setScale(2, RoundingMode.HALF_UP).movePointRight(2).longValue());
+        }
+        return true;
+    }
+
+    @Override
+    public boolean streamPayments(LocalDateTime from, LocalDateTime to, PaymentConsumer consumer) {
+        for (PaymentRecord payment : payments) {
+            if (payment.success && !payment.paidAt.isBefore(from) && payment.paidAt.isBefore(to)) {
+                consumer.accept(payment.id, payment.orderId, payment.amountCents);
+            }
+        }
+        return true;
+    }
+
+    private static Item copy(Item item) {
+        return new Item(item.getId(), item.getName(), item.getPrice(), item.getVatRate(), item.getCategory(),
+                item.getStockQuantity(), item.getBarcode());
+    }
+
+    /**
+     * Sort key for the order history: order time, then ID.
+     */
+    private static final class OrderKey implements Comparable<OrderKey> {
+        final LocalDateTime time;
+        final int id;
+
+        OrderKey(LocalDateTime time, int id) {
+            this.time = time;
+            this.id = id;
+        }
+
+        @Override
+        public int compareTo(OrderKey other) {
+            int byTime = time.compareTo(other.time);
+            return byTime != 0 ? byTime : Integer.compare(id, other.id);
+        }
+    }
+
+    private static final class OrderLine {
+        final int productId;
+        final int quantity;
+        final BigDecimal subtotal;
+
+        OrderLine(int productId, int quantity, BigDecimal subtotal) {
+            this.productId = productId;
+            this.quantity = quantity;
+            this.subtotal = subtotal;
+        }
+    }
+
+    private static final class Sale {
+        final long orderTimeMillis;
+        final int quantity;
+
+        Sale(long orderTimeMillis, int quantity) {
+            this.orderTimeMillis = orderTimeMillis;
+            this.quantity = quantity;
+        }
+    }
+
+    private static final class PaymentRecord {
+        final long id;
+        final int orderId;
+        final LocalDateTime paidAt;
+        final long amountCents;
+        final boolean success;
+
+        PaymentRecord(long id, int orderId, LocalDateTime paidAt, long amountCents, boolean success) {
+            this.id = id;
+            this.orderId = orderId;
+            this.paidAt = paidAt;
+            this.amountCents = amountCents;
+            this.success = success;
+        }
+    }
+}
@@ -0,0 +1,16 @@
+package se.systementor.DatabaseConnect;
+
+/**
+ * Receives the orders streamed by {@link Storage#streamOrderTotals}, one call per order.
+ */
+@FunctionalInterface
+public interface OrderTotalConsumer {
+
+    /**
+     * Called for one order.
+     *
+     * @param orderId    The ID of the order.
+     * @param totalCents The order total including VAT, in öre.
+     */
+    void accept(int orderId, long totalCents);
+}
@@ -0,0 +1,17 @@
+package se.systementor.DatabaseConnect;
+
+/**
+ * Receives the payments streamed by {@link Storage#streamPayments}, one call per payment.
+ */
+@FunctionalInterface
+public interface PaymentConsumer {
+
+    /**
+     * Called for one successful payment.
+     *
+     * @param paymentId   The ID of the payment.
+     * @param orderId     The ID of the order it paid for, or 0 if it was not made for an order.
+     * @param amountCents The amount paid, in öre.
+     */
+    void accept(long paymentId, int orderId, long amountCents);
+}
@@ -0,0 +1,238 @@
+package se.systementor.DatabaseConnect;
+
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Logger;
+
+/**
+ * The ReplicaSet class picks the read replica that serves a read-only query.
+ *
+ * Replicas are chosen round-robin or by the fewest open connections (least-loaded). A replica is
+ * skipped while its replication lag is above the configured maximum, while replication is stopped, or
+ * for a short while after a connection to it failed. Lag is checked at most once per second per
+ * replica, by whichever reader finds the last check stale. Readers that do not run the check only get
+ * a replica whose last check passed; while the first check of a replica or the recheck of a lagging one
+ * is running, they move on to the next replica. When no replica is usable, the caller falls back to
+ * the primary.
+ */
+class ReplicaSet {
+    private static final Logger logger = Logger.getLogger(ReplicaSet.class.getName());
+    private static final long LAG_CHECK_INTERVAL_NANOS = TimeUnit.SECONDS.toNanos(1);
+
+    enum Selection { ROUND_ROBIN, LEAST_LOADED }
+
+    /**
+     * Opens a JDBC connection. {@code DriverManager::getConnection} in production.
+     */
+    interface Connector {
+        Connection open(String url, String user, String password) throws SQLException;
+    }
+
+    /**
+     * Reads the replication lag of a replica in seconds on an open connection, or null if it is not
+     * replicating. {@link #readReplicationLag} in production.
+     */
+    interface LagReader {
+        Long read(Connection conn) throws SQLException;
+    }
+
+    private final List<Replica> replicas;
+    private final Selection selection;
+    private final long maxLagSeconds;
+    private final String user;
+    private final String password;
+    private final Connector connector;
+    private final LagReader lagReader;
+    private final AtomicInteger next = new AtomicInteger();
+
+    ReplicaSet(List<String> urls, String user, String password, Selection selection, long maxLagSeconds) {
+        this(urls, user, password, selection, maxLagSeconds, DriverManager::getConnection, ReplicaSet::readReplicationLag);
+    }
+
+    ReplicaSet(List<String> urls, String user, String password, Selection selection, long maxLagSeconds,
+               Connector connector, LagReader lagReader) {
+        List<Replica> list = new ArrayList<>();
+        for (String url : urls) {
+            list.add(new Replica(url));
+        }
+        this.replicas = Collections.unmodifiableList(list);
+        this.user = user;
+        this.password = password;
+        this.selection = selection;
+        this.maxLagSeconds = maxLagSeconds;
+        this.connector = connector;
+        this.lagReader = lagReader;
+    }
+
+    boolean isEmpty() {
+        return replicas.isEmpty();
+    }
+
+    /**
+     * Opens a connection to a usable replica.
+     *
+     * @return A connection, or null if no replica is currently usable.
+     */
+    Connection getConnection() {
+        int count = replicas.size();
+        if (count == 0) {
+            return null;
+        }
+        int start = selection == Selection.ROUND_ROBIN ? Math.floorMod(next.getAndIncrement(), count) : 0;
+        List<Replica> candidates = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            candidates.add(replicas.get((start + i) % count));
+        }
+        if (selection == Selection.LEAST_LOADED) {
+            candidates.sort((a, b) -> Integer.compare(a.inFlight.get(), b.inFlight.get()));
+        }
+
+        for (Replica replica : candidates) {
+            long now = System.nanoTime();
+            if (!replica.isUsable(now)) {
+                continue;
+            }
+            boolean checkDue = replica.lagCheckDue(now);
+            if (!checkDue && !replica.passedLastCheck()) {
+                continue;
+            }
+            try {
+                Connection conn = connector.open(replica.url, user, password);
+                if (checkDue && !checkLag(replica, conn)) {
+                    conn.close();
+                    continue;
+                }
+                return replica.track(conn);
+            } catch (SQLException e) {
+                logger.warning("Read replica " + replica.url + " unavailable: " + e.getMessage());
+                replica.markUnusable(System.nanoTime());
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Refreshes the lag of a replica on an open connection.
+     *
+     * @return true if the replica is within the allowed lag.
+     */
+    private boolean checkLag(Replica replica, Connection conn) {
+        Long lag;
+        try {
+            lag = lagReader.read(conn);
+        } catch (SQLException e) {
+            // Treated as not replicating below
+            lag = null;
+        }
+
+        boolean usable = lag != null && lag <= maxLagSeconds;
+        if (!usable) {
+            logger.warning("Read replica " + replica.url + " skipped, lag: " + (lag == null ? "not replicating" : lag + "s"));
+        }
+        replica.recordLagCheck(System.nanoTime(), usable);
+        return usable;
+    }
+
+    /**
+     * Reads the replication lag with SHOW REPLICA STATUS, or SHOW SLAVE STATUS on MySQL before 8.0.22.
+     *
+     * @return The lag in seconds, or null if the server is not replicating.
+     * @throws SQLException if neither statement can be run.
+     */
+    static Long readReplicationLag(Connection conn) throws SQLException {
+        try (Statement stmt = conn.createStatement()) {
+            return readLag(stmt, "SHOW REPLICA STATUS", "Seconds_Behind_Source");
+        } catch (SQLException e) {
+            // MySQL before 8.0.22 only knows the old syntax
+            try (Statement stmt = conn.createStatement()) {
+                return readLag(stmt, "SHOW SLAVE STATUS", "Seconds_Behind_Master");
+            }
+        }
+    }
+
+    private static Long readLag(Statement stmt, String query, String column) throws SQLException {
+        try (ResultSet rs = stmt.executeQuery(query)) {
+            if (!rs.next()) {
+                return null;
+            }
+            long lag = rs.getLong(column);
+            return rs.wasNull() ? null : lag;
+        }
+    }
+
+    private static final class Replica {
+        final String url;
+        final AtomicInteger inFlight = new AtomicInteger();
+        final AtomicBoolean checking = new AtomicBoolean();
+        volatile long lastCheckNanos;
+        volatile boolean checked;
+        volatile boolean healthy = true;
+
+        Replica(String url) {
+            this.url = url;
+        }
+
+        boolean isUsable(long now) {
+            return healthy || now - lastCheckNanos >= LAG_CHECK_INTERVAL_NANOS;
+        }
+
+        /**
+         * Returns true if the replica has been checked and was within the allowed lag.
+         */
+        boolean passedLastCheck() {
+            return checked && healthy;
+        }
+
+        /**
+         * Returns true for exactly one caller once the last lag check is stale.
+         */
+        boolean lagCheckDue(long now) {
+            boolean stale = !checked || now - lastCheckNanos >= LAG_CHECK_INTERVAL_NANOS;
+            return stale && checking.compareAndSet(false, true);
+        }
+
+        void recordLagCheck(long now, boolean usable) {
+            healthy = usable;
+            lastCheckNanos = now;
+            checked = true;
+            checking.set(false);
+        }
+
+        void markUnusable(long now) {
+            healthy = false;
+            lastCheckNanos = now;
+            checked = false;
+            checking.set(false);
+        }
+
+        /**
+         * Wraps a connection so that closing it releases this replica's in-flight count.
+         */
+        Connection track(Connection conn) {
+            inFlight.incrementAndGet();
+            AtomicBoolean closed = new AtomicBoolean();
+            return (Connection) Proxy.newProxyInstance(Connection.class.getClassLoader(), new Class<?>[]{Connection.class},
+                    (proxy, method, args) -> {
+                        if ("close".equals(method.getName()) && closed.compareAndSet(false, true)) {
+                            inFlight.decrementAndGet();
+                        }
+                        try {
+                            return method.invoke(conn, args);
+                        } catch (InvocationTargetException e) {
+                            throw e.getCause();
+                        }
+                    });
+        }
+    }
+}
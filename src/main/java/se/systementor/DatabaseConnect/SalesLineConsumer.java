@@ -0,0 +1,18 @@
+package se.systementor.DatabaseConnect;
+
+/**
+ * Receives the order lines streamed by {@link Storage#streamSalesHistory}, one call per line, with
+ * primitive arguments so that streaming millions of lines allocates nothing per line.
+ */
+@FunctionalInterface
+public interface SalesLineConsumer {
+
+    /**
+     * Called for one order line.
+     *
+     * @param productId       The ID of the product sold.
+     * @param orderTimeMillis The time of the order, in epoch milliseconds.
+     * @param quantity        The quantity sold.
+     */
+    void accept(int productId, long orderTimeMillis, int quantity);
+}
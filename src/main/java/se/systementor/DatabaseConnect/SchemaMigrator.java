@@ -0,0 +1,371 @@
+package se.systementor.DatabaseConnect;
+
+import java.sql.Connection;
+import java.sql.DatabaseMetaData;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.logging.Logger;
+
+/**
+ * The SchemaMigrator class brings the POS database schema up to date at startup.
+ *
+ * Migrations are numbered and recorded in the `schema_version` table; each one is applied at most once.
+ * The steps themselves are idempotent as well: tables are created only if missing, and columns and
+ * indexes are added only if no existing column or index already covers them. This makes the runner
+ * safe on databases whose tables were created by hand before the runner existed.
+ *
+ * Registers that start at the same time serialize on a named MySQL lock, so only one of them migrates.
+ */
+public class SchemaMigrator {
+    private static final Logger logger = Logger.getLogger(SchemaMigrator.class.getName());
+    private static final String LOCK_NAME = "pos_schema_migration";
+    private static final int LOCK_TIMEOUT_SECONDS = 30;
+
+    private final Database database;
+    private final List<Migration> migrations = new ArrayList<>();
+
+    /**
+     * Creates a migrator for the given database with the built-in migrations.
+     *
+     * @param database The database to migrate.
+     */
+    public SchemaMigrator(Database database) {
+        this.database = database;
+
+        migrations.add(new Migration(1, "Create base tables", conn -> {
+            execute(conn, "CREATE TABLE IF NOT EXISTS items (" +
+                    "id INT AUTO_INCREMENT PRIMARY KEY, " +
+                    "name VARCHAR(255) NOT NULL, " +
+                    "price DECIMAL(10,2) NOT NULL, " +
+                    "vat_rate DECIMAL(5,2) NOT NULL, " +
+                    "category VARCHAR(100) NOT NULL, " +
+                    "stock_quantity INT NOT NULL DEFAULT 0, " +
+                    "barcode VARCHAR(64) NOT NULL)");
+            execute(conn, "CREATE TABLE IF NOT EXISTS orders (" +
+                    "id INT AUTO_INCREMENT PRIMARY KEY, " +
+                    "receipt_number INT NULL, " +
+                    "order_time DATETIME NOT NULL DEFAULT CURRENT_TIMESTAMP, " +
+                    "total_price DECIMAL(12,2) NOT NULL, " +
+                    "total_vat DECIMAL(12,2) NOT NULL)");
+            execute(conn, "CREATE TABLE IF NOT EXISTS order_items (" +
+                    "id INT AUTO_INCREMENT PRIMARY KEY, " +
+                    "order_id INT NOT NULL, " +
+                    "product_id INT NOT NULL, " +
+                    "quantity INT NOT NULL, " +
+                    "subtotal DECIMAL(12,2) NOT NULL)");
+            execute(conn, "CREATE TABLE IF NOT EXISTS sequences (" +
+                    "name VARCHAR(64) PRIMARY KEY, " +
+                    "next_value BIGINT NOT NULL)");
+            // Tables created by hand may predate the columns the order history reads
+            ensureColumn(conn, "orders", "receipt_number", "INT NULL");
+            ensureColumn(conn, "orders", "order_time", "DATETIME NOT NULL DEFAULT CURRENT_TIMESTAMP");
+            // Orders created before createOrder took numbers from the sequence have none
+            execute(conn, "UPDATE orders SET receipt_number = id WHERE receipt_number IS NULL");
+            execute(conn, "INSERT IGNORE INTO sequences (name, next_value) VALUES ('receipt_number', 1)");
+            execute(conn, "UPDATE sequences SET next_value = GREATEST(next_value, " +
+                    "(SELECT COALESCE(MAX(receipt_number), 0) + 1 FROM orders)) WHERE name = 'receipt_number'");
+        }));
+
+        migrations.add(new Migration(2, "Add indexes for the DAO access paths", conn -> {
+            // Database.insertItem's ON DUPLICATE KEY UPDATE relies on barcode being unique
+            requireUnique(conn, "items", "barcode");
+            ensureIndex(conn, "items", "uk_items_barcode", true, "barcode");
+            ensureIndex(conn, "items", "idx_items_category", false, "category");
+            ensureIndex(conn, "orders", "idx_orders_order_time", false, "order_time");
+            ensureIndex(conn, "orders", "uk_orders_receipt_number", true, "receipt_number");
+            ensureIndex(conn, "order_items", "idx_order_items_order_id", false, "order_id");
+        }));
+
+        migrations.add(new Migration(3, "Create promotions table", conn -> {
+            execute(conn, "CREATE TABLE IF NOT EXISTS promotions (" +
+                    "id INT AUTO_INCREMENT PRIMARY KEY, " +
+                    "type VARCHAR(32) NOT NULL, " +
+                    "description VARCHAR(255) NOT NULL, " +
+                    "product_ids TEXT NULL, " +
+                    "categories TEXT NULL, " +
+                    "group_size INT NOT NULL DEFAULT 0, " +
+                    "pay_quantity INT NOT NULL DEFAULT 0, " +
+                    "percent DECIMAL(5,2) NULL, " +
+                    "bundle_price DECIMAL(10,2) NULL, " +
+                    "active BOOLEAN NOT NULL DEFAULT TRUE)");
+            ensureIndex(conn, "promotions", "idx_promotions_active", false, "active");
+        }));
+
+        migrations.add(new Migration(4, "Create catalog change log", conn -> {
+            execute(conn, "CREATE TABLE IF NOT EXISTS item_changes (" +
+                    "version BIGINT PRIMARY KEY, " +
+                    "item_id INT NOT NULL, " +
+                    "changed_at DATETIME NOT NULL DEFAULT CURRENT_TIMESTAMP)");
+            // Registers sync deltas by version; stock changes are not catalog changes. AUTO_INCREMENT
+            // versions can commit out of order, and a register polling for changes after version n would
+            // skip a lower version committed later. Taking the version from a sequence row that stays
+            // locked until commit serializes catalog writes, so versions commit in order.
+            execute(conn, "INSERT IGNORE INTO sequences (name, next_value) VALUES ('catalog_version', 1)");
+            execute(conn, "UPDATE sequences SET next_value = GREATEST(next_value, " +
+                    "(SELECT COALESCE(MAX(version), 0) + 1 FROM item_changes)) WHERE name = 'catalog_version'");
+            String logChange = "SELECT next_value INTO v FROM sequences WHERE name = 'catalog_version' FOR UPDATE; " +
+                    "UPDATE sequences SET next_value = v + 1 WHERE name = 'catalog_version'; " +
+                    "INSERT INTO item_changes (version, item_id) VALUES (v, %s); ";
+            execute(conn, "DROP TRIGGER IF EXISTS trg_items_changes_insert");
+            execute(conn, "CREATE TRIGGER trg_items_changes_insert AFTER INSERT ON items FOR EACH ROW " +
+                    "BEGIN DECLARE v BIGINT; " + String.format(logChange, "NEW.id") + "END");
+            execute(conn, "DROP TRIGGER IF EXISTS trg_items_changes_update");
+            execute(conn, "CREATE TRIGGER trg_items_changes_update AFTER UPDATE ON items FOR EACH ROW " +
+                    "BEGIN DECLARE v BIGINT; " +
+                    "IF NOT (OLD.name <=> NEW.name AND OLD.price <=> NEW.price AND OLD.vat_rate <=> NEW.vat_rate " +
+                    "AND OLD.category <=> NEW.category AND OLD.barcode <=> NEW.barcode) THEN " +
+                    String.format(logChange, "NEW.id") + "END IF; END");
+            execute(conn, "DROP TRIGGER IF EXISTS trg_items_changes_delete");
+            execute(conn, "CREATE TRIGGER trg_items_changes_delete AFTER DELETE ON items FOR EACH ROW " +
+                    "BEGIN DECLARE v BIGINT; " + String.format(logChange, "OLD.id") + "END");
+        }));
+
+        migrations.add(new Migration(5, "Add sales history index", conn -> {
+            // Restock forecasting streams order lines by product range
+            ensureIndex(conn, "order_items", "idx_order_items_product_order", false, "product_id", "order_id");
+        }));
+
+        migrations.add(new Migration(6, "Create payments table", conn -> {
+            execute(conn, "CREATE TABLE IF NOT EXISTS payments (" +
+                    "id BIGINT AUTO_INCREMENT PRIMARY KEY, " +
+                    "order_id INT NULL, " +
+                    "correlation_id VARCHAR(64) NULL, " +
+                    "method VARCHAR(32) NOT NULL, " +
+                    "amount DECIMAL(12,2) NOT NULL, " +
+                    "success BOOLEAN NOT NULL, " +
+                    "paid_at DATETIME NOT NULL DEFAULT CURRENT_TIMESTAMP)");
+            // Reconciliation streams a day of payments
+            ensureIndex(conn, "payments", "idx_payments_paid_at", false, "paid_at");
+            ensureIndex(conn, "payments", "idx_payments_order_id", false, "order_id");
+        }));
+
+        migrations.add(new Migration(7, "Create order discounts table", conn -> {
+            // Reprinted receipts list the promotion discounts the order was sold with
+            execute(conn, "CREATE TABLE IF NOT EXISTS order_discounts (" +
+                    "order_id INT NOT NULL, " +
+                    "position INT NOT NULL, " +
+                    "promotion_id INT NOT NULL, " +
+                    "description VARCHAR(255) NOT NULL, " +
+                    "amount DECIMAL(12,2) NOT NULL, " +
+                    "vat_rate DECIMAL(5,2) NOT NULL, " +
+                    "PRIMARY KEY (order_id, position))");
+        }));
+    }
+
+    /**
+     * Applies all migrations that have not been applied yet, in version order.
+     *
+     * @return true if the schema is up to date; false if a migration failed or the lock could not be taken.
+     */
+    public boolean migrate() {
+        try (Connection conn = database.getConnection()) {
+            if (!acquireLock(conn)) {
+                logger.severe("Could not acquire the schema migration lock");
+                return false;
+            }
+            try {
+                execute(conn, "CREATE TABLE IF NOT EXISTS schema_version (" +
+                        "version INT PRIMARY KEY, " +
+                        "description VARCHAR(255) NOT NULL, " +
+                        "applied_at DATETIME NOT NULL DEFAULT CURRENT_TIMESTAMP)");
+
+                Set<Integer> applied = appliedVersions(conn);
+                for (Migration migration : migrations) {
+                    if (applied.contains(migration.version)) {
+                        continue;
+                    }
+                    logger.info("Applying schema migration " + migration.version + ": " + migration.description);
+                    migration.step.apply(conn);
+                    try (PreparedStatement stmt = conn.prepareStatement(
+                            "INSERT INTO schema_version (version, description) VALUES (?, ?)")) {
+                        stmt.setInt(1, migration.version);
+                        stmt.setString(2, migration.description);
+                        stmt.executeUpdate();
+                    }
+                }
+                return true;
+            } finally {
+                releaseLock(conn);
+            }
+        } catch (SQLException e) {
+            logger.severe("Schema migration failed: " + e.getMessage());
+            return false;
+        }
+    }
+
+    /**
+     * Runs EXPLAIN on the queries behind the DAO access paths and checks that each one can use an index.
+     * A plan is reported as a problem when MySQL would scan the whole table without any candidate index.
+     *
+     * @return A list of problems, empty if every query plan uses an index.
+     */
+    public List<String> verifyQueryPlans() {
+        Map<String, String> queries = new LinkedHashMap<>();
+        queries.put("item by barcode", "SELECT id FROM items WHERE barcode = '0'");
+        queries.put("items by category", "SELECT id FROM items WHERE category = 'Dairy'");
+        queries.put("orders by time range", "SELECT id FROM orders WHERE order_time >= '2000-01-01' " +
+                "AND order_time < '2000-01-02' ORDER BY order_time, id LIMIT 50");
+        queries.put("order by receipt number", "SELECT id FROM orders WHERE receipt_number = 1");
+        queries.put("lines of an order", "SELECT id FROM order_items WHERE order_id = 1");
+        queries.put("sales history of a product range", "SELECT order_id FROM order_items WHERE product_id >= 1 AND product_id < 100");
+        queries.put("payments by time range", "SELECT id FROM payments WHERE paid_at >= '2000-01-01' AND paid_at < '2000-01-02'");
+        queries.put("catalog changes since version", "SELECT item_id FROM item_changes WHERE version > 1");
+
+        List<String> problems = new ArrayList<>();
+        try (Connection conn = database.getConnection();
+             Statement stmt = conn.createStatement()) {
+            for (Map.Entry<String, String> entry : queries.entrySet()) {
+                try (ResultSet rs = stmt.executeQuery("EXPLAIN " + entry.getValue())) {
+                    while (rs.next()) {
+                        String type = rs.getString("type");
+                        String possibleKeys = rs.getString("possible_keys");
+                        String key = rs.getString("key");
+                        String extra = rs.getString("Extra");
+                        boolean noRowsToRead = extra != null && (extra.contains("Impossible WHERE") || extra.contains("no matching row"));
+                        if (!noRowsToRead && possibleKeys == null && key == null) {
+                            problems.add(entry.getKey() + ": full scan (type=" + type + ") on table " + rs.getString("table"));
+                        } else {
+                            logger.info("Query plan OK for " + entry.getKey() + ": type=" + type + ", key=" + key);
+                        }
+                    }
+                }
+            }
+        } catch (SQLException e) {
+            problems.add("Could not verify query plans: " + e.getMessage());
+        }
+        return problems;
+    }
+
+    private Set<Integer> appliedVersions(Connection conn) throws SQLException {
+        Set<Integer> versions = new HashSet<>();
+        try (Statement stmt = conn.createStatement();
+             ResultSet rs = stmt.executeQuery("SELECT version FROM schema_version")) {
+            while (rs.next()) {
+                versions.add(rs.getInt("version"));
+            }
+        }
+        return versions;
+    }
+
+    private boolean acquireLock(Connection conn) throws SQLException {
+        try (PreparedStatement stmt = conn.prepareStatement("SELECT GET_LOCK(?, ?)")) {
+            stmt.setString(1, LOCK_NAME);
+            stmt.setInt(2, LOCK_TIMEOUT_SECONDS);
+            try (ResultSet rs = stmt.executeQuery()) {
+                return rs.next() && rs.getInt(1) == 1;
+            }
+        }
+    }
+
+    private void releaseLock(Connection conn) throws SQLException {
+        try (PreparedStatement stmt = conn.prepareStatement("SELECT RELEASE_LOCK(?)")) {
+            stmt.setString(1, LOCK_NAME);
+            stmt.executeQuery().close();
+        }
+    }
+
+    private static void execute(Connection conn, String sql) throws SQLException {
+        try (Statement stmt = conn.createStatement()) {
+            stmt.execute(sql);
+        }
+    }
+
+    /**
+     * Fails the migration if a column that is about to get a unique index holds duplicate values. The
+     * duplicates are logged with the ids of their rows, since choosing which row to keep needs a person.
+     */
+    private static void requireUnique(Connection conn, String table, String column) throws SQLException {
+        List<String> duplicates = new ArrayList<>();
+        try (Statement stmt = conn.createStatement();
+             ResultSet rs = stmt.executeQuery("SELECT " + column + ", GROUP_CONCAT(id ORDER BY id) AS ids FROM " + table +
+                     " GROUP BY " + column + " HAVING COUNT(*) > 1")) {
+            while (rs.next()) {
+                duplicates.add(column + " '" + rs.getString(1) + "' is used by " + table + " " + rs.getString("ids"));
+            }
+        }
+        if (!duplicates.isEmpty()) {
+            for (String duplicate : duplicates) {
+                logger.severe("Duplicate " + duplicate);
+            }
+            throw new SQLException(duplicates.size() + " duplicate value(s) in " + table + "." + column +
+                    "; merge or change them before the unique index can be created");
+        }
+    }
+
+    /**
+     * Adds a column unless the table already has it.
+     */
+    private static void ensureColumn(Connection conn, String table, String column, String definition) throws SQLException {
+        DatabaseMetaData metaData = conn.getMetaData();
+        try (ResultSet rs = metaData.getColumns(conn.getCatalog(), null, table, column)) {
+            if (rs.next()) {
+                return;
+            }
+        }
+        execute(conn, "ALTER TABLE " + table + " ADD COLUMN " + column + " " + definition);
+    }
+
+    /**
+     * Creates an index unless an index with the same leading columns already exists.
+     * An existing non-unique index does not satisfy a required unique index.
+     */
+    private static void ensureIndex(Connection conn, String table, String name, boolean unique, String... columns) throws SQLException {
+        Map<String, List<String>> indexColumns = new LinkedHashMap<>();
+        Set<String> uniqueIndexes = new HashSet<>();
+        try (ResultSet rs = conn.getMetaData().getIndexInfo(conn.getCatalog(), null, table, false, false)) {
+            while (rs.next()) {
+                String indexName = rs.getString("INDEX_NAME");
+                String column = rs.getString("COLUMN_NAME");
+                if (indexName == null || column == null) {
+                    continue;
+                }
+                indexColumns.computeIfAbsent(indexName, k -> new ArrayList<>()).add(column.toLowerCase(Locale.ROOT));
+                if (!rs.getBoolean("NON_UNIQUE")) {
+                    uniqueIndexes.add(indexName);
+                }
+            }
+        }
+
+        List<String> wanted = new ArrayList<>();
+        for (String column : columns) {
+            wanted.add(column.toLowerCase(Locale.ROOT));
+        }
+        for (Map.Entry<String, List<String>> index : indexColumns.entrySet()) {
+            List<String> existing = index.getValue();
+            boolean covers = existing.size() >= wanted.size() && existing.subList(0, wanted.size()).equals(wanted);
+            if (covers && (!unique || (uniqueIndexes.contains(index.getKey()) && existing.size() == wanted.size()))) {
+                return;
+            }
+        }
+        execute(conn, "CREATE " + (unique ? "UNIQUE " : "") + "INDEX " + name + " ON " + table +
+                " (" + String.join(", ", columns) + ")");
+    }
+
+    /**
+     * A single step of a migration.
+     */
+    private interface Step {
+        void apply(Connection conn) throws SQLException;
+    }
+
+    private static final class Migration {
+        final int version;
+        final String description;
+        final Step step;
+
+        Migration(int version, String description, Step step) {
+            this.version = version;
+            this.description = description;
+            this.step = step;
+        }
+    }
+}
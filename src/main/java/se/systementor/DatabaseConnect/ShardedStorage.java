@@ -0,0 +1,463 @@
+package se.systementor.DatabaseConnect;
+
+import se.systementor.Promotions.AppliedDiscount;
+import se.systementor.Promotions.PromotionRule;
+import se.systementor.model.CatalogDelta;
+import se.systementor.model.CatalogSnapshot;
+import se.systementor.model.Item;
+import se.systementor.model.Order;
+import se.systementor.model.OrderItem;
+
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.function.BiFunction;
+import java.util.function.Function;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * The ShardedStorage class partitions orders and order items across several {@link Storage} shards,
+ * typically one MySQL instance per group of stores.
+ *
+ * Each register writes its orders to one home shard, chosen from its store and register id with
+ * {@link #shardFor}. Order IDs handed out by this class are global: the shard index sits in the high bits
+ * above the shard's own ID ({@code shard << 26 | localId}), so any later access by order ID is routed
+ * straight to the shard that holds it. The encoding does not depend on the number of shards, so shards
+ * can be appended to the end of the list without changing the meaning of existing IDs. Receipt numbers
+ * are encoded the same way, which makes them unique across shards; on shard 0 they are unchanged.
+ * This allows up to {@value #MAX_SHARDS} shards of 2^26 orders each.
+ *
+ * The catalog (items, stock and promotions) lives on shard 0 only, so item ids, stock levels and the
+ * catalog version have a single source of truth and cannot drift apart between shards. Order lines on
+ * the other shards refer to those item ids; their product names and VAT rates are looked up on shard 0.
+ *
+ * Queries that span stores, such as the order history and the cross-store reports, are run on all
+ * shards in parallel and merged (scatter-gather).
+ */
+public class ShardedStorage implements Storage {
+    private static final Logger logger = Logger.getLogger(ShardedStorage.class.getName());
+    private static final int REPORT_PAGE_SIZE = 1000;
+    private static final int SHARD_BITS = 5;
+    private static final int LOCAL_ID_BITS = Integer.SIZE - 1 - SHARD_BITS;
+    private static final int LOCAL_ID_MASK = (1 << LOCAL_ID_BITS) - 1;
+    private static final int PAYMENT_ID_BITS = Long.SIZE - 1 - SHARD_BITS;
+    /** The maximum number of shards the global ID encoding has room for. */
+    public static final int MAX_SHARDS = 1 << SHARD_BITS;
+    private static final Comparator<Order> HISTORY_ORDER =
+            Comparator.comparing(Order::getOrderTime).thenComparingInt(Order::getId);
+
+    private final List<Storage> shards;
+    private final int homeShard;
+    private final ExecutorService executor;
+
+    /**
+     * Creates a sharded storage.
+     *
+     * @param shards    The shards, in a fixed order shared by every register.
+     * @param homeShard The index of the shard this register writes its orders to.
+     * @throws IllegalArgumentException if there are no shards or more than {@link #MAX_SHARDS}, or
+     *         homeShard is out of range.
+     */
+    public ShardedStorage(List<? extends Storage> shards, int homeShard) {
+        if (shards == null || shards.isEmpty()) {
+            throw new IllegalArgumentException("At least one shard is required");
+        }
+        if (shards.size() > MAX_SHARDS) {
+            throw new IllegalArgumentException("At most " + MAX_SHARDS + " shards are supported");
+        }
+        if (homeShard < 0 || homeShard >= shards.size()) {
+            throw new IllegalArgumentException("Home shard out of range: " + homeShard);
+        }
+        this.shards = Collections.unmodifiableList(new ArrayList<>(shards));
+        this.homeShard = homeShard;
+        this.executor = Executors.newFixedThreadPool(shards.size(), runnable -> {
+            Thread thread = new Thread(runnable, "shard-query");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * Returns the shard that holds the orders of a register.
+     *
+     * @param storeId    The id of the store.
+     * @param registerId The id of the register within the store.
+     * @param shardCount The number of shards.
+     * @return The shard index.
+     */
+    public static int shardFor(int storeId, int registerId, int shardCount) {
+        return Math.floorMod(Objects.hash(storeId, registerId), shardCount);
+    }
+
+    public List<Storage> getShards() {
+        return shards;
+    }
+
+    public int getHomeShard() {
+        return homeShard;
+    }
+
+    // Catalog: kept on shard 0
+
+    @Override
+    public List<Item> getAllProducts() {
+        return catalog().getAllProducts();
+    }
+
+    @Override
+    public Map<Integer, Item> getProductsByIds(Collection<Integer> ids) {
+        return catalog().getProductsByIds(ids);
+    }
+
+    @Override
+    public boolean insertItem(Item item) {
+        if (item == null) {
+            throw new IllegalArgumentException("Item cannot be null");
+        }
+        return catalog().insertItem(item);
+    }
+
+    @Override
+    public boolean adjustStock(int productId, int delta) {
+        return catalog().adjustStock(productId, delta);
+    }
+
+    @Override
+    public long getCatalogVersion() {
+        return catalog().getCatalogVersion();
+    }
+
+    @Override
+    public CatalogDelta getCatalogChangesSince(long version) {
+        return catalog().getCatalogChangesSince(version);
+    }
+
+    @Override
+    public CatalogSnapshot getCatalogSnapshot() {
+        return catalog().getCatalogSnapshot();
+    }
+
+    @Override
+    public List<PromotionRule> getActivePromotions() {
+        return catalog().getActivePromotions();
+    }
+
+    // Orders: partitioned by register
+
+    @Override
+    public int createOrder(double totalPrice, double totalVat) {
+        int localId = shards.get(homeShard).createOrder(totalPrice, totalVat);
+        if (localId > LOCAL_ID_MASK) {
+            logger.severe("Order " + localId + " on shard " + homeShard + " does not fit in a global order ID");
+            return -1;
+        }
+        return localId == -1 ? -1 : toGlobalId(localId, homeShard);
+    }
+
+    @Override
+    public void addOrderItem(int orderId, int productId, int quantity, double subtotal) {
+        shardOf(orderId).addOrderItem(toLocalId(orderId), productId, quantity, subtotal);
+    }
+
+    /**
+     * Adds the items to the shards of their orders, one batch per shard.
+     */
+    @Override
+    public boolean addOrderItems(List<OrderItem> items) {
+        Map<Integer, List<OrderItem>> byShard = new HashMap<>();
+        for (OrderItem item : items) {
+            byShard.computeIfAbsent(shardIndexOf(item.getOrderId()), shard -> new ArrayList<>())
+                    .add(new OrderItem(toLocalId(item.getOrderId()), item.getProductId(), item.getProductName(),
+                            item.getQuantity(), item.getSubtotal(), item.getVatRate()));
+        }
+        boolean stored = true;
+        for (Map.Entry<Integer, List<OrderItem>> entry : byShard.entrySet()) {
+            stored &= shards.get(entry.getKey()).addOrderItems(entry.getValue());
+        }
+        return stored;
+    }
+
+    @Override
+    public boolean addOrderDiscounts(int orderId, List<AppliedDiscount> discounts) {
+        return shardOf(orderId).addOrderDiscounts(toLocalId(orderId), discounts);
+    }
+
+    @Override
+    public List<AppliedDiscount> getOrderDiscounts(int orderId) {
+        if (!isKnownShard(orderId)) {
+            return new ArrayList<>();
+        }
+        return shardOf(orderId).getOrderDiscounts(toLocalId(orderId));
+    }
+
+    /**
+     * Records a payment on the shard of its order, or on the home shard if it has no order.
+     */
+    @Override
+    public boolean recordPayment(int orderId, String correlationId, String method, double amount, boolean success) {
+        if (orderId <= 0) {
+            return shards.get(homeShard).recordPayment(0, correlationId, method, amount, success);
+        }
+        return shardOf(orderId).recordPayment(toLocalId(orderId), correlationId, method, amount, success);
+    }
+
+    @Override
+    public Order getOrder(int orderId) {
+        if (!isKnownShard(orderId)) {
+            return null;
+        }
+        return toGlobal(shardOf(orderId).getOrder(toLocalId(orderId)), shardIndexOf(orderId));
+    }
+
+    /**
+     * Retrieves the lines of an order from its shard, with product names and VAT rates from the catalog
+     * on shard 0.
+     */
+    @Override
+    public List<OrderItem> getOrderItems(int orderId) {
+        if (!isKnownShard(orderId)) {
+            return new ArrayList<>();
+        }
+        List<OrderItem> lines = shardOf(orderId).getOrderItems(toLocalId(orderId));
+        List<Integer> productIds = new ArrayList<>(lines.size());
+        for (OrderItem line : lines) {
+            productIds.add(line.getProductId());
+        }
+        Map<Integer, Item> products = lines.isEmpty() ? Collections.emptyMap() : catalog().getProductsByIds(productIds);
+
+        List<OrderItem> result = new ArrayList<>(lines.size());
+        for (OrderItem line : lines) {
+            Item product = products.get(line.getProductId());
+            result.add(new OrderItem(orderId, line.getProductId(),
+                    product != null ? product.getName() : line.getProductName(),
+                    line.getQuantity(), line.getSubtotal(),
+                    product != null ? product.getVatRate() : line.getVatRate()));
+        }
+        return result;
+    }
+
+    /**
+     * Retrieves one page of the orders of all shards, ordered by order time and global ID.
+     *
+     * Each shard is asked in parallel for its next orders after the cursor's position, and the shard
+     * pages are merged. Only the shard that holds the cursor order can seek on it directly; the other
+     * shards seek on the cursor's order time and skip the few orders placed in the same instant.
+     */
+    @Override
+    public List<Order> getOrdersBetween(LocalDateTime from, LocalDateTime to, int afterId, int limit) {
+        Order cursor = afterId > 0 ? getOrder(afterId) : null;
+        if (afterId > 0 && cursor == null) {
+            logger.warning("Unknown pagination cursor: order " + afterId);
+            return new ArrayList<>();
+        }
+
+        List<List<Order>> pages = scatterGather((index, shard) -> pageAfterCursor(shard, index, from, to, cursor, limit));
+
+        List<Order> merged = new ArrayList<>();
+        for (List<Order> page : pages) {
+            merged.addAll(page);
+        }
+        merged.sort(HISTORY_ORDER);
+        return new ArrayList<>(merged.subList(0, Math.min(limit, merged.size())));
+    }
+
+    /**
+     * Looks up a receipt number on the shard encoded in it.
+     */
+    @Override
+    public Order getOrderByReceiptNumber(int receiptNumber) {
+        if (!isKnownShard(receiptNumber)) {
+            return null;
+        }
+        return toGlobal(shardOf(receiptNumber).getOrderByReceiptNumber(toLocalId(receiptNumber)), shardIndexOf(receiptNumber));
+    }
+
+    /**
+     * Streams the sales history of every shard, one shard after the other, so the consumer is only
+     * ever called from the calling thread. Callers parallelize over product ranges instead.
+     */
+    @Override
+    public boolean streamSalesHistory(LocalDateTime from, LocalDateTime to, int fromProductId, int toProductId,
+                                      SalesLineConsumer consumer) {
+        boolean complete = true;
+        for (Storage shard : shards) {
+            complete &= shard.streamSalesHistory(from, to, fromProductId, toProductId, consumer);
+        }
+        return complete;
+    }
+
+    /**
+     * Streams the orders of every shard, one shard after the other, with global order IDs.
+     */
+    @Override
+    public boolean streamOrderTotals(LocalDateTime from, LocalDateTime to, OrderTotalConsumer consumer) {
+        boolean complete = true;
+        for (int i = 0; i < shards.size(); i++) {
+            int shard = i;
+            complete &= shards.get(i).streamOrderTotals(from, to,
+                    (orderId, totalCents) -> consumer.accept(toGlobalId(orderId, shard), totalCents));
+        }
+        return complete;
+    }
+
+    /**
+     * Streams the payments of every shard, one shard after the other, with global order IDs. Payment IDs
+     * are made global the same way as order IDs, with the shard index in the high bits of the long.
+     */
+    @Override
+    public boolean streamPayments(LocalDateTime from, LocalDateTime to, PaymentConsumer consumer) {
+        boolean complete = true;
+        for (int i = 0; i < shards.size(); i++) {
+            int shard = i;
+            complete &= shards.get(i).streamPayments(from, to, (paymentId, orderId, amountCents) ->
+                    consumer.accept((long) shard << PAYMENT_ID_BITS | paymentId, orderId > 0 ? toGlobalId(orderId, shard) : 0, amountCents));
+        }
+        return complete;
+    }
+
+    /**
+     * Cross-store report: the revenue (excluding VAT) of the orders in [from, to) per shard.
+     * Every shard pages through its own history in parallel.
+     *
+     * @param from The start of the range (inclusive).
+     * @param to   The end of the range (exclusive).
+     * @return The revenue of each shard, in shard order.
+     */
+    public List<BigDecimal> getRevenueByShard(LocalDateTime from, LocalDateTime to) {
+        return scatterGather(shard -> {
+            BigDecimal revenue = BigDecimal.ZERO;
+            int afterId = 0;
+            while (true) {
+                List<Order> page = shard.getOrdersBetween(from, to, afterId, REPORT_PAGE_SIZE);
+                for (Order order : page) {
+                    revenue = revenue.add(order.getTotalPrice());
+                }
+                if (page.size() < REPORT_PAGE_SIZE) {
+                    return revenue;
+                }
+                afterId = page.get(page.size() - 1).getId();
+            }
+        });
+    }
+
+    /**
+     * Runs a query on every shard in parallel and returns the results in shard order.
+     *
+     * @param query The query to run against each shard.
+     * @param <T>   The result type.
+     * @return One result per shard.
+     * @throws IllegalStateException if the query fails on any shard.
+     */
+    public <T> List<T> scatterGather(Function<Storage, T> query) {
+        return scatterGather((index, shard) -> query.apply(shard));
+    }
+
+    private <T> List<T> scatterGather(BiFunction<Integer, Storage, T> query) {
+        List<Future<T>> futures = new ArrayList<>(shards.size());
+        for (int i = 0; i < shards.size(); i++) {
+            int index = i;
+            futures.add(executor.submit(() -> query.apply(index, shards.get(index))));
+        }
+
+        List<T> results = new ArrayList<>(shards.size());
+        for (int i = 0; i < futures.size(); i++) {
+            try {
+                results.add(futures.get(i).get());
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException("Interrupted while querying shard " + i, e);
+            } catch (ExecutionException e) {
+                logger.log(Level.SEVERE, "Query failed on shard " + i, e.getCause());
+                throw new IllegalStateException("Query failed on shard " + i, e.getCause());
+            }
+        }
+        return results;
+    }
+
+    /**
+     * Stops the scatter-gather threads.
+     */
+    public void shutdown() {
+        executor.shutdown();
+    }
+
+    /**
+     * Reads the first {@code limit} orders of one shard that come after the cursor in history order.
+     */
+    private List<Order> pageAfterCursor(Storage shard, int index, LocalDateTime from, LocalDateTime to,
+                                        Order cursor, int limit) {
+        List<Order> result = new ArrayList<>();
+        int localAfter = 0;
+        LocalDateTime lower = from;
+        if (cursor != null) {
+            if (shardIndexOf(cursor.getId()) == index) {
+                localAfter = toLocalId(cursor.getId());
+            } else if (cursor.getOrderTime().isAfter(from)) {
+                lower = cursor.getOrderTime();
+            }
+        }
+
+        while (result.size() < limit) {
+            List<Order> page = shard.getOrdersBetween(lower, to, localAfter, limit);
+            for (Order order : page) {
+                Order global = toGlobal(order, index);
+                if (cursor == null || HISTORY_ORDER.compare(global, cursor) > 0) {
+                    result.add(global);
+                }
+            }
+            if (page.size() < limit) {
+                break;
+            }
+            localAfter = page.get(page.size() - 1).getId();
+        }
+        return result.size() > limit ? result.subList(0, limit) : result;
+    }
+
+    private Storage catalog() {
+        return shards.get(0);
+    }
+
+    private Storage shardOf(int globalId) {
+        if (!isKnownShard(globalId)) {
+            throw new IllegalArgumentException("ID " + globalId + " does not belong to any of the " + shards.size() + " shards");
+        }
+        return shards.get(shardIndexOf(globalId));
+    }
+
+    private boolean isKnownShard(int globalId) {
+        return globalId >= 0 && shardIndexOf(globalId) < shards.size();
+    }
+
+    private static int shardIndexOf(int globalId) {
+        return globalId >>> LOCAL_ID_BITS;
+    }
+
+    private static int toLocalId(int globalId) {
+        return globalId & LOCAL_ID_MASK;
+    }
+
+    private static int toGlobalId(int localId, int shard) {
+        return shard << LOCAL_ID_BITS | localId;
+    }
+
+    private Order toGlobal(Order order, int shard) {
+        if (order == null) {
+            return null;
+        }
+        int receiptNumber = order.getReceiptNumber() > 0 ? toGlobalId(order.getReceiptNumber(), shard) : order.getReceiptNumber();
+        return new Order(toGlobalId(order.getId(), shard), receiptNumber, order.getOrderTime(),
+                order.getTotalPrice(), order.getTotalVat(), order.getThankYouMessage());
+    }
+}
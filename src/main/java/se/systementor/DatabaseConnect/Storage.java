@@ -0,0 +1,221 @@
+package se.systementor.DatabaseConnect;
+
+import se.systementor.Promotions.AppliedDiscount;
+import se.systementor.Promotions.PromotionRule;
+import se.systementor.model.CatalogDelta;
+import se.systementor.model.CatalogSnapshot;
+import se.systementor.model.Item;
+import se.systementor.model.Order;
+import se.systementor.model.OrderItem;
+
+import java.time.LocalDateTime;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The Storage interface is the persistence boundary of the POS system. The DAOs in
+ * {@code se.systementor.Services} add validation and caching on top of it, and the rest of the
+ * application only talks to the DAOs.
+ *
+ * Implementations report failures the way the DAOs always have: reads return empty results or null,
+ * writes return false or -1, and the error is logged. Implementations must be safe to call from
+ * several threads at once.
+ *
+ * @see Database the MySQL implementation
+ * @see InMemoryStorage the in-memory implementation
+ */
+public interface Storage {
+
+    /**
+     * Retrieves all products.
+     *
+     * @return A list of {@link Item} objects, empty if none could be loaded.
+     */
+    List<Item> getAllProducts();
+
+    /**
+     * Retrieves the products with the given ids.
+     *
+     * @param ids The product ids to look up.
+     * @return A map from product id to {@link Item}; ids that do not exist are absent.
+     */
+    Map<Integer, Item> getProductsByIds(Collection<Integer> ids);
+
+    /**
+     * Inserts a new item, or updates the item with the same barcode if it already exists.
+     *
+     * @param item The item to be inserted or updated.
+     * @return true if the item was successfully inserted or updated; false otherwise.
+     * @throws IllegalArgumentException if the item is null.
+     */
+    boolean insertItem(Item item);
+
+    /**
+     * Changes the stock quantity of an item. The stock never drops below zero.
+     *
+     * @param productId The ID of the item.
+     * @param delta The change in stock; negative for sales.
+     * @return true if the item exists and was updated; false otherwise.
+     */
+    boolean adjustStock(int productId, int delta);
+
+    /**
+     * Returns the current catalog version. The version grows with every change to the name, price,
+     * VAT rate, category or barcode of an item; stock changes do not count as catalog changes.
+     *
+     * @return The catalog version, or 0 if it cannot be read.
+     */
+    long getCatalogVersion();
+
+    /**
+     * Retrieves the catalog changes after a catalog version.
+     *
+     * @param version The version the caller is up to date with.
+     * @return The items changed or removed since then, and the version they bring the caller up to;
+     *         an empty delta at the given version if nothing changed or the changes cannot be read.
+     */
+    CatalogDelta getCatalogChangesSince(long version);
+
+    /**
+     * Retrieves all products and the catalog version they are current as of, from one consistent view
+     * of the catalog.
+     *
+     * @return The snapshot; empty at version 0 if the catalog cannot be read.
+     */
+    CatalogSnapshot getCatalogSnapshot();
+
+    /**
+     * Retrieves all active promotion rules.
+     *
+     * @return A list of {@link PromotionRule} objects, empty if none could be loaded.
+     */
+    List<PromotionRule> getActivePromotions();
+
+    /**
+     * Creates a new order and returns its ID.
+     *
+     * @param totalPrice The total price of the order.
+     * @param totalVat The total VAT of the order.
+     * @return The generated order ID, or -1 if the operation fails.
+     */
+    int createOrder(double totalPrice, double totalVat);
+
+    /**
+     * Adds an item to an existing order.
+     *
+     * @param orderId The ID of the order to which the item will be added.
+     * @param productId The ID of the product being added.
+     * @param quantity The quantity of the product being ordered.
+     * @param subtotal The subtotal for the item (price * quantity).
+     */
+    void addOrderItem(int orderId, int productId, int quantity, double subtotal);
+
+    /**
+     * Adds the items of one or more orders at once. Only the order ID, product ID, quantity and
+     * subtotal of each item are stored.
+     *
+     * @param items The items to add.
+     * @return true if all items were stored; false otherwise.
+     */
+    boolean addOrderItems(List<OrderItem> items);
+
+    /**
+     * Stores the promotion discounts granted on an order, so its receipt can be reprinted with them.
+     *
+     * @param orderId   The ID of the order.
+     * @param discounts The discounts, in the order they are printed.
+     * @return true if all discounts were stored; false otherwise.
+     */
+    boolean addOrderDiscounts(int orderId, List<AppliedDiscount> discounts);
+
+    /**
+     * Retrieves the promotion discounts granted on an order.
+     *
+     * @param orderId The ID of the order.
+     * @return The discounts in the order they were stored, empty if there are none.
+     */
+    List<AppliedDiscount> getOrderDiscounts(int orderId);
+
+    /**
+     * Records a payment.
+     *
+     * @param orderId       The ID of the order paid for, or 0 if there is none.
+     * @param correlationId The correlation id of the checkout, or null.
+     * @param method        The payment method.
+     * @param amount        The amount paid, including VAT.
+     * @param success       Whether the payment went through.
+     * @return true if the payment was recorded; false otherwise.
+     */
+    boolean recordPayment(int orderId, String correlationId, String method, double amount, boolean success);
+
+    /**
+     * Retrieves a single order.
+     *
+     * @param orderId The ID of the order.
+     * @return The order, or null if it does not exist or cannot be read.
+     */
+    Order getOrder(int orderId);
+
+    /**
+     * Retrieves one page of the orders placed in [from, to), ordered by order time and ID.
+     *
+     * @param from    The start of the range (inclusive).
+     * @param to      The end of the range (exclusive).
+     * @param afterId The ID of the last order of the previous page, or 0 for the first page.
+     * @param limit   The maximum number of orders to return.
+     * @return The orders of the page.
+     */
+    List<Order> getOrdersBetween(LocalDateTime from, LocalDateTime to, int afterId, int limit);
+
+    /**
+     * Looks up an order by its receipt number.
+     *
+     * @param receiptNumber The receipt number.
+     * @return The order, or null if none has that receipt number.
+     */
+    Order getOrderByReceiptNumber(int receiptNumber);
+
+    /**
+     * Retrieves the lines of an order, with product names and VAT rates.
+     *
+     * @param orderId The ID of the order.
+     * @return The order items, empty if there are none.
+     */
+    List<OrderItem> getOrderItems(int orderId);
+
+    /**
+     * Streams the order lines of the orders placed in [from, to) for the products with IDs in
+     * [fromProductId, toProductId), without loading them into memory. The lines arrive in no
+     * particular order, on the calling thread.
+     *
+     * @param from          The start of the range (inclusive).
+     * @param to            The end of the range (exclusive).
+     * @param fromProductId The lowest product ID (inclusive).
+     * @param toProductId   The highest product ID (exclusive).
+     * @param consumer      Receives each line.
+     * @return true if the whole range was streamed; false if reading failed part way.
+     */
+    boolean streamSalesHistory(LocalDateTime from, LocalDateTime to, int fromProductId, int toProductId,
+                               SalesLineConsumer consumer);
+
+    /**
+     * Streams the totals of the orders placed in [from, to), without loading them into memory.
+     *
+     * @param from     The start of the range (inclusive).
+     * @param to       The end of the range (exclusive).
+     * @param consumer Receives each order.
+     * @return true if the whole range was streamed; false if reading failed part way.
+     */
+    boolean streamOrderTotals(LocalDateTime from, LocalDateTime to, OrderTotalConsumer consumer);
+
+    /**
+     * Streams the successful payments made in [from, to), without loading them into memory.
+     *
+     * @param from     The start of the range (inclusive).
+     * @param to       The end of the range (exclusive).
+     * @param consumer Receives each payment.
+     * @return true if the whole range was streamed; false if reading failed part way.
+     */
+    boolean streamPayments(LocalDateTime from, LocalDateTime to, PaymentConsumer consumer);
+}
@@ -0,0 +1,72 @@
+package se.systementor.DatabaseConnect;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * The StorageFactory class creates the {@link Storage} backend selected by the `pos.storage` setting.
+ *
+ * With `pos.shards` greater than one, orders are sharded over that many backends with
+ * {@link ShardedStorage}. MySQL shard i connects to `pos.shard.i.url` (and optionally
+ * `pos.shard.i.user` / `pos.shard.i.password`). The register's home shard is `pos.shard.home` if set,
+ * otherwise it is derived from `pos.store.id` and `pos.register.id`.
+ */
+public final class StorageFactory {
+
+    private StorageFactory() {
+    }
+
+    /**
+     * Creates the storage configured by {@link DatabaseConfig#load()}.
+     *
+     * @return A new storage backend.
+     */
+    public static Storage create() {
+        return create(DatabaseConfig.load());
+    }
+
+    /**
+     * Creates the storage selected by the given configuration.
+     *
+     * @param config The configuration to use.
+     * @return A {@link Database} for "mysql" or an {@link InMemoryStorage} for "memory", wrapped in a
+     *         {@link ShardedStorage} when more than one shard is configured.
+     * @throws IllegalArgumentException if the storage type is unknown.
+     */
+    public static Storage create(DatabaseConfig config) {
+        int shardCount = config.getInt("pos.shards", 1);
+        if (shardCount <= 1) {
+            return createSingle(config);
+        }
+
+        List<Storage> shards = new ArrayList<>(shardCount);
+        for (int i = 0; i < shardCount; i++) {
+            String prefix = "pos.shard." + i + ".";
+            String url = config.get(prefix + "url", null);
+            if (url == null && DatabaseConfig.STORAGE_MYSQL.equalsIgnoreCase(config.getStorage())) {
+                throw new IllegalArgumentException("Missing " + prefix + "url");
+            }
+            DatabaseConfig shardConfig = config
+                    .with("pos.db.url", url != null ? url : config.getUrl())
+                    .with("pos.db.user", config.get(prefix + "user", config.getUser()))
+                    .with("pos.db.password", config.get(prefix + "password", config.getPassword()))
+                    .with("pos.db.replicas", config.get(prefix + "replicas", ""));
+            shards.add(createSingle(shardConfig));
+        }
+
+        int homeShard = config.getInt("pos.shard.home", ShardedStorage.shardFor(
+                config.getInt("pos.store.id", 1), config.getInt("pos.register.id", 1), shardCount));
+        return new ShardedStorage(shards, homeShard);
+    }
+
+    private static Storage createSingle(DatabaseConfig config) {
+        String storage = config.getStorage();
+        if (DatabaseConfig.STORAGE_MYSQL.equalsIgnoreCase(storage)) {
+            return new Database(config);
+        }
+        if (DatabaseConfig.STORAGE_MEMORY.equalsIgnoreCase(storage)) {
+            return new InMemoryStorage();
+        }
+        throw new IllegalArgumentException("Unknown storage type: " + storage);
+    }
+}
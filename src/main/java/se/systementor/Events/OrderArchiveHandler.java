@@ -0,0 +1,51 @@
+package se.systementor.Events;
+
+import se.systementor.Services.OrderDAO;
+import se.systementor.model.OrderItem;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.logging.Logger;
+
+/**
+ * Archives the lines of each sale as `order_items` of its order, off the checkout thread. Lines are
+ * collected over a batch of sales and written with one {@link OrderDAO#addOrderItems} call at the end
+ * of the batch, so a burst of sales costs one round trip instead of one per line.
+ */
+public class OrderArchiveHandler implements SaleEventHandler {
+    private static final Logger logger = Logger.getLogger(OrderArchiveHandler.class.getName());
+    private final OrderDAO orderDAO;
+    private final List<OrderItem> pending = new ArrayList<>();
+
+    public OrderArchiveHandler(OrderDAO orderDAO) {
+        this.orderDAO = orderDAO;
+    }
+
+    @Override
+    public void onEvent(SaleCompleted event, long sequence, boolean endOfBatch) {
+        for (int line = 0; line < event.getLineCount(); line++) {
+            pending.add(new OrderItem(event.getOrderId(), event.getProductId(line), null, event.getQuantity(line),
+                    BigDecimal.valueOf(event.getLineTotalCents(line), 2), null));
+        }
+        if (endOfBatch) {
+            flush();
+        }
+    }
+
+    @Override
+    public void onShutdown() {
+        flush();
+    }
+
+    private void flush() {
+        if (pending.isEmpty()) {
+            return;
+        }
+        if (!orderDAO.addOrderItems(pending)) {
+            logger.severe("Could not archive " + pending.size() + " order items of orders "
+                    + pending.get(0).getOrderId() + " to " + pending.get(pending.size() - 1).getOrderId());
+        }
+        pending.clear();
+    }
+}
@@ -0,0 +1,84 @@
+package se.systementor.Events;
+
+import java.util.Arrays;
+
+/**
+ * The SaleCompleted event describes a finished checkout. Events are pre-allocated in the slots of the
+ * {@link SaleEventBus} ring buffer and overwritten in place, so publishing a sale allocates nothing.
+ *
+ * Amounts are in öre (cents). Handlers must not keep a reference to an event after
+ * {@link SaleEventHandler#onEvent} returns, because the slot is reused for a later sale.
+ */
+public final class SaleCompleted {
+    private static final int INITIAL_LINE_CAPACITY = 64;
+
+    private int orderId;
+    private long timestampMillis;
+    private long totalPriceCents;
+    private long totalVatCents;
+    private int lineCount;
+    private int[] productIds = new int[INITIAL_LINE_CAPACITY];
+    private int[] quantities = new int[INITIAL_LINE_CAPACITY];
+    private long[] lineTotalCents = new long[INITIAL_LINE_CAPACITY];
+
+    SaleCompleted() {
+    }
+
+    /**
+     * Starts filling the event for a new sale, discarding the lines of the previous one.
+     *
+     * @param orderId         The ID of the created order.
+     * @param timestampMillis The time of the sale in epoch milliseconds.
+     * @param totalPriceCents The total price excluding VAT, in öre.
+     * @param totalVatCents   The total VAT, in öre.
+     */
+    public void reset(int orderId, long timestampMillis, long totalPriceCents, long totalVatCents) {
+        this.orderId = orderId;
+        this.timestampMillis = timestampMillis;
+        this.totalPriceCents = totalPriceCents;
+        this.totalVatCents = totalVatCents;
+        this.lineCount = 0;
+    }
+
+    /**
+     * Appends a sold line. The line arrays only grow for unusually large sales, after which the slot
+     * keeps the larger capacity.
+     *
+     * @param productId      The ID of the product.
+     * @param quantity       The quantity sold.
+     * @param lineTotalCents The line total excluding VAT, in öre.
+     */
+    public void addLine(int productId, int quantity, long lineTotalCents) {
+        if (lineCount == productIds.length) {
+            int capacity = productIds.length * 2;
+            productIds = Arrays.copyOf(productIds, capacity);
+            quantities = Arrays.copyOf(quantities, capacity);
+            this.lineTotalCents = Arrays.copyOf(this.lineTotalCents, capacity);
+        }
+        productIds[lineCount] = productId;
+        quantities[lineCount] = quantity;
+        this.lineTotalCents[lineCount] = lineTotalCents;
+        lineCount++;
+    }
+
+    // Getters
+    public int getOrderId() { return orderId; }
+    public long getTimestampMillis() { return timestampMillis; }
+    public long getTotalPriceCents() { return totalPriceCents; }
+    public long getTotalVatCents() { return totalVatCents; }
+    public int getLineCount() { return lineCount; }
+    public int getProductId(int line) { return productIds[line]; }
+    public int getQuantity(int line) { return quantities[line]; }
+    public long getLineTotalCents(int line) { return lineTotalCents[line]; }
+
+    @Override
+    public String toString() {
+        return "SaleCompleted{" +
+                "orderId=" + orderId +
+                ", timestampMillis=" + timestampMillis +
+                ", totalPriceCents=" + totalPriceCents +
+                ", totalVatCents=" + totalVatCents +
+                ", lineCount=" + lineCount +
+                '}';
+    }
+}
@@ -0,0 +1,250 @@
+package se.systementor.Events;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * The SaleEventBus class is a single-producer, multi-consumer ring buffer for {@link SaleCompleted} events.
+ *
+ * The register's checkout is the only producer. Publishing claims the next pre-allocated slot, fills it
+ * in place and advances the cursor with a release write, so it takes no locks and allocates nothing.
+ * Every registered {@link SaleEventHandler} runs on its own thread with its own sequence, and processes
+ * all events published since its last pass as one batch.
+ *
+ * A handler with nothing to do spins and yields briefly, then parks until the next publish unparks it, so
+ * idle handler threads cost no CPU between sales.
+ *
+ * When the slowest handler falls a full ring behind, {@link #next()} waits for it to catch up. This
+ * backpressure bounds memory use; with a ring sized for a few minutes of sales it never triggers in practice.
+ *
+ * Usage from the producer thread:
+ * <pre>
+ *     long sequence = bus.next();
+ *     try {
+ *         bus.get(sequence).reset(orderId, now, totalCents, vatCents);
+ *     } finally {
+ *         bus.publish(sequence);
+ *     }
+ * </pre>
+ */
+public class SaleEventBus {
+    private static final Logger logger = Logger.getLogger(SaleEventBus.class.getName());
+    private static final int SPIN_TRIES = 100;
+    private static final int YIELD_TRIES = 100;
+    private static final long PARK_NANOS = TimeUnit.MICROSECONDS.toNanos(100);
+
+    private final SaleCompleted[] ring;
+    private final int mask;
+    private final Sequence cursor = new Sequence(-1);
+    private final List<Worker> workers = new ArrayList<>();
+
+    // Producer-local state; only touched by the single publishing thread
+    private long nextSequence = -1;
+    private long cachedGate = -1;
+
+    private volatile boolean started;
+    private volatile boolean running;
+
+    /**
+     * Creates a bus with the given number of slots.
+     *
+     * @param capacity The number of slots; must be a power of two.
+     * @throws IllegalArgumentException if capacity is not a positive power of two.
+     */
+    public SaleEventBus(int capacity) {
+        if (capacity <= 0 || Integer.bitCount(capacity) != 1) {
+            throw new IllegalArgumentException("Capacity must be a power of two");
+        }
+        this.ring = new SaleCompleted[capacity];
+        this.mask = capacity - 1;
+        for (int i = 0; i < capacity; i++) {
+            ring[i] = new SaleCompleted();
+        }
+    }
+
+    /**
+     * Registers a handler. Handlers must be registered before {@link #start()}.
+     *
+     * @param name    The name of the handler, used for its thread.
+     * @param handler The handler.
+     * @throws IllegalStateException if the bus has already been started.
+     */
+    public void addHandler(String name, SaleEventHandler handler) {
+        if (started) {
+            throw new IllegalStateException("Handlers must be added before the bus is started");
+        }
+        if (handler == null) {
+            throw new IllegalArgumentException("Handler cannot be null");
+        }
+        workers.add(new Worker(name, handler));
+    }
+
+    /**
+     * Starts one daemon thread per registered handler.
+     */
+    public synchronized void start() {
+        if (started) {
+            return;
+        }
+        started = true;
+        running = true;
+        for (Worker worker : workers) {
+            Thread thread = new Thread(worker, "sale-events-" + worker.name);
+            thread.setDaemon(true);
+            worker.thread = thread;
+            thread.start();
+        }
+    }
+
+    /**
+     * Claims the next slot. Must only be called from the publishing thread, and every claimed
+     * sequence must be passed to {@link #publish(long)}.
+     *
+     * @return The sequence of the claimed slot.
+     */
+    public long next() {
+        long next = nextSequence + 1;
+        long wrapPoint = next - ring.length;
+        if (wrapPoint > cachedGate) {
+            long gate;
+            int idle = 0;
+            while (wrapPoint > (gate = minimumHandlerSequence(next - 1))) {
+                idle = idle(idle);
+            }
+            cachedGate = gate;
+        }
+        nextSequence = next;
+        return next;
+    }
+
+    /**
+     * Returns the event in the slot of a claimed sequence, to be filled in place.
+     */
+    public SaleCompleted get(long sequence) {
+        return ring[(int) sequence & mask];
+    }
+
+    /**
+     * Makes a filled slot visible to the handlers and wakes the handlers that are parked.
+     *
+     * The cursor is written with a full volatile write before the parked flags are read, and a handler sets
+     * its flag before it reads the cursor a last time, so either the handler sees the new event or the
+     * publisher sees the flag and unparks it.
+     */
+    public void publish(long sequence) {
+        cursor.setVolatile(sequence);
+        for (Worker worker : workers) {
+            if (worker.parked) {
+                LockSupport.unpark(worker.thread);
+            }
+        }
+    }
+
+    /**
+     * Stops the handler threads after they have processed every published event and their
+     * {@link SaleEventHandler#onShutdown()} has run.
+     *
+     * @param timeoutMillis The maximum time to wait for each handler thread.
+     */
+    public void shutdown(long timeoutMillis) {
+        running = false;
+        for (Worker worker : workers) {
+            LockSupport.unpark(worker.thread);
+        }
+        for (Worker worker : workers) {
+            if (worker.thread != null) {
+                try {
+                    worker.thread.join(timeoutMillis);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return;
+                }
+            }
+        }
+    }
+
+    /**
+     * Returns the number of published events the slowest handler has not processed yet.
+     */
+    public long getBacklog() {
+        long published = cursor.get();
+        return published - minimumHandlerSequence(published);
+    }
+
+    private long minimumHandlerSequence(long minimum) {
+        for (Worker worker : workers) {
+            minimum = Math.min(minimum, worker.sequence.get());
+        }
+        return minimum;
+    }
+
+    /**
+     * Progressive back-off for the publisher waiting on a full ring: spin, then yield, then park briefly.
+     * The ring only fills when a handler is stuck, so there is no wake-up from the handlers.
+     */
+    private static int idle(int count) {
+        if (count < SPIN_TRIES) {
+            return count + 1;
+        }
+        if (count < SPIN_TRIES + YIELD_TRIES) {
+            Thread.yield();
+            return count + 1;
+        }
+        LockSupport.parkNanos(PARK_NANOS);
+        return count;
+    }
+
+    private final class Worker implements Runnable {
+        final String name;
+        final SaleEventHandler handler;
+        final Sequence sequence = new Sequence(-1);
+        volatile boolean parked;
+        Thread thread;
+
+        Worker(String name, SaleEventHandler handler) {
+            this.name = name;
+            this.handler = handler;
+        }
+
+        @Override
+        public void run() {
+            long processed = sequence.get();
+            int idle = 0;
+            while (true) {
+                long available = cursor.get();
+                if (available > processed) {
+                    for (long seq = processed + 1; seq <= available; seq++) {
+                        try {
+                            handler.onEvent(ring[(int) seq & mask], seq, seq == available);
+                        } catch (Exception e) {
+                            logger.log(Level.SEVERE, "Sale event handler " + name + " failed on event " + seq, e);
+                        }
+                    }
+                    processed = available;
+                    sequence.set(processed);
+                    idle = 0;
+                } else if (!running) {
+                    try {
+                        handler.onShutdown();
+                    } catch (Exception e) {
+                        logger.log(Level.SEVERE, "Sale event handler " + name + " failed to shut down", e);
+                    }
+                    return;
+                } else if (idle < SPIN_TRIES + YIELD_TRIES) {
+                    idle = idle(idle);
+                } else {
+                    // Announce the park before the last look at the cursor; see publish
+                    parked = true;
+                    if (running && cursor.get() <= processed) {
+                        LockSupport.park(this);
+                    }
+                    parked = false;
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,27 @@
+package se.systementor.Events;
+
+/**
+ * A consumer of {@link SaleCompleted} events. Each handler registered with a {@link SaleEventBus} runs on
+ * its own thread and sees every event in publishing order.
+ */
+public interface SaleEventHandler {
+
+    /**
+     * Handles one event.
+     *
+     * @param event      The event; only valid until this method returns.
+     * @param sequence   The sequence number of the event in the bus.
+     * @param endOfBatch true if this is the last event currently available, so buffered work should be flushed.
+     * @throws Exception if the event could not be handled; the bus logs it and moves on.
+     */
+    void onEvent(SaleCompleted event, long sequence, boolean endOfBatch) throws Exception;
+
+    /**
+     * Called once on the handler's thread after the bus was shut down and the handler has processed
+     * every published event, to release files or connections.
+     *
+     * @throws Exception if the handler could not be closed; the bus logs it.
+     */
+    default void onShutdown() throws Exception {
+    }
+}
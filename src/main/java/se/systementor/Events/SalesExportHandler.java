@@ -0,0 +1,53 @@
+package se.systementor.Events;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Appends every sold line to a CSV file for export to the head office:
+ * {@code order_id,timestamp_millis,product_id,quantity,line_total_cents}.
+ * Lines are buffered and flushed once per batch; the file is closed when the bus shuts down.
+ */
+public class SalesExportHandler implements SaleEventHandler {
+    private final Path file;
+    private BufferedWriter writer;
+
+    public SalesExportHandler(Path file) {
+        this.file = file;
+    }
+
+    @Override
+    public void onEvent(SaleCompleted event, long sequence, boolean endOfBatch) throws IOException {
+        if (writer == null) {
+            writer = Files.newBufferedWriter(file, StandardCharsets.UTF_8,
+                    StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+        }
+        for (int line = 0; line < event.getLineCount(); line++) {
+            writer.write(Integer.toString(event.getOrderId()));
+            writer.write(',');
+            writer.write(Long.toString(event.getTimestampMillis()));
+            writer.write(',');
+            writer.write(Integer.toString(event.getProductId(line)));
+            writer.write(',');
+            writer.write(Integer.toString(event.getQuantity(line)));
+            writer.write(',');
+            writer.write(Long.toString(event.getLineTotalCents(line)));
+            writer.newLine();
+        }
+        if (endOfBatch) {
+            writer.flush();
+        }
+    }
+
+    @Override
+    public void onShutdown() throws IOException {
+        if (writer != null) {
+            writer.close();
+            writer = null;
+        }
+    }
+}
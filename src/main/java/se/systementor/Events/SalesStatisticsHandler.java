@@ -0,0 +1,60 @@
+package se.systementor.Events;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Keeps running sales statistics for the register: number of sales, revenue, VAT and units sold per
+ * product. Only the handler thread writes; any thread may read.
+ */
+public class SalesStatisticsHandler implements SaleEventHandler {
+    private final Map<Integer, Long> unitsByProduct = new ConcurrentHashMap<>();
+    private volatile long orderCount;
+    private volatile long revenueCents;
+    private volatile long vatCents;
+
+    @Override
+    public void onEvent(SaleCompleted event, long sequence, boolean endOfBatch) {
+        for (int line = 0; line < event.getLineCount(); line++) {
+            unitsByProduct.merge(event.getProductId(line), (long) event.getQuantity(line), Long::sum);
+        }
+        revenueCents += event.getTotalPriceCents();
+        vatCents += event.getTotalVatCents();
+        orderCount++;
+    }
+
+    public long getOrderCount() {
+        return orderCount;
+    }
+
+    public BigDecimal getRevenue() {
+        return BigDecimal.valueOf(revenueCents, 2);
+    }
+
+    public BigDecimal getVat() {
+        return BigDecimal.valueOf(vatCents, 2);
+    }
+
+    /**
+     * Returns the average sale excluding VAT, or zero if nothing has been sold.
+     */
+    public BigDecimal getAverageSale() {
+        long count = orderCount;
+        return count == 0 ? BigDecimal.ZERO : BigDecimal.valueOf(revenueCents / count, 2);
+    }
+
+    /**
+     * Returns the product ids with the most units sold, best seller first.
+     *
+     * @param limit The maximum number of products to return.
+     */
+    public List<Map.Entry<Integer, Long>> getTopProducts(int limit) {
+        List<Map.Entry<Integer, Long>> entries = new ArrayList<>(unitsByProduct.entrySet());
+        entries.sort(Collections.reverseOrder(Map.Entry.comparingByValue()));
+        return entries.subList(0, Math.min(limit, entries.size()));
+    }
+}
@@ -0,0 +1,40 @@
+package se.systementor.Events;
+
+import java.util.concurrent.atomic.AtomicLongFieldUpdater;
+
+/**
+ * A ring buffer position shared between threads. The padding keeps each sequence on its own cache line
+ * so that the producer cursor and the consumer sequences do not slow each other down (false sharing).
+ */
+@SuppressWarnings("unused")
+final class Sequence {
+    private static final AtomicLongFieldUpdater<Sequence> VALUE =
+            AtomicLongFieldUpdater.newUpdater(Sequence.class, "value");
+
+    private long p1, p2, p3, p4, p5, p6, p7;
+    private volatile long value;
+    private long q1, q2, q3, q4, q5, q6, q7;
+
+    Sequence(long initial) {
+        this.value = initial;
+    }
+
+    long get() {
+        return value;
+    }
+
+    /**
+     * Publishes a new value with release semantics; cheaper than a full volatile write.
+     */
+    void set(long newValue) {
+        VALUE.lazySet(this, newValue);
+    }
+
+    /**
+     * Publishes a new value with a full volatile write, which is ordered before any volatile read that
+     * follows it on the same thread.
+     */
+    void setVolatile(long newValue) {
+        value = newValue;
+    }
+}
@@ -0,0 +1,36 @@
+package se.systementor.Events;
+
+import se.systementor.DatabaseConnect.Storage;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.logging.Logger;
+
+/**
+ * Reduces the stock of sold items. Quantities are summed per product over a batch of sales and written
+ * once per product at the end of the batch, so a burst of sales of the same item costs one update.
+ */
+public class StockUpdateHandler implements SaleEventHandler {
+    private static final Logger logger = Logger.getLogger(StockUpdateHandler.class.getName());
+    private final Storage storage;
+    private final Map<Integer, Integer> pending = new HashMap<>();
+
+    public StockUpdateHandler(Storage storage) {
+        this.storage = storage;
+    }
+
+    @Override
+    public void onEvent(SaleCompleted event, long sequence, boolean endOfBatch) {
+        for (int line = 0; line < event.getLineCount(); line++) {
+            pending.merge(event.getProductId(line), event.getQuantity(line), Integer::sum);
+        }
+        if (endOfBatch) {
+            for (Map.Entry<Integer, Integer> entry : pending.entrySet()) {
+                if (!storage.adjustStock(entry.getKey(), -entry.getValue())) {
+                    logger.warning("Could not reduce stock of item " + entry.getKey() + " by " + entry.getValue());
+                }
+            }
+            pending.clear();
+        }
+    }
+}
@@ -0,0 +1,291 @@
+package se.systementor.Forecasting;
+
+import se.systementor.DatabaseConnect.Storage;
+import se.systementor.model.Item;
+
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.time.ZonedDateTime;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.logging.Logger;
+
+/**
+ * The RestockForecaster class turns the sales history in `order_items` into reorder suggestions.
+ *
+ * The items are sorted by ID and split into product ranges with fork-join, one range per leaf task and
+ * several leaves per core so that idle workers can steal ranges. Each leaf streams the sales history of
+ * its range once, with {@link Storage#streamSalesHistory}, into two small primitive arrays per item:
+ * sales per day of the history window and sales per weekday and hour. Only the leaves that are running
+ * hold such arrays, so memory use depends on the number of cores and not on the length of the history.
+ *
+ * From those arrays each item gets:
+ * <ul>
+ *   <li>a moving average of the daily sales over the last {@value #MOVING_AVERAGE_DAYS} days, as the
+ *       demand level,</li>
+ *   <li>a seasonal index per weekday and hour (sales in that hour relative to the average hour),
+ *       which shapes the demand level over the coming hours,</li>
+ *   <li>a safety stock of {@code z * sd * sqrt(leadTimeDays)} from the day-to-day deviation,</li>
+ *   <li>a reorder point: the seasonal demand over the lead time plus the safety stock,</li>
+ *   <li>a suggested quantity that covers the lead time and the review period, if the stock is at or
+ *       below the reorder point.</li>
+ * </ul>
+ */
+public class RestockForecaster {
+    private static final Logger logger = Logger.getLogger(RestockForecaster.class.getName());
+    static final int MOVING_AVERAGE_DAYS = 7;
+    private static final int HOURS_PER_WEEK = 7 * 24;
+    private static final long MILLIS_PER_HOUR = 3_600_000L;
+    private static final long MILLIS_PER_DAY = 24 * MILLIS_PER_HOUR;
+    // Ranges per core, so that a slow range does not leave the other cores idle
+    private static final int LEAVES_PER_CORE = 8;
+    private static final int MAX_ITEMS_PER_LEAF = 4096;
+
+    private final Storage storage;
+    private final int historyDays;
+    private final int leadTimeDays;
+    private final int reviewDays;
+    private final double serviceLevelZ;
+    private final ZoneId zone = ZoneId.systemDefault();
+
+    /**
+     * Creates a forecaster with four weeks of history, a lead time of two days, a weekly review and a
+     * 95% service level.
+     *
+     * @param storage The storage to read the sales history from.
+     */
+    public RestockForecaster(Storage storage) {
+        this(storage, 28, 2, 7, 1.65);
+    }
+
+    /**
+     * Creates a forecaster.
+     *
+     * @param storage       The storage to read the sales history from.
+     * @param historyDays   The number of days of history to read.
+     * @param leadTimeDays  The days between placing and receiving an order.
+     * @param reviewDays    The days until the next forecast.
+     * @param serviceLevelZ The z-score of the service level, e.g. 1.65 for 95%.
+     * @throws IllegalArgumentException if storage is null or a period is out of range.
+     */
+    public RestockForecaster(Storage storage, int historyDays, int leadTimeDays, int reviewDays, double serviceLevelZ) {
+        if (storage == null) {
+            throw new IllegalArgumentException("Storage cannot be null");
+        }
+        if (historyDays < MOVING_AVERAGE_DAYS) {
+            throw new IllegalArgumentException("History must cover at least " + MOVING_AVERAGE_DAYS + " days");
+        }
+        if (leadTimeDays <= 0 || reviewDays < 0 || serviceLevelZ < 0) {
+            throw new IllegalArgumentException("Lead time must be positive; review period and service level cannot be negative");
+        }
+        this.storage = storage;
+        this.historyDays = historyDays;
+        this.leadTimeDays = leadTimeDays;
+        this.reviewDays = reviewDays;
+        this.serviceLevelZ = serviceLevelZ;
+    }
+
+    /**
+     * Forecasts the items with all cores.
+     *
+     * @param items The items to forecast, with their current stock.
+     * @param now   The time to forecast from; the history window ends at the start of its hour.
+     * @return One suggestion per item, in product ID order.
+     */
+    public List<RestockSuggestion> forecast(Collection<Item> items, LocalDateTime now) {
+        int parallelism = Runtime.getRuntime().availableProcessors();
+        ForkJoinPool pool = new ForkJoinPool(parallelism);
+        try {
+            return forecast(items, now, pool);
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    /**
+     * Forecasts the items on the given pool.
+     */
+    public List<RestockSuggestion> forecast(Collection<Item> items, LocalDateTime now, ForkJoinPool pool) {
+        Item[] sorted = items.toArray(new Item[0]);
+        Arrays.sort(sorted, Comparator.comparingInt(Item::getId));
+        if (sorted.length == 0) {
+            return new ArrayList<>();
+        }
+
+        Window window = new Window(now.truncatedTo(ChronoUnit.HOURS));
+        int leafSize = Math.max(1, Math.min(MAX_ITEMS_PER_LEAF,
+                sorted.length / (pool.getParallelism() * LEAVES_PER_CORE)));
+        AtomicBoolean complete = new AtomicBoolean(true);
+        List<RestockSuggestion> suggestions = pool.invoke(new RangeTask(sorted, 0, sorted.length, leafSize, window, complete));
+        if (!complete.get()) {
+            logger.warning("Sales history could not be read completely; suggestions may be too low");
+        }
+        return suggestions;
+    }
+
+    /**
+     * The history window and the weekday-hour buckets of its hours and of the forecast horizon,
+     * computed once per forecast and shared by all tasks.
+     */
+    private final class Window {
+        final LocalDateTime from;
+        final LocalDateTime to;
+        final long fromMillis;
+        final long startBucket;
+        // How often each weekday-hour occurs in the window
+        final int[] bucketHours = new int[HOURS_PER_WEEK];
+        // The weekday-hour of each hour after the window, up to the end of the review period
+        final int[] horizonBuckets;
+
+        Window(LocalDateTime end) {
+            this.to = end;
+            this.from = end.minusDays(historyDays);
+            ZonedDateTime start = from.atZone(zone);
+            this.fromMillis = start.toInstant().toEpochMilli();
+            this.startBucket = bucketOf(start);
+            for (int hour = 0; hour < historyDays * 24; hour++) {
+                bucketHours[bucketOf(start.plusHours(hour))]++;
+            }
+            ZonedDateTime horizonStart = end.atZone(zone);
+            horizonBuckets = new int[(leadTimeDays + reviewDays) * 24];
+            for (int hour = 0; hour < horizonBuckets.length; hour++) {
+                horizonBuckets[hour] = bucketOf(horizonStart.plusHours(hour));
+            }
+        }
+
+        int bucketOf(ZonedDateTime time) {
+            return (time.getDayOfWeek().getValue() - 1) * 24 + time.getHour();
+        }
+
+        /**
+         * The weekday-hour of a time in the window, counted in whole hours from the window start so that
+         * no calendar lookups are needed per line. Daylight saving shifts it by at most one hour.
+         */
+        int bucketOf(long millis) {
+            return (int) ((startBucket + (millis - fromMillis) / MILLIS_PER_HOUR) % HOURS_PER_WEEK);
+        }
+    }
+
+    private final class RangeTask extends RecursiveTask<List<RestockSuggestion>> {
+        private static final long serialVersionUID = 1L;
+
+        private final Item[] items;
+        private final int lo;
+        private final int hi;
+        private final int leafSize;
+        private final Window window;
+        private final AtomicBoolean complete;
+
+        RangeTask(Item[] items, int lo, int hi, int leafSize, Window window, AtomicBoolean complete) {
+            this.items = items;
+            this.lo = lo;
+            this.hi = hi;
+            this.leafSize = leafSize;
+            this.window = window;
+            this.complete = complete;
+        }
+
+        @Override
+        protected List<RestockSuggestion> compute() {
+            if (hi - lo <= leafSize) {
+                return forecastRange();
+            }
+            int mid = (lo + hi) >>> 1;
+            RangeTask left = new RangeTask(items, lo, mid, leafSize, window, complete);
+            RangeTask right = new RangeTask(items, mid, hi, leafSize, window, complete);
+            left.fork();
+            List<RestockSuggestion> result = right.compute();
+            List<RestockSuggestion> leftResult = left.join();
+            leftResult.addAll(result);
+            return leftResult;
+        }
+
+        private List<RestockSuggestion> forecastRange() {
+            int count = hi - lo;
+            int[] ids = new int[count];
+            for (int i = 0; i < count; i++) {
+                ids[i] = items[lo + i].getId();
+            }
+            long[] daily = new long[count * historyDays];
+            long[] weekHours = new long[count * HOURS_PER_WEEK];
+
+            boolean streamed = storage.streamSalesHistory(window.from, window.to, ids[0], ids[count - 1] + 1,
+                    (productId, orderTimeMillis, quantity) -> {
+                        int index = Arrays.binarySearch(ids, productId);
+                        long offset = orderTimeMillis - window.fromMillis;
+                        if (index < 0 || offset < 0) {
+                            return;
+                        }
+                        int day = (int) (offset / MILLIS_PER_DAY);
+                        if (day >= historyDays) {
+                            return;
+                        }
+                        daily[index * historyDays + day] += quantity;
+                        weekHours[index * HOURS_PER_WEEK + window.bucketOf(orderTimeMillis)] += quantity;
+                    });
+            if (!streamed) {
+                complete.set(false);
+            }
+
+            List<RestockSuggestion> result = new ArrayList<>(count);
+            for (int i = 0; i < count; i++) {
+                result.add(suggest(items[lo + i], daily, i * historyDays, weekHours, i * HOURS_PER_WEEK, window));
+            }
+            return result;
+        }
+    }
+
+    private RestockSuggestion suggest(Item item, long[] daily, int dayOffset, long[] weekHours, int hourOffset, Window window) {
+        long total = 0;
+        for (int day = 0; day < historyDays; day++) {
+            total += daily[dayOffset + day];
+        }
+        double mean = (double) total / historyDays;
+        double squares = 0;
+        for (int day = 0; day < historyDays; day++) {
+            double diff = daily[dayOffset + day] - mean;
+            squares += diff * diff;
+        }
+        double standardDeviation = Math.sqrt(squares / historyDays);
+
+        long recent = 0;
+        for (int day = historyDays - MOVING_AVERAGE_DAYS; day < historyDays; day++) {
+            recent += daily[dayOffset + day];
+        }
+        double movingAverage = (double) recent / MOVING_AVERAGE_DAYS;
+
+        // Spread the demand level over the coming hours by the seasonal index of each weekday-hour
+        double hourlyLevel = movingAverage / 24;
+        double averageHour = (double) total / (historyDays * 24);
+        double leadDemand = 0;
+        double cycleDemand = 0;
+        for (int hour = 0; hour < window.horizonBuckets.length; hour++) {
+            int bucket = window.horizonBuckets[hour];
+            double seasonalIndex = 1.0;
+            if (averageHour > 0 && window.bucketHours[bucket] > 0) {
+                seasonalIndex = ((double) weekHours[hourOffset + bucket] / window.bucketHours[bucket]) / averageHour;
+            }
+            double demand = hourlyLevel * seasonalIndex;
+            cycleDemand += demand;
+            if (hour < leadTimeDays * 24) {
+                leadDemand += demand;
+            }
+        }
+
+        double safetyStock = serviceLevelZ * standardDeviation * Math.sqrt(leadTimeDays);
+        int reorderPoint = (int) Math.ceil(leadDemand + safetyStock);
+        int suggestedQuantity = 0;
+        if (total > 0 && item.getStockQuantity() <= reorderPoint) {
+            suggestedQuantity = (int) Math.max(0, Math.ceil(cycleDemand + safetyStock - item.getStockQuantity()));
+        }
+        return new RestockSuggestion(item.getId(), item.getName(), item.getStockQuantity(), movingAverage,
+                standardDeviation, reorderPoint, suggestedQuantity);
+    }
+}
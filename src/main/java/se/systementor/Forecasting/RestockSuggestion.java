@@ -0,0 +1,67 @@
+package se.systementor.Forecasting;
+
+/**
+ * The RestockSuggestion class is the forecast for one item: its recent demand, the stock level at
+ * which it should be reordered, and how much to order now.
+ */
+public class RestockSuggestion {
+    private final int productId;
+    private final String productName;
+    private final int stockQuantity;
+    private final double movingAverage;
+    private final double standardDeviation;
+    private final int reorderPoint;
+    private final int suggestedQuantity;
+
+    public RestockSuggestion(int productId, String productName, int stockQuantity, double movingAverage,
+                             double standardDeviation, int reorderPoint, int suggestedQuantity) {
+        this.productId = productId;
+        this.productName = productName;
+        this.stockQuantity = stockQuantity;
+        this.movingAverage = movingAverage;
+        this.standardDeviation = standardDeviation;
+        this.reorderPoint = reorderPoint;
+        this.suggestedQuantity = suggestedQuantity;
+    }
+
+    // Getters
+    public int getProductId() { return productId; }
+    public String getProductName() { return productName; }
+    public int getStockQuantity() { return stockQuantity; }
+
+    /**
+     * The average daily sales over the moving average window.
+     */
+    public double getMovingAverage() { return movingAverage; }
+
+    /**
+     * The standard deviation of the daily sales over the whole history window.
+     */
+    public double getStandardDeviation() { return standardDeviation; }
+
+    /**
+     * The stock level at or below which the item should be reordered.
+     */
+    public int getReorderPoint() { return reorderPoint; }
+
+    /**
+     * The quantity to order now; 0 if the stock is above the reorder point.
+     */
+    public int getSuggestedQuantity() { return suggestedQuantity; }
+
+    public boolean needsReorder() {
+        return suggestedQuantity > 0;
+    }
+
+    @Override
+    public String toString() {
+        return "RestockSuggestion{" +
+                "productId=" + productId +
+                ", productName='" + productName + '\'' +
+                ", stockQuantity=" + stockQuantity +
+                ", movingAverage=" + String.format("%.2f", movingAverage) +
+                ", reorderPoint=" + reorderPoint +
+                ", suggestedQuantity=" + suggestedQuantity +
+                '}';
+    }
+}
@@ -2,9 +2,24 @@ package se.systementor;
 
 import UserInterface.ui.CashRegisterGUI;
 import se.systementor.DatabaseConnect.Database;
+import se.systementor.DatabaseConnect.DatabaseConfig;
+import se.systementor.DatabaseConnect.SchemaMigrator;
+import se.systementor.DatabaseConnect.ShardedStorage;
+import se.systementor.DatabaseConnect.Storage;
+import se.systementor.DatabaseConnect.StorageFactory;
+import se.systementor.Forecasting.RestockForecaster;
+import se.systementor.Forecasting.RestockSuggestion;
+import se.systementor.Reconciliation.Discrepancy;
+import se.systementor.Reconciliation.PaymentReconciler;
+import se.systementor.Reconciliation.ReconciliationReport;
 import se.systementor.model.Item;
 import javax.swing.SwingUtilities;
 import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
 
 /**
  * Main class to run the cash register application.
@@ -14,39 +29,162 @@ import java.math.BigDecimal;
 public class Main {
 
     /**
-     * Main method to start the application. This method runs the GUI and inserts sample items
-     * into the database, followed by printing the items in the cart to the console.
+     * Main method to start the application. This method migrates the database schema, runs the GUI and
+     * inserts sample items into the database, followed by printing the items in the cart to the console.
+     * The application exits with code 1 without starting if the schema cannot be migrated.
      *
-     * @param args Command-line arguments (not used in this case).
+     * @param args Command-line arguments. "--self-check" migrates the schema, verifies the query plans
+     *             and exits instead of starting the GUI. "--demo" runs a single register on in-memory
+     *             storage without a database. "--forecast" prints the restock suggestions and exits.
+     *             "--reconcile" reconciles yesterday's payments with its orders and exits, or the day
+     *             given as "--reconcile=YYYY-MM-DD"; the exit code is 1 if they do not reconcile.
      */
     public static void main(String[] args) {
+        List<String> options = Arrays.asList(args);
+        DatabaseConfig config = DatabaseConfig.load();
+        if (options.contains("--demo")) {
+            config = config.with("pos.storage", DatabaseConfig.STORAGE_MEMORY);
+        }
+        Storage storage = StorageFactory.create(config);
+
+        List<Database> databases = databasesOf(storage);
+        boolean checked = true;
+        for (Database database : databases) {
+            SchemaMigrator migrator = new SchemaMigrator(database);
+            boolean migrated = migrator.migrate();
+            if (options.contains("--self-check")) {
+                checked &= selfCheck(migrator, migrated);
+            } else if (!migrated) {
+                // Running on a half-migrated schema would fail at the first checkout instead
+                System.err.println("Schema migration failed, not starting; see the log for the cause");
+                System.exit(1);
+            }
+        }
+        if (options.contains("--self-check")) {
+            if (databases.isEmpty()) {
+                System.out.println("Self-check requires MySQL storage");
+            }
+            System.exit(checked && !databases.isEmpty() ? 0 : 1);
+        }
+
+        if (options.contains("--forecast")) {
+            printRestockSuggestions(storage);
+            return;
+        }
+        for (String option : options) {
+            if (option.equals("--reconcile") || option.startsWith("--reconcile=")) {
+                LocalDate day = option.equals("--reconcile")
+                        ? LocalDate.now().minusDays(1)
+                        : LocalDate.parse(option.substring("--reconcile=".length()));
+                System.exit(printReconciliation(storage, day) ? 0 : 1);
+            }
+        }
+
+        // Run database operations before the GUI loads the products
+        insertSampleItems(storage);
+
         // Run the GUI in a separate thread
         SwingUtilities.invokeLater(() -> {
-            CashRegisterGUI display = new CashRegisterGUI();
+            CashRegisterGUI display = new CashRegisterGUI(storage);
             display.run();
         });
 
-        // Run database operations
-        insertSampleItems();
-
         // Print cart items
         printCartItems();
     }
 
     /**
-     * Inserts sample items into the database.
+     * Returns the MySQL databases behind a storage: the storage itself, or each MySQL shard.
+     *
+     * @param storage The configured storage.
+     * @return The databases to migrate, empty for in-memory storage.
+     */
+    private static List<Database> databasesOf(Storage storage) {
+        List<Database> databases = new ArrayList<>();
+        if (storage instanceof Database) {
+            databases.add((Database) storage);
+        } else if (storage instanceof ShardedStorage) {
+            for (Storage shard : ((ShardedStorage) storage).getShards()) {
+                databases.addAll(databasesOf(shard));
+            }
+        }
+        return databases;
+    }
+
+    /**
+     * Verifies that the schema is migrated and that the DAO queries use indexes, printing the result.
+     *
+     * @param migrator The migrator used at startup.
+     * @param migrated Whether the migration succeeded.
+     * @return true if all checks passed; false otherwise.
+     */
+    private static boolean selfCheck(SchemaMigrator migrator, boolean migrated) {
+        if (!migrated) {
+            System.out.println("Self-check failed: schema migration did not complete");
+            return false;
+        }
+        List<String> problems = migrator.verifyQueryPlans();
+        for (String problem : problems) {
+            System.out.println("Self-check problem: " + problem);
+        }
+        System.out.println(problems.isEmpty() ? "Self-check passed" : "Self-check failed");
+        return problems.isEmpty();
+    }
+
+    /**
+     * Forecasts every item from its sales history and prints the ones that should be reordered.
+     *
+     * @param storage The storage holding the items and the sales history.
+     */
+    private static void printRestockSuggestions(Storage storage) {
+        long start = System.nanoTime();
+        List<RestockSuggestion> suggestions = new RestockForecaster(storage).forecast(storage.getAllProducts(), LocalDateTime.now());
+        System.out.println(String.format("%-20s %8s %10s %8s %8s", "Item", "Stock", "Avg/day", "Reorder", "Order"));
+        for (RestockSuggestion suggestion : suggestions) {
+            if (suggestion.needsReorder()) {
+                System.out.println(String.format("%-20s %8d %10.2f %8d %8d", suggestion.getProductName(),
+                        suggestion.getStockQuantity(), suggestion.getMovingAverage(),
+                        suggestion.getReorderPoint(), suggestion.getSuggestedQuantity()));
+            }
+        }
+        System.out.println(String.format("Forecast %d items in %d ms", suggestions.size(), (System.nanoTime() - start) / 1_000_000));
+    }
+
+    /**
+     * Reconciles the payments of a day with its orders and prints the discrepancies.
+     *
+     * @param storage The storage holding the orders and payments.
+     * @param day     The day to reconcile.
+     * @return true if the day reconciled; false otherwise.
+     */
+    private static boolean printReconciliation(Storage storage, LocalDate day) {
+        long start = System.nanoTime();
+        ReconciliationReport report = new PaymentReconciler(storage).reconcile(day);
+        for (Discrepancy discrepancy : report.getDiscrepancies()) {
+            System.out.println(discrepancy);
+        }
+        System.out.println(String.format("%s: %d orders, %d payments, %d matched, %d discrepancies in %d ms%s",
+                day, report.getOrderCount(), report.getPaymentCount(), report.getMatchedCount(),
+                report.getDiscrepancies().size(), (System.nanoTime() - start) / 1_000_000,
+                report.isComplete() ? "" : " (incomplete)"));
+        return report.isReconciled();
+    }
+
+    /**
+     * Inserts sample items into storage.
      *
      * This method creates a few sample items with product data and attempts to insert them into
-     * the database using the Database class.
+     * the configured storage.
+     *
+     * @param db The storage to insert the items into.
      */
-    private static void insertSampleItems() {
+    private static void insertSampleItems(Storage db) {
         // Create Item objects with the provided data
         Item item1 = new Item(1, "Milk", new BigDecimal("12.50"), new BigDecimal("12.00"), "Dairy", 50, "123456789012");
         Item item2 = new Item(2, "Bread", new BigDecimal("25.00"), new BigDecimal("12.00"), "Bakery", 30, "234567890123");
         Item item3 = new Item(3, "Laptop", new BigDecimal("9999.99"), new BigDecimal("25.00"), "Electronics", 5, "345678901234");
 
-        // Insert items into the database using Database class
-        Database db = new Database();
+        // Insert items into storage
         boolean inserted1 = db.insertItem(item1);  // Insert first item
         boolean inserted2 = db.insertItem(item2);  // Insert second item
         boolean inserted3 = db.insertItem(item3);  // Insert third item
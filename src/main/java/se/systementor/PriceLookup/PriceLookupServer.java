@@ -0,0 +1,473 @@
+package se.systementor.PriceLookup;
+
+import se.systementor.Scanner.Barcode;
+import se.systementor.Services.ProductDAO;
+import se.systementor.model.Item;
+
+import java.io.IOException;
+import java.io.UnsupportedEncodingException;
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.net.InetSocketAddress;
+import java.net.StandardSocketOptions;
+import java.net.URLDecoder;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * The PriceLookupServer class answers price lookups of handhelds and price-check kiosks over HTTP.
+ *
+ * It runs inside the register process and answers from the catalog cache of a {@link ProductDAO}
+ * only ({@link ProductDAO#getProductByBarcode}, {@link ProductDAO#getCachedProduct} and
+ * {@link ProductDAO#searchCachedProducts}), so a lookup never touches the database. The cache is kept
+ * up to date by the register's {@link se.systementor.Services.CatalogSync}.
+ *
+ * All connections are served by one thread with a NIO selector. Connections are kept alive (HTTP/1.1
+ * by default, HTTP/1.0 with {@code Connection: keep-alive}), and pipelined requests are answered in
+ * order: every complete request in the read buffer is answered into the connection's write buffer,
+ * which is then flushed with one write. While a client does not read its responses, its requests are
+ * not read either.
+ *
+ * Endpoints, all GET, all answering JSON:
+ * <ul>
+ *   <li>{@code /price?barcode=7310865004703} - the product with this barcode; for a variable-measure
+ *       code also the price or weight it carries,</li>
+ *   <li>{@code /price?id=12} - the product with this id,</li>
+ *   <li>{@code /search?name=milk&limit=20} - the products whose name contains the text.</li>
+ * </ul>
+ */
+public class PriceLookupServer {
+    private static final Logger logger = Logger.getLogger(PriceLookupServer.class.getName());
+    // Largest request head; lookups are a single line and a few headers
+    private static final int MAX_REQUEST_BYTES = 8 * 1024;
+    // Stop reading a connection while this many response bytes wait for the client
+    private static final int MAX_PENDING_RESPONSE_BYTES = 256 * 1024;
+    private static final int DEFAULT_SEARCH_LIMIT = 20;
+    private static final int MAX_SEARCH_LIMIT = 200;
+    private static final byte[] HEAD_END = {'\r', '\n', '\r', '\n'};
+
+    private final ProductDAO productDAO;
+    private final InetSocketAddress address;
+    private Selector selector;
+    private ServerSocketChannel serverChannel;
+    private Thread thread;
+    private volatile boolean running;
+
+    /**
+     * Creates a server.
+     *
+     * @param productDAO The DAO whose catalog cache is served.
+     * @param address    The address to listen on; port 0 picks a free port.
+     * @throws IllegalArgumentException if productDAO or address is null.
+     */
+    public PriceLookupServer(ProductDAO productDAO, InetSocketAddress address) {
+        if (productDAO == null || address == null) {
+            throw new IllegalArgumentException("ProductDAO and address cannot be null");
+        }
+        this.productDAO = productDAO;
+        this.address = address;
+    }
+
+    /**
+     * Binds the address and starts serving on a daemon thread.
+     *
+     * @throws IOException if the address cannot be bound.
+     */
+    public synchronized void start() throws IOException {
+        if (thread != null) {
+            throw new IllegalStateException("Price lookup server already started");
+        }
+        selector = Selector.open();
+        serverChannel = ServerSocketChannel.open();
+        serverChannel.setOption(StandardSocketOptions.SO_REUSEADDR, true);
+        serverChannel.bind(address, 1024);
+        serverChannel.configureBlocking(false);
+        serverChannel.register(selector, SelectionKey.OP_ACCEPT);
+
+        running = true;
+        thread = new Thread(this::run, "price-lookup");
+        thread.setDaemon(true);
+        thread.start();
+        logger.info("Price lookup server listening on " + serverChannel.getLocalAddress());
+    }
+
+    /**
+     * Stops serving and closes all connections.
+     */
+    public synchronized void stop() {
+        if (thread == null) {
+            return;
+        }
+        running = false;
+        selector.wakeup();
+        try {
+            thread.join(1000);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        thread = null;
+    }
+
+    /**
+     * Returns the port the server listens on, useful when it was started on port 0.
+     */
+    public int getPort() {
+        return serverChannel.socket().getLocalPort();
+    }
+
+    private void run() {
+        try {
+            while (running) {
+                selector.select();
+                Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+                while (keys.hasNext()) {
+                    SelectionKey key = keys.next();
+                    keys.remove();
+                    try {
+                        if (key.isAcceptable()) {
+                            accept();
+                        } else {
+                            Connection connection = (Connection) key.attachment();
+                            if (key.isReadable()) {
+                                connection.read();
+                            }
+                            if (key.isValid() && key.isWritable()) {
+                                connection.write();
+                            }
+                        }
+                    } catch (IOException e) {
+                        // A client that resets its connection is not an error of the server
+                        logger.fine("Closing price lookup connection: " + e.getMessage());
+                        closeQuietly(key);
+                    } catch (RuntimeException e) {
+                        // A bug must not take down the other connections with the selector thread
+                        logger.log(Level.SEVERE, "Price lookup connection failed", e);
+                        closeQuietly(key);
+                    }
+                }
+            }
+        } catch (IOException e) {
+            logger.log(Level.SEVERE, "Price lookup server failed", e);
+        } finally {
+            // Closes the server channel and every connection
+            for (SelectionKey key : selector.keys()) {
+                closeQuietly(key);
+            }
+            try {
+                selector.close();
+            } catch (IOException e) {
+                logger.log(Level.WARNING, "Could not close the price lookup selector", e);
+            }
+        }
+    }
+
+    private void accept() throws IOException {
+        SocketChannel channel;
+        while ((channel = serverChannel.accept()) != null) {
+            channel.configureBlocking(false);
+            channel.setOption(StandardSocketOptions.TCP_NODELAY, true);
+            SelectionKey key = channel.register(selector, SelectionKey.OP_READ);
+            key.attach(new Connection(key, channel));
+        }
+    }
+
+    private static void closeQuietly(SelectionKey key) {
+        key.cancel();
+        try {
+            key.channel().close();
+        } catch (IOException e) {
+            // Already closed
+        }
+    }
+
+    /**
+     * The buffers and state of one client connection. Only the selector thread touches it.
+     */
+    private final class Connection {
+        private final SelectionKey key;
+        private final SocketChannel channel;
+        private final ByteBuffer in = ByteBuffer.allocate(MAX_REQUEST_BYTES);
+        private ByteBuffer out = ByteBuffer.allocate(16 * 1024);
+        // Set by a request that ends the connection; later pipelined requests are ignored
+        private boolean closeAfterWrite;
+
+        Connection(SelectionKey key, SocketChannel channel) {
+            this.key = key;
+            this.channel = channel;
+        }
+
+        void read() throws IOException {
+            int read = channel.read(in);
+            in.flip();
+            while (!closeAfterWrite) {
+                int headEnd = indexOf(in, HEAD_END);
+                if (headEnd < 0) {
+                    break;
+                }
+                String head = new String(in.array(), in.position(), headEnd - in.position(), StandardCharsets.ISO_8859_1);
+                in.position(headEnd + HEAD_END.length);
+                handle(head);
+            }
+            if (!closeAfterWrite && in.position() == 0 && in.limit() == in.capacity()) {
+                respond(431, "Request Header Fields Too Large", error("request too large"), false);
+                closeAfterWrite = true;
+            }
+            in.compact();
+            if (read < 0) {
+                // The client is done sending; answer what it sent, then close
+                closeAfterWrite = true;
+            }
+            write();
+        }
+
+        void write() throws IOException {
+            out.flip();
+            channel.write(out);
+            out.compact();
+            if (out.position() == 0 && closeAfterWrite) {
+                closeQuietly(key);
+                return;
+            }
+            int ops = out.position() > 0 ? SelectionKey.OP_WRITE : 0;
+            if (!closeAfterWrite && out.position() < MAX_PENDING_RESPONSE_BYTES) {
+                ops |= SelectionKey.OP_READ;
+            }
+            key.interestOps(ops);
+        }
+
+        private void handle(String head) {
+            int lineEnd = head.indexOf("\r\n");
+            String requestLine = lineEnd < 0 ? head : head.substring(0, lineEnd);
+            String[] parts = requestLine.split(" ");
+            if (parts.length != 3 || !parts[2].startsWith("HTTP/1.")) {
+                respond(400, "Bad Request", error("malformed request line"), false);
+                closeAfterWrite = true;
+                return;
+            }
+            String connectionHeader = header(head, "connection");
+            boolean keepAlive = parts[2].equals("HTTP/1.0")
+                    ? "keep-alive".equalsIgnoreCase(connectionHeader)
+                    : !"close".equalsIgnoreCase(connectionHeader);
+            if (!parts[0].equals("GET")) {
+                // A body would have to be skipped; lookups never send one
+                respond(405, "Method Not Allowed", error("only GET is supported"), false);
+                closeAfterWrite = true;
+                return;
+            }
+
+            String target = parts[1];
+            int queryStart = target.indexOf('?');
+            String path = queryStart < 0 ? target : target.substring(0, queryStart);
+            try {
+                Map<String, String> query = parseQuery(queryStart < 0 ? "" : target.substring(queryStart + 1));
+                switch (path) {
+                    case "/price":
+                        price(query, keepAlive);
+                        break;
+                    case "/search":
+                        search(query, keepAlive);
+                        break;
+                    default:
+                        respond(404, "Not Found", error("unknown path " + path), keepAlive);
+                }
+            } catch (IllegalArgumentException e) {
+                // Includes malformed percent-encoding in the query
+                respond(400, "Bad Request", error(e.getMessage()), keepAlive);
+            } catch (RuntimeException e) {
+                logger.log(Level.SEVERE, "Price lookup of " + target + " failed", e);
+                respond(500, "Internal Server Error", error("internal error"), false);
+                keepAlive = false;
+            }
+            if (!keepAlive) {
+                closeAfterWrite = true;
+            }
+        }
+
+        private void price(Map<String, String> query, boolean keepAlive) {
+            String barcode = query.get("barcode");
+            String id = query.get("id");
+            Item item;
+            Barcode parsed = null;
+            if (barcode != null) {
+                try {
+                    parsed = Barcode.parse(barcode);
+                } catch (IllegalArgumentException e) {
+                    // Not a GS1 code; the catalog may still hold it as is
+                }
+                item = productDAO.getProductByBarcode(parsed != null ? parsed.getLookupKey() : barcode);
+            } else if (id != null) {
+                try {
+                    item = productDAO.getCachedProduct(Integer.parseInt(id));
+                } catch (NumberFormatException e) {
+                    throw new IllegalArgumentException("id must be a number");
+                }
+            } else {
+                throw new IllegalArgumentException("barcode or id is required");
+            }
+            if (item == null) {
+                respond(404, "Not Found", error("product not found"), keepAlive);
+                return;
+            }
+            StringBuilder json = new StringBuilder(192);
+            appendItem(json, item);
+            if (parsed != null && parsed.hasEmbeddedPrice()) {
+                json.setLength(json.length() - 1);
+                json.append(",\"embeddedPrice\":").append(BigDecimal.valueOf(parsed.getEmbeddedPriceCents(), 2).toPlainString()).append('}');
+            } else if (parsed != null && parsed.hasEmbeddedWeight()) {
+                json.setLength(json.length() - 1);
+                json.append(",\"embeddedWeightGrams\":").append(parsed.getEmbeddedWeightGrams()).append('}');
+            }
+            respond(200, "OK", json, keepAlive);
+        }
+
+        private void search(Map<String, String> query, boolean keepAlive) {
+            String name = query.get("name");
+            if (name == null || name.trim().isEmpty()) {
+                throw new IllegalArgumentException("name is required");
+            }
+            int limit = DEFAULT_SEARCH_LIMIT;
+            if (query.containsKey("limit")) {
+                try {
+                    limit = Math.min(MAX_SEARCH_LIMIT, Integer.parseInt(query.get("limit")));
+                } catch (NumberFormatException e) {
+                    throw new IllegalArgumentException("limit must be a number");
+                }
+            }
+            List<Item> items = productDAO.searchCachedProducts(name, limit);
+            StringBuilder json = new StringBuilder(64 + items.size() * 160);
+            json.append('[');
+            for (int i = 0; i < items.size(); i++) {
+                if (i > 0) {
+                    json.append(',');
+                }
+                appendItem(json, items.get(i));
+            }
+            json.append(']');
+            respond(200, "OK", json, keepAlive);
+        }
+
+        private void respond(int status, String reason, CharSequence json, boolean keepAlive) {
+            byte[] body = json.toString().getBytes(StandardCharsets.UTF_8);
+            String head = "HTTP/1.1 " + status + " " + reason + "\r\n"
+                    + "Content-Type: application/json; charset=utf-8\r\n"
+                    + "Content-Length: " + body.length + "\r\n"
+                    + (keepAlive ? "" : "Connection: close\r\n")
+                    + "\r\n";
+            byte[] headBytes = head.getBytes(StandardCharsets.ISO_8859_1);
+            ensureCapacity(headBytes.length + body.length);
+            out.put(headBytes).put(body);
+        }
+
+        private void ensureCapacity(int bytes) {
+            if (out.remaining() < bytes) {
+                ByteBuffer larger = ByteBuffer.allocate(Math.max(out.capacity() * 2, out.position() + bytes));
+                out.flip();
+                larger.put(out);
+                out = larger;
+            }
+        }
+    }
+
+    private static void appendItem(StringBuilder json, Item item) {
+        json.append("{\"id\":").append(item.getId())
+                .append(",\"name\":");
+        appendString(json, item.getName());
+        json.append(",\"barcode\":");
+        appendString(json, item.getBarcode());
+        json.append(",\"price\":").append(item.getPrice().setScale(2, RoundingMode.HALF_UP).toPlainString())
+                .append(",\"vatRate\":").append(item.getVatRate().toPlainString())
+                .append(",\"priceWithVat\":").append(item.getPriceWithVat().setScale(2, RoundingMode.HALF_UP).toPlainString())
+                .append(",\"stock\":").append(item.getStockQuantity())
+                .append('}');
+    }
+
+    private static void appendString(StringBuilder json, String value) {
+        if (value == null) {
+            json.append("null");
+            return;
+        }
+        json.append('"');
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c == '"' || c == '\\') {
+                json.append('\\').append(c);
+            } else if (c < 0x20) {
+                json.append(String.format("\\u%04x", (int) c));
+            } else {
+                json.append(c);
+            }
+        }
+        json.append('"');
+    }
+
+    private static StringBuilder error(String message) {
+        StringBuilder json = new StringBuilder("{\"error\":");
+        appendString(json, message);
+        return json.append('}');
+    }
+
+    /**
+     * Returns the value of a header (name in lower case), or null if the request head has none.
+     */
+    private static String header(String head, String name) {
+        int lineStart = head.indexOf("\r\n");
+        while (lineStart >= 0) {
+            lineStart += 2;
+            int lineEnd = head.indexOf("\r\n", lineStart);
+            String line = lineEnd < 0 ? head.substring(lineStart) : head.substring(lineStart, lineEnd);
+            int colon = line.indexOf(':');
+            if (colon == name.length() && line.regionMatches(true, 0, name, 0, colon)) {
+                return line.substring(colon + 1).trim();
+            }
+            lineStart = lineEnd;
+        }
+        return null;
+    }
+
+    private static Map<String, String> parseQuery(String query) {
+        Map<String, String> parameters = new HashMap<>();
+        for (String pair : query.split("&")) {
+            if (pair.isEmpty()) {
+                continue;
+            }
+            int equals = pair.indexOf('=');
+            try {
+                String name = URLDecoder.decode(equals < 0 ? pair : pair.substring(0, equals), "UTF-8");
+                String value = equals < 0 ? "" : URLDecoder.decode(pair.substring(equals + 1), "UTF-8");
+                parameters.putIfAbsent(name, value);
+            } catch (UnsupportedEncodingException e) {
+                throw new IllegalStateException("UTF-8 is always supported", e);
+            }
+        }
+        return parameters;
+    }
+
+    /**
+     * Returns the absolute index of the first occurrence of the pattern between the buffer's position
+     * and limit, or -1.
+     */
+    private static int indexOf(ByteBuffer buffer, byte[] pattern) {
+        byte[] bytes = buffer.array();
+        int last = buffer.limit() - pattern.length;
+        outer:
+        for (int i = buffer.position(); i <= last; i++) {
+            for (int j = 0; j < pattern.length; j++) {
+                if (bytes[i + j] != pattern[j]) {
+                    continue outer;
+                }
+            }
+            return i;
+        }
+        return -1;
+    }
+}
@@ -0,0 +1,38 @@
+package se.systementor.Promotions;
+
+import java.math.BigDecimal;
+
+/**
+ * The AppliedDiscount class describes the discount a single promotion currently grants a basket.
+ * The amount is excluding VAT; the VAT rate is the rate of the matching lines, weighted by value,
+ * so callers can reduce the VAT total using the same convention they use for the lines themselves.
+ */
+public class AppliedDiscount {
+    private final int promotionId;
+    private final String description;
+    private final BigDecimal amount;
+    private final BigDecimal vatRate;
+
+    public AppliedDiscount(int promotionId, String description, BigDecimal amount, BigDecimal vatRate) {
+        this.promotionId = promotionId;
+        this.description = description;
+        this.amount = amount;
+        this.vatRate = vatRate;
+    }
+
+    // Getters
+    public int getPromotionId() { return promotionId; }
+    public String getDescription() { return description; }
+    public BigDecimal getAmount() { return amount; }
+    public BigDecimal getVatRate() { return vatRate; }
+
+    @Override
+    public String toString() {
+        return "AppliedDiscount{" +
+                "promotionId=" + promotionId +
+                ", description='" + description + '\'' +
+                ", amount=" + amount +
+                ", vatRate=" + vatRate +
+                '}';
+    }
+}
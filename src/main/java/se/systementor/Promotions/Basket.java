@@ -0,0 +1,294 @@
+package se.systementor.Promotions;
+
+import se.systementor.model.Item;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * The Basket class holds the lines of one customer's cart and the discounts granted by the
+ * promotions of a {@link PromotionEngine}.
+ *
+ * Discounts are maintained incrementally: adding or removing a line only updates and re-evaluates
+ * the promotions that target that line's product id or category. A basket is not thread-safe and is
+ * meant to be used from the thread that owns the cart (the Swing event thread in the register).
+ *
+ * Several promotions can target the same line, e.g. a percent discount and a multi-buy. Their
+ * discounts are granted in promotion order, and each line can lose at most its own value: a
+ * promotion's discount is capped by the value its lines have left after the earlier promotions, so a
+ * basket total never goes negative.
+ *
+ * The capping is incremental as well. Each line remembers how much of its value every promotion took,
+ * so a change only re-grants the promotions of the changed line, plus the later promotions that share
+ * a line whose takings changed as a result. The discounts are computed at most once per change, however
+ * often they are read.
+ */
+public class Basket {
+    private static final int NONE_DIRTY = Integer.MAX_VALUE;
+
+    private final PromotionEngine engine;
+    private final Map<Integer, Line> lines = new HashMap<>();
+    private final CompiledPromotion.State[] states;
+    private final long[] discountCents;
+    // The lines each promotion targets, in the order they were added
+    private final List<Set<Line>> linesByPromotion;
+    // Discounts after capping each line at its value
+    private final long[] grantedCents;
+    private long grantedTotalCents;
+    // Promotions whose grant has to be recomputed, and the lowest of them
+    private final boolean[] dirty;
+    private int firstDirty = NONE_DIRTY;
+    // The discounts returned by getDiscounts, until the next change
+    private List<AppliedDiscount> appliedDiscounts = Collections.emptyList();
+    private boolean appliedStale;
+    private int nextLineId = 1;
+
+    Basket(PromotionEngine engine) {
+        this.engine = engine;
+        int count = engine.getPromotionCount();
+        this.states = new CompiledPromotion.State[count];
+        this.discountCents = new long[count];
+        this.grantedCents = new long[count];
+        this.dirty = new boolean[count];
+        this.linesByPromotion = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            linesByPromotion.add(new LinkedHashSet<>());
+        }
+    }
+
+    /**
+     * Adds a line to the basket and re-evaluates the promotions affected by it.
+     *
+     * @param product  The product being sold.
+     * @param quantity The quantity sold (must be greater than zero).
+     * @return The id of the new line, used to remove it again.
+     * @throws IllegalArgumentException if product is null or quantity is not positive.
+     */
+    public int addLine(Item product, int quantity) {
+        if (product == null) {
+            throw new IllegalArgumentException("Product cannot be null");
+        }
+        if (quantity <= 0) {
+            throw new IllegalArgumentException("Quantity must be greater than zero");
+        }
+
+        Line line = new Line(product.getPriceAsLong(), quantity, product.getVatRateAsDouble(),
+                engine.affectedPromotions(product.getId(), product.getCategory()));
+        int lineId = nextLineId++;
+        lines.put(lineId, line);
+
+        for (int index : line.promotions) {
+            CompiledPromotion.State state = states[index];
+            if (state == null) {
+                state = engine.promotion(index).newState();
+                states[index] = state;
+            }
+            state.add(line.unitCents, line.quantity, line.vatRate);
+            linesByPromotion.get(index).add(line);
+            reevaluate(index);
+        }
+        return lineId;
+    }
+
+    /**
+     * Removes a line from the basket and re-evaluates the promotions affected by it.
+     *
+     * @param lineId The id returned by {@link #addLine}.
+     * @return true if the line existed; false otherwise.
+     */
+    public boolean removeLine(int lineId) {
+        Line line = lines.remove(lineId);
+        if (line == null) {
+            return false;
+        }
+        for (int index : line.promotions) {
+            states[index].remove(line.unitCents, line.quantity, line.vatRate);
+            linesByPromotion.get(index).remove(line);
+            reevaluate(index);
+        }
+        return true;
+    }
+
+    /**
+     * Removes all lines and discounts.
+     */
+    public void clear() {
+        lines.clear();
+        for (int i = 0; i < states.length; i++) {
+            states[i] = null;
+            discountCents[i] = 0;
+            grantedCents[i] = 0;
+            dirty[i] = false;
+            linesByPromotion.get(i).clear();
+        }
+        grantedTotalCents = 0;
+        firstDirty = NONE_DIRTY;
+        appliedDiscounts = Collections.emptyList();
+        appliedStale = false;
+    }
+
+    public boolean isEmpty() {
+        return lines.isEmpty();
+    }
+
+    /**
+     * Returns the sum of all discounts, excluding VAT.
+     */
+    public BigDecimal getTotalDiscount() {
+        grantDiscounts();
+        return BigDecimal.valueOf(grantedTotalCents, 2);
+    }
+
+    /**
+     * Returns the discounts currently granted, in promotion order. The list is unmodifiable and stays
+     * the same object until the basket changes.
+     */
+    public List<AppliedDiscount> getDiscounts() {
+        grantDiscounts();
+        if (appliedStale) {
+            List<AppliedDiscount> discounts = new ArrayList<>();
+            for (int i = 0; i < grantedCents.length; i++) {
+                if (grantedCents[i] > 0) {
+                    PromotionRule rule = engine.promotion(i).rule;
+                    BigDecimal vatRate = BigDecimal.valueOf(states[i].vatRate()).setScale(2, RoundingMode.HALF_UP);
+                    discounts.add(new AppliedDiscount(rule.getId(), rule.getDescription(),
+                            BigDecimal.valueOf(grantedCents[i], 2), vatRate));
+                }
+            }
+            appliedDiscounts = Collections.unmodifiableList(discounts);
+            appliedStale = false;
+        }
+        return appliedDiscounts;
+    }
+
+    /**
+     * Updates the uncapped discount of a promotion whose lines changed and schedules its grant.
+     */
+    private void reevaluate(int index) {
+        discountCents[index] = states[index].discountCents();
+        markDirty(index);
+        // The VAT rate of the discount follows the lines even if the amount stays the same
+        appliedStale = true;
+    }
+
+    private void markDirty(int index) {
+        dirty[index] = true;
+        firstDirty = Math.min(firstDirty, index);
+    }
+
+    /**
+     * Re-grants the promotions marked dirty, in promotion order. Re-granting one promotion can change
+     * what it takes from its lines, which marks the later promotions of those lines dirty in turn.
+     */
+    private void grantDiscounts() {
+        if (firstDirty == NONE_DIRTY) {
+            return;
+        }
+        for (int index = firstDirty; index < dirty.length; index++) {
+            if (dirty[index]) {
+                dirty[index] = false;
+                grant(index);
+            }
+        }
+        firstDirty = NONE_DIRTY;
+    }
+
+    /**
+     * Caps the discount of one promotion at the value its lines have left after the earlier
+     * promotions, and takes it from those lines in proportion to that value, then the rounding cents
+     * one by one.
+     */
+    private void grant(int index) {
+        Set<Line> targeted = linesByPromotion.get(index);
+        Line[] targetedLines = targeted.toArray(new Line[0]);
+        long[] remaining = new long[targetedLines.length];
+        long available = 0;
+        for (int i = 0; i < targetedLines.length; i++) {
+            remaining[i] = targetedLines[i].remainingBefore(index);
+            available += remaining[i];
+        }
+        long granted = Math.min(discountCents[index], available);
+        if (granted != grantedCents[index]) {
+            grantedTotalCents += granted - grantedCents[index];
+            grantedCents[index] = granted;
+            appliedStale = true;
+        }
+
+        long[] shares = new long[targetedLines.length];
+        long left = granted;
+        for (int i = 0; i < targetedLines.length && available > 0; i++) {
+            long share = (long) ((double) granted * remaining[i] / available);
+            shares[i] = Math.min(share, Math.min(left, remaining[i]));
+            left -= shares[i];
+        }
+        for (int i = 0; i < targetedLines.length && left > 0; i++) {
+            long extra = Math.min(left, remaining[i] - shares[i]);
+            shares[i] += extra;
+            left -= extra;
+        }
+
+        for (int i = 0; i < targetedLines.length; i++) {
+            Line line = targetedLines[i];
+            if (line.take(index, shares[i])) {
+                for (int later : line.promotions) {
+                    if (later > index) {
+                        markDirty(later);
+                    }
+                }
+            }
+        }
+    }
+
+    private static final class Line {
+        final long unitCents;
+        final int quantity;
+        final double vatRate;
+        // Sorted promotion indexes, and how much of this line's value each of them takes
+        final int[] promotions;
+        final long[] takenCents;
+
+        Line(long unitCents, int quantity, double vatRate, int[] promotions) {
+            this.unitCents = unitCents;
+            this.quantity = quantity;
+            this.vatRate = vatRate;
+            this.promotions = promotions;
+            this.takenCents = new long[promotions.length];
+        }
+
+        /**
+         * The value of the line left for a promotion after the promotions before it.
+         */
+        long remainingBefore(int promotion) {
+            long remaining = unitCents * quantity;
+            for (int i = 0; i < promotions.length && promotions[i] < promotion; i++) {
+                remaining -= takenCents[i];
+            }
+            return remaining;
+        }
+
+        /**
+         * Sets what a promotion takes from this line.
+         *
+         * @return true if that changed.
+         */
+        boolean take(int promotion, long cents) {
+            for (int i = 0; i < promotions.length; i++) {
+                if (promotions[i] == promotion) {
+                    if (takenCents[i] == cents) {
+                        return false;
+                    }
+                    takenCents[i] = cents;
+                    return true;
+                }
+            }
+            return false;
+        }
+    }
+}
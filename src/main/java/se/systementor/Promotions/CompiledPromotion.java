@@ -0,0 +1,206 @@
+package se.systementor.Promotions;
+
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * A promotion rule compiled into an evaluator. Compiled promotions are immutable and shared by all
+ * baskets; the per-basket bookkeeping lives in the {@link State} objects they create.
+ *
+ * All amounts are handled in öre (cents) as longs so that evaluation never allocates BigDecimals.
+ */
+abstract class CompiledPromotion {
+    final PromotionRule rule;
+
+    CompiledPromotion(PromotionRule rule) {
+        this.rule = rule;
+    }
+
+    /**
+     * Creates an empty per-basket state for this promotion.
+     */
+    abstract State newState();
+
+    /**
+     * Compiles a rule definition into the matching evaluator.
+     */
+    static CompiledPromotion compile(PromotionRule rule) {
+        switch (rule.getType()) {
+            case MULTI_BUY:
+                return new MultiBuy(rule);
+            case PERCENT_DISCOUNT:
+                return new PercentDiscount(rule);
+            case MIX_AND_MATCH:
+                return new MixAndMatch(rule);
+            default:
+                throw new IllegalArgumentException("Unsupported promotion type: " + rule.getType());
+        }
+    }
+
+    /**
+     * Incrementally maintained state of one promotion within one basket. Adding or removing a line
+     * only updates the aggregates; {@link #discountCents()} is re-evaluated from those aggregates.
+     */
+    abstract static class State {
+        long matchedCents;
+        double matchedVatWeight;
+
+        void add(long unitCents, int quantity, double vatRate) {
+            long lineCents = unitCents * quantity;
+            matchedCents += lineCents;
+            matchedVatWeight += lineCents * vatRate;
+        }
+
+        void remove(long unitCents, int quantity, double vatRate) {
+            long lineCents = unitCents * quantity;
+            matchedCents -= lineCents;
+            matchedVatWeight -= lineCents * vatRate;
+        }
+
+        abstract long discountCents();
+
+        /**
+         * The VAT rate of the discount, weighted by the value of the matching lines.
+         */
+        double vatRate() {
+            return matchedCents == 0 ? 0.0 : matchedVatWeight / matchedCents;
+        }
+    }
+
+    /**
+     * State that keeps the matched units as a multiset of unit prices, most expensive first.
+     */
+    abstract static class GroupingState extends State {
+        final TreeMap<Long, Integer> unitCounts = new TreeMap<>();
+        int units;
+
+        @Override
+        void add(long unitCents, int quantity, double vatRate) {
+            super.add(unitCents, quantity, vatRate);
+            unitCounts.merge(unitCents, quantity, Integer::sum);
+            units += quantity;
+        }
+
+        @Override
+        void remove(long unitCents, int quantity, double vatRate) {
+            super.remove(unitCents, quantity, vatRate);
+            Integer count = unitCounts.get(unitCents);
+            if (count != null) {
+                if (count <= quantity) {
+                    unitCounts.remove(unitCents);
+                } else {
+                    unitCounts.put(unitCents, count - quantity);
+                }
+            }
+            units -= quantity;
+        }
+    }
+
+    static final class MultiBuy extends CompiledPromotion {
+        private final int groupSize;
+        private final int payQuantity;
+
+        MultiBuy(PromotionRule rule) {
+            super(rule);
+            this.groupSize = rule.getGroupSize();
+            this.payQuantity = rule.getPayQuantity();
+        }
+
+        @Override
+        State newState() {
+            return new GroupingState() {
+                @Override
+                long discountCents() {
+                    int eligible = (units / groupSize) * groupSize;
+                    if (eligible == 0) {
+                        return 0;
+                    }
+                    // Units are grouped most expensive first; within each group the last
+                    // (groupSize - payQuantity) positions are free.
+                    long discount = 0;
+                    int position = 0;
+                    for (Map.Entry<Long, Integer> entry : unitCounts.descendingMap().entrySet()) {
+                        int end = Math.min(position + entry.getValue(), eligible);
+                        discount += entry.getKey() * (freePositions(end) - freePositions(position));
+                        position = end;
+                        if (position >= eligible) {
+                            break;
+                        }
+                    }
+                    return discount;
+                }
+            };
+        }
+
+        /**
+         * Number of free positions in [0, count).
+         */
+        private long freePositions(int count) {
+            return (long) (count / groupSize) * (groupSize - payQuantity) + Math.max(0, count % groupSize - payQuantity);
+        }
+    }
+
+    static final class PercentDiscount extends CompiledPromotion {
+        private final long basisPoints;
+
+        PercentDiscount(PromotionRule rule) {
+            super(rule);
+            this.basisPoints = rule.getPercent().movePointRight(2).longValue();
+        }
+
+        @Override
+        State newState() {
+            return new State() {
+                @Override
+                long discountCents() {
+                    return (matchedCents * basisPoints + 5_000) / 10_000;
+                }
+            };
+        }
+    }
+
+    static final class MixAndMatch extends CompiledPromotion {
+        private final int bundleSize;
+        private final long bundleCents;
+
+        MixAndMatch(PromotionRule rule) {
+            super(rule);
+            this.bundleSize = rule.getGroupSize();
+            this.bundleCents = rule.getBundlePrice().movePointRight(2).longValue();
+        }
+
+        @Override
+        State newState() {
+            return new GroupingState() {
+                @Override
+                long discountCents() {
+                    int bundles = units / bundleSize;
+                    if (bundles == 0) {
+                        return 0;
+                    }
+                    long discount = 0;
+                    long groupCents = 0;
+                    int filled = 0;
+                    for (Map.Entry<Long, Integer> entry : unitCounts.descendingMap().entrySet()) {
+                        int remaining = entry.getValue();
+                        while (remaining > 0) {
+                            int take = Math.min(remaining, bundleSize - filled);
+                            groupCents += entry.getKey() * take;
+                            filled += take;
+                            remaining -= take;
+                            if (filled == bundleSize) {
+                                discount += Math.max(0, groupCents - bundleCents);
+                                groupCents = 0;
+                                filled = 0;
+                                if (--bundles == 0) {
+                                    return discount;
+                                }
+                            }
+                        }
+                    }
+                    return discount;
+                }
+            };
+        }
+    }
+}
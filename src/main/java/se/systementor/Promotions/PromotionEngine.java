@@ -0,0 +1,123 @@
+package se.systementor.Promotions;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The PromotionEngine compiles promotion rule definitions into evaluators and indexes them by
+ * product id and category. The engine is immutable and can be shared by all baskets of a register;
+ * when the set of active promotions changes, compile a new engine.
+ *
+ * Looking up the promotions affected by a line is two hash lookups, so the cost of adding or removing
+ * a line depends on the promotions that target that line, not on the number of active promotions or
+ * the size of the basket.
+ */
+public class PromotionEngine {
+    private static final int[] NO_PROMOTIONS = new int[0];
+
+    private final CompiledPromotion[] promotions;
+    private final Map<Integer, int[]> byProductId;
+    private final Map<String, int[]> byCategory;
+
+    private PromotionEngine(CompiledPromotion[] promotions, Map<Integer, int[]> byProductId, Map<String, int[]> byCategory) {
+        this.promotions = promotions;
+        this.byProductId = byProductId;
+        this.byCategory = byCategory;
+    }
+
+    /**
+     * Compiles a set of rule definitions into an engine.
+     *
+     * @param rules The active promotion rules.
+     * @return A compiled engine.
+     * @throws IllegalArgumentException if rules is null.
+     */
+    public static PromotionEngine compile(Collection<PromotionRule> rules) {
+        if (rules == null) {
+            throw new IllegalArgumentException("Rules cannot be null");
+        }
+
+        CompiledPromotion[] compiled = new CompiledPromotion[rules.size()];
+        Map<Integer, List<Integer>> productIndex = new HashMap<>();
+        Map<String, List<Integer>> categoryIndex = new HashMap<>();
+
+        int index = 0;
+        for (PromotionRule rule : rules) {
+            compiled[index] = CompiledPromotion.compile(rule);
+            for (Integer productId : rule.getProductIds()) {
+                productIndex.computeIfAbsent(productId, k -> new ArrayList<>()).add(index);
+            }
+            for (String category : rule.getCategories()) {
+                categoryIndex.computeIfAbsent(category, k -> new ArrayList<>()).add(index);
+            }
+            index++;
+        }
+
+        return new PromotionEngine(compiled, toArrays(productIndex), toArrays(categoryIndex));
+    }
+
+    /**
+     * Returns an engine without any promotions.
+     */
+    public static PromotionEngine empty() {
+        return compile(Collections.<PromotionRule>emptyList());
+    }
+
+    /**
+     * Creates a new, empty basket priced by this engine.
+     */
+    public Basket newBasket() {
+        return new Basket(this);
+    }
+
+    public int getPromotionCount() {
+        return promotions.length;
+    }
+
+    CompiledPromotion promotion(int index) {
+        return promotions[index];
+    }
+
+    /**
+     * Returns the sorted, de-duplicated indexes of the promotions that match a product.
+     */
+    int[] affectedPromotions(int productId, String category) {
+        int[] byProduct = byProductId.getOrDefault(productId, NO_PROMOTIONS);
+        int[] byCat = category == null ? NO_PROMOTIONS : byCategory.getOrDefault(category, NO_PROMOTIONS);
+        if (byCat.length == 0) {
+            return byProduct;
+        }
+        if (byProduct.length == 0) {
+            return byCat;
+        }
+
+        // Merge two sorted arrays, dropping promotions that target both the product and its category
+        int[] merged = new int[byProduct.length + byCat.length];
+        int i = 0, j = 0, n = 0;
+        while (i < byProduct.length || j < byCat.length) {
+            int next;
+            if (j >= byCat.length || (i < byProduct.length && byProduct[i] <= byCat[j])) {
+                next = byProduct[i++];
+            } else {
+                next = byCat[j++];
+            }
+            if (n == 0 || merged[n - 1] != next) {
+                merged[n++] = next;
+            }
+        }
+        return n == merged.length ? merged : Arrays.copyOf(merged, n);
+    }
+
+    private static <K> Map<K, int[]> toArrays(Map<K, List<Integer>> index) {
+        Map<K, int[]> result = new HashMap<>(index.size() * 2);
+        for (Map.Entry<K, List<Integer>> entry : index.entrySet()) {
+            result.put(entry.getKey(), entry.getValue().stream().mapToInt(Integer::intValue).toArray());
+        }
+        return result;
+    }
+}
@@ -0,0 +1,144 @@
+package se.systementor.Promotions;
+
+import java.math.BigDecimal;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.Objects;
+import java.util.Set;
+
+/**
+ * The PromotionRule class is the definition of a single promotion as it is stored in the database.
+ * A rule targets a set of product ids and/or a set of categories; a cart line matches the rule if
+ * either its product id or its category is targeted.
+ *
+ * Rules are plain data. They are turned into indexed evaluators by {@link PromotionEngine#compile}.
+ */
+public final class PromotionRule {
+
+    /**
+     * The kinds of promotions supported by the engine.
+     */
+    public enum Type {
+        /** Buy N, pay for M ("3 för 2"). The cheapest items in each group are free. */
+        MULTI_BUY,
+        /** A percentage off every matching line, typically a whole category. */
+        PERCENT_DISCOUNT,
+        /** Any N matching items for a fixed bundle price. */
+        MIX_AND_MATCH
+    }
+
+    private final int id;
+    private final Type type;
+    private final String description;
+    private final Set<Integer> productIds;
+    private final Set<String> categories;
+    private final int groupSize;
+    private final int payQuantity;
+    private final BigDecimal percent;
+    private final BigDecimal bundlePrice;
+
+    private PromotionRule(int id, Type type, String description, Set<Integer> productIds, Set<String> categories,
+                          int groupSize, int payQuantity, BigDecimal percent, BigDecimal bundlePrice) {
+        if (description == null || description.trim().isEmpty()) {
+            throw new IllegalArgumentException("Description cannot be null or empty");
+        }
+        Set<Integer> products = productIds == null ? Collections.<Integer>emptySet() : new LinkedHashSet<>(productIds);
+        Set<String> cats = categories == null ? Collections.<String>emptySet() : new LinkedHashSet<>(categories);
+        if (products.isEmpty() && cats.isEmpty()) {
+            throw new IllegalArgumentException("A promotion must target at least one product or category");
+        }
+        this.id = id;
+        this.type = Objects.requireNonNull(type, "Type cannot be null");
+        this.description = description.trim();
+        this.productIds = Collections.unmodifiableSet(products);
+        this.categories = Collections.unmodifiableSet(cats);
+        this.groupSize = groupSize;
+        this.payQuantity = payQuantity;
+        this.percent = percent;
+        this.bundlePrice = bundlePrice;
+    }
+
+    /**
+     * Creates a multi-buy rule, e.g. "3 för 2" with groupSize 3 and payQuantity 2.
+     *
+     * @param id          The unique identifier of the promotion.
+     * @param description The text shown on the receipt.
+     * @param productIds  The targeted product ids (may be empty if categories are given).
+     * @param categories  The targeted categories (may be empty if product ids are given).
+     * @param groupSize   The number of items in a group (must be at least 2).
+     * @param payQuantity The number of items paid for in each group (0 &lt; payQuantity &lt; groupSize).
+     * @return The rule definition.
+     * @throws IllegalArgumentException if the quantities are invalid.
+     */
+    public static PromotionRule multiBuy(int id, String description, Set<Integer> productIds, Set<String> categories,
+                                         int groupSize, int payQuantity) {
+        if (groupSize < 2 || payQuantity <= 0 || payQuantity >= groupSize) {
+            throw new IllegalArgumentException("Multi-buy requires 0 < payQuantity < groupSize");
+        }
+        return new PromotionRule(id, Type.MULTI_BUY, description, productIds, categories, groupSize, payQuantity, null, null);
+    }
+
+    /**
+     * Creates a percentage discount rule, e.g. 20% off the "Dairy" category.
+     *
+     * @param id          The unique identifier of the promotion.
+     * @param description The text shown on the receipt.
+     * @param productIds  The targeted product ids (may be empty if categories are given).
+     * @param categories  The targeted categories (may be empty if product ids are given).
+     * @param percent     The discount in percent (0 &lt; percent &lt;= 100).
+     * @return The rule definition.
+     * @throws IllegalArgumentException if the percentage is invalid.
+     */
+    public static PromotionRule percentDiscount(int id, String description, Set<Integer> productIds, Set<String> categories,
+                                                BigDecimal percent) {
+        if (percent == null || percent.signum() <= 0 || percent.compareTo(BigDecimal.valueOf(100)) > 0) {
+            throw new IllegalArgumentException("Percent must be greater than 0 and at most 100");
+        }
+        return new PromotionRule(id, Type.PERCENT_DISCOUNT, description, productIds, categories, 0, 0, percent, null);
+    }
+
+    /**
+     * Creates a mix-and-match rule, e.g. "any 3 for 50 kr".
+     *
+     * @param id          The unique identifier of the promotion.
+     * @param description The text shown on the receipt.
+     * @param productIds  The targeted product ids (may be empty if categories are given).
+     * @param categories  The targeted categories (may be empty if product ids are given).
+     * @param bundleSize  The number of items in a bundle (must be at least 2).
+     * @param bundlePrice The price of a complete bundle (cannot be null or negative).
+     * @return The rule definition.
+     * @throws IllegalArgumentException if the bundle size or price is invalid.
+     */
+    public static PromotionRule mixAndMatch(int id, String description, Set<Integer> productIds, Set<String> categories,
+                                            int bundleSize, BigDecimal bundlePrice) {
+        if (bundleSize < 2) {
+            throw new IllegalArgumentException("Bundle size must be at least 2");
+        }
+        if (bundlePrice == null || bundlePrice.signum() < 0) {
+            throw new IllegalArgumentException("Bundle price cannot be null or negative");
+        }
+        return new PromotionRule(id, Type.MIX_AND_MATCH, description, productIds, categories, bundleSize, 0, null, bundlePrice);
+    }
+
+    // Getters
+    public int getId() { return id; }
+    public Type getType() { return type; }
+    public String getDescription() { return description; }
+    public Set<Integer> getProductIds() { return productIds; }
+    public Set<String> getCategories() { return categories; }
+    public int getGroupSize() { return groupSize; }
+    public int getPayQuantity() { return payQuantity; }
+    public BigDecimal getPercent() { return percent; }
+    public BigDecimal getBundlePrice() { return bundlePrice; }
+
+    @Override
+    public String toString() {
+        return "PromotionRule{" +
+                "id=" + id +
+                ", type=" + type +
+                ", description='" + description + '\'' +
+                ", productIds=" + productIds +
+                ", categories=" + categories +
+                '}';
+    }
+}
@@ -0,0 +1,52 @@
+package se.systementor.Reconciliation;
+
+/**
+ * The Discrepancy class is one entry of a {@link ReconciliationReport} that did not reconcile.
+ */
+public class Discrepancy {
+
+    public enum Type {
+        /** An order without any successful payment. */
+        ORDER_WITHOUT_PAYMENT,
+        /** A payment for an order that does not exist in the reconciled day, or for no order at all. */
+        PAYMENT_WITHOUT_ORDER,
+        /** An order whose payments do not add up to its total. */
+        AMOUNT_MISMATCH
+    }
+
+    private final Type type;
+    private final int orderId;
+    private final long paymentId;
+    private final long orderCents;
+    private final long paidCents;
+
+    /**
+     * Creates a discrepancy.
+     *
+     * @param type       The kind of discrepancy.
+     * @param orderId    The ID of the order, or 0 if the payment had no order.
+     * @param paymentId  The ID of the payment for a payment without an order whose order ID is 0; otherwise 0.
+     * @param orderCents The order total including VAT, in öre; 0 if there is no order.
+     * @param paidCents  The sum of the payments, in öre; 0 if there are none.
+     */
+    public Discrepancy(Type type, int orderId, long paymentId, long orderCents, long paidCents) {
+        this.type = type;
+        this.orderId = orderId;
+        this.paymentId = paymentId;
+        this.orderCents = orderCents;
+        this.paidCents = paidCents;
+    }
+
+    // Getters
+    public Type getType() { return type; }
+    public int getOrderId() { return orderId; }
+    public long getPaymentId() { return paymentId; }
+    public long getOrderCents() { return orderCents; }
+    public long getPaidCents() { return paidCents; }
+
+    @Override
+    public String toString() {
+        return String.format("%-22s order %-10d payment %-10d order total %10.2f paid %10.2f",
+                type, orderId, paymentId, orderCents / 100.0, paidCents / 100.0);
+    }
+}
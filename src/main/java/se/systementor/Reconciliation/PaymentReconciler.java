@@ -0,0 +1,333 @@
+package se.systementor.Reconciliation;
+
+import se.systementor.DatabaseConnect.Storage;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.stream.Stream;
+import java.util.logging.Logger;
+
+/**
+ * The PaymentReconciler class checks that the payments of a day match its orders.
+ *
+ * It runs a partitioned (grace) hash join on the order ID, so that a day of any size is reconciled with
+ * bounded memory:
+ * <ol>
+ *   <li>Both sides are streamed from storage once and written to spill files, partitioned by a hash of
+ *       the order ID. A matching order and payment always land in the same partition.</li>
+ *   <li>The partitions are joined in parallel. A worker loads the orders of one partition into a
+ *       primitive hash table, adds up the payments of each order from the partition's payment file, and
+ *       reports the orders that are unpaid or paid a different amount, and the payments without an order.
+ *       Each worker holds one partition at a time, so up to {@code parallelism} partitions are in memory
+ *       at once: about {@code parallelism / partitions} of the day's orders. Raise the number of
+ *       partitions, or lower the parallelism, to reconcile a larger day in less memory.</li>
+ * </ol>
+ * Payments are compared with the order total including VAT, in öre. An order can be paid with several
+ * payments (split tender); only their sum has to match.
+ */
+public class PaymentReconciler {
+    private static final Logger logger = Logger.getLogger(PaymentReconciler.class.getName());
+    private static final int SPILL_BUFFER_BYTES = 64 * 1024;
+    private static final int EMPTY = 0;
+
+    private final Storage storage;
+    private final int partitions;
+    private final int parallelism;
+    private final Path spillDirectory;
+
+    /**
+     * Creates a reconciler with 64 partitions, one worker per core, and spill files in the system's
+     * temporary directory.
+     *
+     * @param storage The storage to read orders and payments from.
+     */
+    public PaymentReconciler(Storage storage) {
+        this(storage, 64, Runtime.getRuntime().availableProcessors(), null);
+    }
+
+    /**
+     * Creates a reconciler.
+     *
+     * @param storage        The storage to read orders and payments from.
+     * @param partitions     The number of partitions; more partitions mean smaller ones.
+     * @param parallelism    The number of partitions joined, and held in memory, at the same time.
+     * @param spillDirectory The directory for the spill files, or null for the temporary directory.
+     * @throws IllegalArgumentException if storage is null or a count is not positive.
+     */
+    public PaymentReconciler(Storage storage, int partitions, int parallelism, Path spillDirectory) {
+        if (storage == null) {
+            throw new IllegalArgumentException("Storage cannot be null");
+        }
+        if (partitions <= 0 || parallelism <= 0) {
+            throw new IllegalArgumentException("Partitions and parallelism must be positive");
+        }
+        this.storage = storage;
+        this.partitions = partitions;
+        this.parallelism = parallelism;
+        this.spillDirectory = spillDirectory;
+    }
+
+    /**
+     * Reconciles the orders and payments of one day.
+     *
+     * @param date The day to reconcile.
+     * @return The report.
+     * @throws UncheckedIOException if the spill files cannot be written or read.
+     */
+    public ReconciliationReport reconcile(LocalDate date) {
+        Path directory = null;
+        try {
+            directory = spillDirectory != null
+                    ? Files.createTempDirectory(spillDirectory, "reconcile-")
+                    : Files.createTempDirectory("reconcile-");
+            Path[] orderFiles = new Path[partitions];
+            Path[] paymentFiles = new Path[partitions];
+            for (int i = 0; i < partitions; i++) {
+                orderFiles[i] = directory.resolve("orders-" + i);
+                paymentFiles[i] = directory.resolve("payments-" + i);
+            }
+
+            long[] orderCount = new long[1];
+            long[] paymentCount = new long[1];
+            boolean complete;
+            try (SpillWriter writer = new SpillWriter(orderFiles)) {
+                complete = storage.streamOrderTotals(date.atStartOfDay(), date.plusDays(1).atStartOfDay(),
+                        (orderId, totalCents) -> {
+                            writer.order(orderId, totalCents);
+                            orderCount[0]++;
+                        });
+            }
+            try (SpillWriter writer = new SpillWriter(paymentFiles)) {
+                complete &= storage.streamPayments(date.atStartOfDay(), date.plusDays(1).atStartOfDay(),
+                        (paymentId, orderId, amountCents) -> {
+                            writer.payment(paymentId, orderId, amountCents);
+                            paymentCount[0]++;
+                        });
+            }
+            if (!complete) {
+                logger.warning("Orders or payments of " + date + " could not be read completely");
+            }
+
+            long matched = 0;
+            List<Discrepancy> discrepancies = new ArrayList<>();
+            for (PartitionResult result : joinPartitions(orderFiles, paymentFiles)) {
+                matched += result.matched;
+                discrepancies.addAll(result.discrepancies);
+            }
+            return new ReconciliationReport(date, orderCount[0], paymentCount[0], matched, discrepancies, complete);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Reconciliation of " + date + " failed", e);
+        } finally {
+            deleteDirectory(directory);
+        }
+    }
+
+    private List<PartitionResult> joinPartitions(Path[] orderFiles, Path[] paymentFiles) throws IOException {
+        ExecutorService executor = Executors.newFixedThreadPool(Math.min(parallelism, partitions), runnable -> {
+            Thread thread = new Thread(runnable, "reconcile-join");
+            thread.setDaemon(true);
+            return thread;
+        });
+        try {
+            List<Future<PartitionResult>> futures = new ArrayList<>(partitions);
+            for (int i = 0; i < partitions; i++) {
+                int partition = i;
+                futures.add(executor.submit(() -> joinPartition(orderFiles[partition], paymentFiles[partition])));
+            }
+            List<PartitionResult> results = new ArrayList<>(partitions);
+            for (Future<PartitionResult> future : futures) {
+                results.add(future.get());
+            }
+            return results;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while joining partitions", e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof IOException) {
+                throw (IOException) e.getCause();
+            }
+            throw new IllegalStateException("Joining a partition failed", e.getCause());
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    /**
+     * Joins one partition: builds an open-addressing table of its orders keyed by order ID, probes it
+     * with its payments, and reports what does not match.
+     */
+    private PartitionResult joinPartition(Path orderFile, Path paymentFile) throws IOException {
+        int orders = (int) (Files.size(orderFile) / SpillWriter.ORDER_BYTES);
+        int capacity = Integer.highestOneBit(Math.max(4, orders * 2 - 1)) << 1;
+        int mask = capacity - 1;
+        int[] keys = new int[capacity];
+        long[] orderCents = new long[capacity];
+        long[] paidCents = new long[capacity];
+        int[] payments = new int[capacity];
+
+        try (DataInputStream in = open(orderFile)) {
+            for (int i = 0; i < orders; i++) {
+                int orderId = in.readInt();
+                long cents = in.readLong();
+                int slot = slotOf(keys, mask, orderId);
+                keys[slot] = orderId;
+                orderCents[slot] += cents;
+            }
+        }
+
+        PartitionResult result = new PartitionResult();
+        // Payments without an order in this day, by order ID; few on a healthy day
+        Map<Integer, long[]> orphans = new HashMap<>();
+        int paymentRecords = (int) (Files.size(paymentFile) / SpillWriter.PAYMENT_BYTES);
+        try (DataInputStream in = open(paymentFile)) {
+            for (int i = 0; i < paymentRecords; i++) {
+                long paymentId = in.readLong();
+                int orderId = in.readInt();
+                long cents = in.readLong();
+                if (orderId == 0) {
+                    result.discrepancies.add(new Discrepancy(Discrepancy.Type.PAYMENT_WITHOUT_ORDER, 0, paymentId, 0, cents));
+                    continue;
+                }
+                int slot = slotOf(keys, mask, orderId);
+                if (keys[slot] == EMPTY) {
+                    orphans.computeIfAbsent(orderId, id -> new long[1])[0] += cents;
+                } else {
+                    paidCents[slot] += cents;
+                    payments[slot]++;
+                }
+            }
+        }
+
+        for (int slot = 0; slot < capacity; slot++) {
+            if (keys[slot] == EMPTY) {
+                continue;
+            }
+            if (payments[slot] == 0) {
+                result.discrepancies.add(new Discrepancy(Discrepancy.Type.ORDER_WITHOUT_PAYMENT, keys[slot], 0, orderCents[slot], 0));
+            } else if (paidCents[slot] != orderCents[slot]) {
+                result.discrepancies.add(new Discrepancy(Discrepancy.Type.AMOUNT_MISMATCH, keys[slot], 0, orderCents[slot], paidCents[slot]));
+            } else {
+                result.matched++;
+            }
+        }
+        for (Map.Entry<Integer, long[]> orphan : orphans.entrySet()) {
+            result.discrepancies.add(new Discrepancy(Discrepancy.Type.PAYMENT_WITHOUT_ORDER, orphan.getKey(), 0, 0, orphan.getValue()[0]));
+        }
+        return result;
+    }
+
+    /**
+     * Returns the slot holding the order ID, or the empty slot where it belongs. Order IDs are positive,
+     * so 0 marks an empty slot.
+     */
+    private static int slotOf(int[] keys, int mask, int orderId) {
+        int slot = mix(orderId) & mask;
+        while (keys[slot] != EMPTY && keys[slot] != orderId) {
+            slot = (slot + 1) & mask;
+        }
+        return slot;
+    }
+
+    private static int mix(int orderId) {
+        int h = orderId * 0x9E3779B9;
+        return h ^ (h >>> 16);
+    }
+
+    private static DataInputStream open(Path file) throws IOException {
+        return new DataInputStream(new BufferedInputStream(Files.newInputStream(file), SPILL_BUFFER_BYTES));
+    }
+
+    private static void deleteDirectory(Path directory) {
+        if (directory == null) {
+            return;
+        }
+        try {
+            try (Stream<Path> files = Files.list(directory)) {
+                for (Path file : (Iterable<Path>) files::iterator) {
+                    Files.deleteIfExists(file);
+                }
+            }
+            Files.deleteIfExists(directory);
+        } catch (IOException e) {
+            logger.warning("Could not delete spill directory " + directory + ": " + e.getMessage());
+        }
+    }
+
+    /**
+     * Writes records to one spill file per partition, chosen by a hash of the order ID that differs
+     * from the one of the join's hash table.
+     */
+    private static final class SpillWriter implements AutoCloseable {
+        static final int ORDER_BYTES = Integer.BYTES + Long.BYTES;
+        static final int PAYMENT_BYTES = Long.BYTES + Integer.BYTES + Long.BYTES;
+
+        private final DataOutputStream[] outputs;
+
+        SpillWriter(Path[] files) throws IOException {
+            outputs = new DataOutputStream[files.length];
+            for (int i = 0; i < files.length; i++) {
+                outputs[i] = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(files[i]), SPILL_BUFFER_BYTES));
+            }
+        }
+
+        void order(int orderId, long cents) {
+            try {
+                DataOutputStream out = outputs[partitionOf(orderId)];
+                out.writeInt(orderId);
+                out.writeLong(cents);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+
+        void payment(long paymentId, int orderId, long cents) {
+            try {
+                DataOutputStream out = outputs[partitionOf(orderId)];
+                out.writeLong(paymentId);
+                out.writeInt(orderId);
+                out.writeLong(cents);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+
+        private int partitionOf(int orderId) {
+            return Math.floorMod(Integer.reverse(mix(orderId)), outputs.length);
+        }
+
+        @Override
+        public void close() throws IOException {
+            IOException failure = null;
+            for (DataOutputStream out : outputs) {
+                try {
+                    out.close();
+                } catch (IOException e) {
+                    failure = e;
+                }
+            }
+            if (failure != null) {
+                throw failure;
+            }
+        }
+    }
+
+    private static final class PartitionResult {
+        long matched;
+        final List<Discrepancy> discrepancies = new ArrayList<>();
+    }
+}
@@ -0,0 +1,59 @@
+package se.systementor.Reconciliation;
+
+import java.time.LocalDate;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * The ReconciliationReport class is the result of reconciling the payments of one day with its orders.
+ */
+public class ReconciliationReport {
+    private final LocalDate date;
+    private final long orderCount;
+    private final long paymentCount;
+    private final long matchedCount;
+    private final List<Discrepancy> discrepancies;
+    private final boolean complete;
+
+    public ReconciliationReport(LocalDate date, long orderCount, long paymentCount, long matchedCount,
+                                List<Discrepancy> discrepancies, boolean complete) {
+        this.date = date;
+        this.orderCount = orderCount;
+        this.paymentCount = paymentCount;
+        this.matchedCount = matchedCount;
+        this.discrepancies = Collections.unmodifiableList(discrepancies);
+        this.complete = complete;
+    }
+
+    // Getters
+    public LocalDate getDate() { return date; }
+    public long getOrderCount() { return orderCount; }
+    public long getPaymentCount() { return paymentCount; }
+
+    /**
+     * The number of orders whose payments add up to their total.
+     */
+    public long getMatchedCount() { return matchedCount; }
+    public List<Discrepancy> getDiscrepancies() { return discrepancies; }
+
+    /**
+     * Whether both sides were read completely. An incomplete report can contain false discrepancies.
+     */
+    public boolean isComplete() { return complete; }
+
+    public boolean isReconciled() {
+        return complete && discrepancies.isEmpty();
+    }
+
+    @Override
+    public String toString() {
+        return "ReconciliationReport{" +
+                "date=" + date +
+                ", orders=" + orderCount +
+                ", payments=" + paymentCount +
+                ", matched=" + matchedCount +
+                ", discrepancies=" + discrepancies.size() +
+                ", complete=" + complete +
+                '}';
+    }
+}
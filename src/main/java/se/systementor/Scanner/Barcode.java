@@ -0,0 +1,134 @@
+package se.systementor.Scanner;
+
+/**
+ * The Barcode class is a scanned and validated EAN-8, EAN-13 or UPC-A code.
+ *
+ * In-store codes with an EAN-13 prefix of 20 to 29 carry a variable measure: digits 2-6 identify the
+ * product and digits 7-11 hold the price in öre (prefixes 20-22) or the weight in grams (prefixes 23-29).
+ * Such products are registered in the catalog under their first seven digits, see {@link #getLookupKey()}.
+ */
+public final class Barcode {
+
+    public enum Format { EAN_8, EAN_13, UPC_A }
+
+    private final String code;
+    private final Format format;
+    private final String lookupKey;
+    private final long embeddedPriceCents;
+    private final int embeddedWeightGrams;
+
+    private Barcode(String code, Format format, String lookupKey, long embeddedPriceCents, int embeddedWeightGrams) {
+        this.code = code;
+        this.format = format;
+        this.lookupKey = lookupKey;
+        this.embeddedPriceCents = embeddedPriceCents;
+        this.embeddedWeightGrams = embeddedWeightGrams;
+    }
+
+    /**
+     * Parses and validates a scanned code.
+     *
+     * @param code The digits sent by the scanner.
+     * @return The parsed barcode.
+     * @throws IllegalArgumentException if the code is not 8, 12 or 13 digits or its check digit is wrong.
+     */
+    public static Barcode parse(String code) {
+        if (code == null) {
+            throw new IllegalArgumentException("Barcode cannot be null");
+        }
+        Format format;
+        switch (code.length()) {
+            case 8:
+                format = Format.EAN_8;
+                break;
+            case 12:
+                format = Format.UPC_A;
+                break;
+            case 13:
+                format = Format.EAN_13;
+                break;
+            default:
+                throw new IllegalArgumentException("Unsupported barcode length: " + code.length());
+        }
+        for (int i = 0; i < code.length(); i++) {
+            if (code.charAt(i) < '0' || code.charAt(i) > '9') {
+                throw new IllegalArgumentException("Barcode must only contain digits: " + code);
+            }
+        }
+        if (!hasValidCheckDigit(code)) {
+            throw new IllegalArgumentException("Invalid check digit: " + code);
+        }
+
+        if (format == Format.EAN_13 && code.charAt(0) == '2') {
+            int value = Integer.parseInt(code.substring(7, 12));
+            String lookupKey = code.substring(0, 7);
+            if (code.charAt(1) <= '2') {
+                return new Barcode(code, format, lookupKey, value, -1);
+            }
+            return new Barcode(code, format, lookupKey, -1, value);
+        }
+        return new Barcode(code, format, code, -1, -1);
+    }
+
+    /**
+     * Checks the GS1 check digit of an EAN-8, EAN-13 or UPC-A code: counting from the right, excluding
+     * the check digit, digits are weighted 3, 1, 3, 1, ...
+     *
+     * @param code A string of digits.
+     * @return true if the last digit matches the check digit of the others.
+     */
+    public static boolean hasValidCheckDigit(String code) {
+        int sum = 0;
+        boolean weightThree = true;
+        for (int i = code.length() - 2; i >= 0; i--) {
+            int digit = code.charAt(i) - '0';
+            sum += weightThree ? digit * 3 : digit;
+            weightThree = !weightThree;
+        }
+        int check = (10 - sum % 10) % 10;
+        return check == code.charAt(code.length() - 1) - '0';
+    }
+
+    public String getCode() {
+        return code;
+    }
+
+    public Format getFormat() {
+        return format;
+    }
+
+    /**
+     * The barcode to look the product up by: the full code, or the first seven digits of a
+     * variable-measure code.
+     */
+    public String getLookupKey() {
+        return lookupKey;
+    }
+
+    public boolean hasEmbeddedPrice() {
+        return embeddedPriceCents >= 0;
+    }
+
+    public boolean hasEmbeddedWeight() {
+        return embeddedWeightGrams >= 0;
+    }
+
+    /**
+     * The price encoded in the code, in öre, or -1 if it has none.
+     */
+    public long getEmbeddedPriceCents() {
+        return embeddedPriceCents;
+    }
+
+    /**
+     * The weight encoded in the code, in grams, or -1 if it has none.
+     */
+    public int getEmbeddedWeightGrams() {
+        return embeddedWeightGrams;
+    }
+
+    @Override
+    public String toString() {
+        return format + " " + code;
+    }
+}
@@ -0,0 +1,23 @@
+package se.systementor.Scanner;
+
+/**
+ * Receives the scans assembled by a {@link ScannerInput}. Both methods are called on the scanner's
+ * worker thread, never on the event dispatch thread.
+ */
+public interface ScanListener {
+
+    /**
+     * Called for every scan with a valid check digit.
+     *
+     * @param barcode The scanned code.
+     */
+    void onScan(Barcode barcode);
+
+    /**
+     * Called when a scan of barcode length was received but could not be parsed.
+     *
+     * @param code   The raw digits.
+     * @param reason Why the code was rejected.
+     */
+    void onInvalidScan(String code, String reason);
+}
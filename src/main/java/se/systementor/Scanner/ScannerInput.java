@@ -0,0 +1,235 @@
+package se.systementor.Scanner;
+
+import javax.swing.text.BadLocationException;
+import javax.swing.text.Document;
+import javax.swing.text.JTextComponent;
+import java.awt.Component;
+import java.awt.KeyEventDispatcher;
+import java.awt.KeyboardFocusManager;
+import java.awt.event.KeyEvent;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * The ScannerInput class reads a keyboard-wedge barcode scanner.
+ *
+ * Such a scanner types the digits of a code as key strokes, a few milliseconds apart, usually followed
+ * by Enter. The key event dispatcher only timestamps each typed character and hands it to a queue, so
+ * the event dispatch thread is never held up; a worker thread assembles the characters into codes,
+ * validates them and passes them to the {@link ScanListener}.
+ *
+ * A burst ends at Enter or Tab, or, for scanners configured without a suffix, when no character
+ * arrives for {@code maxGapMillis}. Characters more than {@code maxGapMillis} apart start a new
+ * burst, which keeps a person typing digits from being read as a scan.
+ *
+ * While no editable text component has the focus, every typed character is taken. While one has the
+ * focus, a character is only taken once it arrives within {@code maxGapMillis} of the one before it,
+ * which a person cannot type; that earlier character has already reached the text component, so it is
+ * taken back out of it and joins the scan. The Enter or Tab that ends such a burst is swallowed as well,
+ * so a scan never fires the action of the focused field. Typing into a text field (like the quantity
+ * field) works as before, and scanning while it has the focus still reaches the cart.
+ */
+public class ScannerInput implements KeyEventDispatcher {
+    private static final Logger logger = Logger.getLogger(ScannerInput.class.getName());
+    private static final int MAX_CODE_LENGTH = 32;
+
+    private final ScanListener listener;
+    private final long maxGapMillis;
+    // Each typed character packed with its timestamp: (when << 16) | char
+    private final BlockingQueue<Long> keys = new ArrayBlockingQueue<>(4096);
+    private final StringBuilder burst = new StringBuilder(MAX_CODE_LENGTH);
+    private long lastKeyMillis;
+    private Thread worker;
+
+    // Burst detection in text components; only touched on the event dispatch thread
+    private long lastTypedMillis = Long.MIN_VALUE;
+    private boolean inTextBurst;
+    private JTextComponent heldField;
+    private int heldOffset;
+    private char heldChar;
+    private long heldMillis;
+
+    /**
+     * Creates a scanner input.
+     *
+     * @param listener     Receives the assembled scans.
+     * @param maxGapMillis The longest pause between two characters of one scan.
+     * @throws IllegalArgumentException if the listener is null or the gap is not positive.
+     */
+    public ScannerInput(ScanListener listener, long maxGapMillis) {
+        if (listener == null) {
+            throw new IllegalArgumentException("Listener cannot be null");
+        }
+        if (maxGapMillis <= 0) {
+            throw new IllegalArgumentException("Max gap must be positive");
+        }
+        this.listener = listener;
+        this.maxGapMillis = maxGapMillis;
+    }
+
+    /**
+     * Starts the worker thread and registers with the current keyboard focus manager.
+     */
+    public synchronized void start() {
+        if (worker != null) {
+            throw new IllegalStateException("Scanner input already started");
+        }
+        worker = new Thread(this::assembleScans, "barcode-scanner");
+        worker.setDaemon(true);
+        worker.start();
+        KeyboardFocusManager.getCurrentKeyboardFocusManager().addKeyEventDispatcher(this);
+    }
+
+    /**
+     * Unregisters from the keyboard focus manager and stops the worker thread.
+     */
+    public synchronized void stop() {
+        KeyboardFocusManager.getCurrentKeyboardFocusManager().removeKeyEventDispatcher(this);
+        if (worker != null) {
+            worker.interrupt();
+            worker = null;
+        }
+    }
+
+    @Override
+    public boolean dispatchKeyEvent(KeyEvent e) {
+        Component component = e.getComponent();
+        if (e.getID() != KeyEvent.KEY_TYPED) {
+            // The key press and release of the Enter or Tab that ends a burst belong to the scan
+            return inTextBurst && isEditingText(component) && isTerminator(e.getKeyCode())
+                    && e.getWhen() - lastTypedMillis <= maxGapMillis;
+        }
+
+        char c = e.getKeyChar();
+        long when = e.getWhen();
+        boolean fast = lastTypedMillis != Long.MIN_VALUE && when - lastTypedMillis <= maxGapMillis;
+        lastTypedMillis = when;
+        if (!isEditingText(component)) {
+            inTextBurst = false;
+            heldField = null;
+            enqueue(c, when);
+            return true;
+        }
+
+        JTextComponent field = (JTextComponent) component;
+        if (inTextBurst && fast) {
+            enqueue(c, when);
+            return true;
+        }
+        if (fast && field == heldField && isDigit(c)) {
+            // Too fast for a person: take back the digit that went into the field and start a scan
+            takeBack(field, heldOffset, heldChar);
+            heldField = null;
+            inTextBurst = true;
+            enqueue(heldChar, heldMillis);
+            enqueue(c, when);
+            return true;
+        }
+
+        inTextBurst = false;
+        heldField = isDigit(c) ? field : null;
+        heldOffset = field.getSelectionStart();
+        heldChar = c;
+        heldMillis = when;
+        return false;
+    }
+
+    /**
+     * Hands a typed character to the worker, as if it came from the keyboard. Used by other input
+     * sources, such as serial scanners, and for testing without a display.
+     *
+     * @param c          The character.
+     * @param whenMillis The time the character was typed.
+     */
+    public void type(char c, long whenMillis) {
+        keys.offer((whenMillis << 16) | c);
+    }
+
+    private void enqueue(char c, long whenMillis) {
+        if (!keys.offer((whenMillis << 16) | c)) {
+            logger.warning("Scanner input queue full, dropping key");
+        }
+    }
+
+    private static boolean isEditingText(Component component) {
+        return component instanceof JTextComponent && ((JTextComponent) component).isEditable();
+    }
+
+    private static boolean isDigit(char c) {
+        return c >= '0' && c <= '9';
+    }
+
+    private static boolean isTerminator(int keyCode) {
+        return keyCode == KeyEvent.VK_ENTER || keyCode == KeyEvent.VK_TAB;
+    }
+
+    /**
+     * Removes a character the text component inserted at the given offset, if it is still there.
+     */
+    private static void takeBack(JTextComponent field, int offset, char c) {
+        Document document = field.getDocument();
+        try {
+            if (offset < document.getLength() && document.getText(offset, 1).charAt(0) == c) {
+                document.remove(offset, 1);
+            }
+        } catch (BadLocationException e) {
+            logger.log(Level.FINE, "Could not take back a scanned digit from the focused field", e);
+        }
+    }
+
+    private void assembleScans() {
+        try {
+            while (!Thread.currentThread().isInterrupted()) {
+                Long key = burst.length() == 0 ? keys.take() : keys.poll(maxGapMillis, TimeUnit.MILLISECONDS);
+                if (key == null) {
+                    // The scanner went quiet without sending a terminator
+                    endBurst();
+                    continue;
+                }
+                onKey((char) (key & 0xFFFF), key >>> 16);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void onKey(char c, long whenMillis) {
+        if (burst.length() > 0 && whenMillis - lastKeyMillis > maxGapMillis) {
+            burst.setLength(0);
+        }
+        lastKeyMillis = whenMillis;
+
+        if (c == '\n' || c == '\r' || c == '\t') {
+            endBurst();
+        } else if (isDigit(c) && burst.length() < MAX_CODE_LENGTH) {
+            burst.append(c);
+        } else {
+            burst.setLength(0);
+        }
+    }
+
+    private void endBurst() {
+        int length = burst.length();
+        String code = burst.toString();
+        burst.setLength(0);
+        if (length != 8 && length < 12) {
+            return;
+        }
+
+        try {
+            Barcode barcode;
+            try {
+                barcode = Barcode.parse(code);
+            } catch (IllegalArgumentException e) {
+                listener.onInvalidScan(code, e.getMessage());
+                return;
+            }
+            listener.onScan(barcode);
+        } catch (RuntimeException e) {
+            logger.log(Level.SEVERE, "Scan listener failed for " + code, e);
+        }
+    }
+}
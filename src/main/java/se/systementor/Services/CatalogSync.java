@@ -0,0 +1,86 @@
+package se.systementor.Services;
+
+import se.systementor.model.CatalogDelta;
+
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * The CatalogSync class keeps the catalog cache of a {@link ProductDAO} up to date by polling for
+ * catalog deltas on a background thread. Each non-empty delta is passed to the listener after it
+ * has been applied to the cache, so the listener can patch the UI in place.
+ */
+public class CatalogSync {
+    private static final Logger LOGGER = Logger.getLogger(CatalogSync.class.getName());
+
+    private final ProductDAO productDAO;
+    private final long intervalMillis;
+    private final Consumer<CatalogDelta> listener;
+    private ScheduledExecutorService scheduler;
+
+    /**
+     * Creates a catalog sync.
+     *
+     * @param productDAO     The DAO whose catalog cache is kept up to date.
+     * @param intervalMillis The time between two polls.
+     * @param listener       Called on the sync thread with every non-empty delta.
+     * @throws IllegalArgumentException if productDAO or listener is null, or the interval is not positive.
+     */
+    public CatalogSync(ProductDAO productDAO, long intervalMillis, Consumer<CatalogDelta> listener) {
+        if (productDAO == null || listener == null) {
+            throw new IllegalArgumentException("ProductDAO and listener cannot be null");
+        }
+        if (intervalMillis <= 0) {
+            throw new IllegalArgumentException("Sync interval must be positive");
+        }
+        this.productDAO = productDAO;
+        this.intervalMillis = intervalMillis;
+        this.listener = listener;
+    }
+
+    /**
+     * Starts polling.
+     */
+    public synchronized void start() {
+        if (scheduler != null) {
+            throw new IllegalStateException("Catalog sync already started");
+        }
+        scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "catalog-sync");
+            thread.setDaemon(true);
+            return thread;
+        });
+        scheduler.scheduleWithFixedDelay(this::syncNow, intervalMillis, intervalMillis, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Stops polling.
+     */
+    public synchronized void stop() {
+        if (scheduler != null) {
+            scheduler.shutdownNow();
+            scheduler = null;
+        }
+    }
+
+    /**
+     * Fetches and applies the changes since the last sync, and notifies the listener if there were any.
+     */
+    public void syncNow() {
+        try {
+            CatalogDelta delta = productDAO.syncCatalog();
+            if (!delta.isEmpty()) {
+                LOGGER.info("Catalog synced to version " + delta.getVersion() + ": " + delta.getChangedItems().size()
+                        + " changed, " + delta.getRemovedIds().size() + " removed");
+                listener.accept(delta);
+            }
+        } catch (RuntimeException e) {
+            // A failed poll must not cancel the schedule
+            LOGGER.log(Level.WARNING, "Catalog sync failed", e);
+        }
+    }
+}
@@ -0,0 +1,115 @@
+package se.systementor.Services;
+
+import se.systementor.Audit.AuditLog;
+import se.systementor.Promotions.AppliedDiscount;
+
+import java.math.BigDecimal;
+import java.util.List;
+import java.util.logging.Logger;
+
+/**
+ * CheckoutService completes a sale: it takes the payment, creates the order and stores the payment and
+ * the promotion discounts with it.
+ *
+ * The payment is taken before the order is created, so a declined payment leaves no order behind and the
+ * cashier can simply try again. If the order cannot be created after the customer has paid, the payment
+ * is stored without an order, so the reconciliation reports it for a refund.
+ */
+public class CheckoutService {
+    private static final Logger logger = Logger.getLogger(CheckoutService.class.getName());
+
+    /**
+     * How a checkout ended.
+     */
+    public enum Status {
+        /** The payment was declined; nothing but the declined attempt was stored. */
+        DECLINED,
+        /** The customer paid but the order could not be created; the payment was stored without an order. */
+        ORDER_FAILED,
+        /** The order was created but its payment could not be stored; the payment is in the audit log. */
+        PAYMENT_NOT_STORED,
+        /** The order was created and paid. */
+        COMPLETED
+    }
+
+    private final OrderDAO orderDAO;
+    private final PaymntService paymentService;
+
+    /**
+     * Creates a checkout service.
+     *
+     * @param orderDAO       The DAO orders and discounts are stored with.
+     * @param paymentService The service that takes and stores payments.
+     */
+    public CheckoutService(OrderDAO orderDAO, PaymntService paymentService) {
+        this.orderDAO = orderDAO;
+        this.paymentService = paymentService;
+    }
+
+    /**
+     * Takes the payment of a cart and creates its order. The payment and the order are recorded under the
+     * correlation id bound to the current thread.
+     *
+     * @param netAmount     The cart total after discounts, excluding VAT.
+     * @param netVat        The VAT of the cart after discounts.
+     * @param paymentMethod The payment method ("creditcard", "cash", "paypal").
+     * @param discounts     The promotion discounts granted on the cart.
+     * @return The outcome of the checkout, with the order ID if an order was created.
+     * @throws IllegalArgumentException if an amount or the discounts are null, or the payment method is unsupported.
+     */
+    public Result checkout(BigDecimal netAmount, BigDecimal netVat, String paymentMethod, List<AppliedDiscount> discounts) {
+        if (netAmount == null || netVat == null) {
+            throw new IllegalArgumentException("Amounts cannot be null");
+        }
+        if (discounts == null) {
+            throw new IllegalArgumentException("Discounts cannot be null");
+        }
+        double amount = netAmount.add(netVat).doubleValue();
+        String correlationId = AuditLog.getCurrentCorrelationId();
+        if (!paymentService.authorize(amount, paymentMethod, correlationId)) {
+            return new Result(Status.DECLINED, -1);
+        }
+
+        int orderId = orderDAO.createOrder(netAmount.doubleValue(), netVat.doubleValue());
+        if (orderId == -1) {
+            // The customer has paid; keep the payment on record so the reconciliation reports it
+            paymentService.recordPayment(0, amount, paymentMethod, correlationId);
+            return new Result(Status.ORDER_FAILED, -1);
+        }
+        boolean paymentStored = paymentService.recordPayment(orderId, amount, paymentMethod, correlationId);
+        if (!orderDAO.addOrderDiscounts(orderId, discounts)) {
+            logger.warning("Could not store the discounts of order " + orderId + "; a reprinted receipt will not show them");
+        }
+        return new Result(paymentStored ? Status.COMPLETED : Status.PAYMENT_NOT_STORED, orderId);
+    }
+
+    /**
+     * The outcome of a checkout.
+     */
+    public static final class Result {
+        private final Status status;
+        private final int orderId;
+
+        Result(Status status, int orderId) {
+            this.status = status;
+            this.orderId = orderId;
+        }
+
+        // Getters
+        public Status getStatus() { return status; }
+        public int getOrderId() { return orderId; }
+
+        /**
+         * Returns true if an order was created, whether or not its payment could be stored.
+         */
+        public boolean hasOrder() { return orderId != -1; }
+
+        @Override
+        public String toString() {
+            return "Result{" +
+                    "status=" + status +
+                    ", orderId=" + orderId +
+                    '}';
+        }
+    }
+}
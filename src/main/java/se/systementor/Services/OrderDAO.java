@@ -1,66 +1,70 @@
 package se.systementor.Services;
 
-import se.systementor.DatabaseConnect.Database;
+import se.systementor.Audit.AuditLog;
+import se.systementor.DatabaseConnect.Storage;
+import se.systementor.DatabaseConnect.StorageFactory;
+import se.systementor.Promotions.AppliedDiscount;
+import se.systementor.model.Order;
+import se.systementor.model.OrderDetails;
+import se.systementor.model.OrderItem;
 
-import java.sql.*;
+import java.time.LocalDateTime;
+import java.util.List;
 
 public class OrderDAO {
-    private final Database db;
+    private final Storage storage;
+    private final AuditLog auditLog;
 
     /**
-     * Default constructor for the OrderDAO class. It initializes the Database object for connecting to the database.
+     * Default constructor for the OrderDAO class. It uses the storage configured in pos.properties.
      */
     public OrderDAO() {
-        this.db = new Database();
+        this(StorageFactory.create());
     }
 
     /**
-     * Constructor for the OrderDAO class that accepts a Database object.
-     * This allows for dependency injection of the Database object.
+     * Constructor for the OrderDAO class that accepts a Storage object.
+     * This allows for dependency injection of the storage backend.
      *
-     * @param database The Database object to be used for database connections.
+     * @param storage The Storage object to be used for reading and writing orders.
      */
-    public OrderDAO(Database database) {
-        this.db = database;  // Assign the passed Database object to the instance field
+    public OrderDAO(Storage storage) {
+        this(storage, AuditLog.getDefault());
     }
 
     /**
-     * Creates a new order in the database and returns the generated order ID.
+     * Constructor for the OrderDAO class that accepts a Storage object and the audit log that created
+     * orders are recorded in.
      *
-     * This method inserts a new record into the `orders` table, including the total price and total VAT of the order.
-     * The generated order ID is returned for further use, such as adding items to the order.
+     * @param storage The Storage object to be used for reading and writing orders.
+     * @param auditLog The audit log to record orders in.
+     */
+    public OrderDAO(Storage storage, AuditLog auditLog) {
+        this.storage = storage;  // Assign the passed Storage object to the instance field
+        this.auditLog = auditLog;
+    }
+
+    /**
+     * Creates a new order and returns the generated order ID.
+     *
+     * The generated order ID is returned for further use, such as adding items to the order. The order
+     * is recorded in the audit log under the correlation id bound to the current thread, if any.
      *
      * @param totalPrice The total price of the order.
      * @param totalVat The total VAT of the order.
      * @return The generated order ID, or -1 if the operation fails.
      */
     public int createOrder(double totalPrice, double totalVat) {
-        String query = "INSERT INTO orders (total_price, total_vat) VALUES (?, ?)";
-        int orderId = -1;
-
-        try (Connection conn = db.getConnection();  // Use instance method for DB connection
-             PreparedStatement stmt = conn.prepareStatement(query, Statement.RETURN_GENERATED_KEYS)) {
-            stmt.setDouble(1, totalPrice);
-            stmt.setDouble(2, totalVat);
-            stmt.executeUpdate();
-
-            // Get the generated order ID
-            try (ResultSet rs = stmt.getGeneratedKeys()) {
-                if (rs.next()) {
-                    orderId = rs.getInt(1);
-                }
-            }
-        } catch (SQLException e) {
-            e.printStackTrace();
+        int orderId = storage.createOrder(totalPrice, totalVat);
+        if (orderId != -1) {
+            auditLog.order(AuditLog.getCurrentCorrelationId(), orderId,
+                    Math.round(totalPrice * 100), Math.round(totalVat * 100));
         }
         return orderId;
     }
 
     /**
-     * Adds an item to an existing order in the database.
-     *
-     * This method inserts a new record into the `order_items` table, associating a product with a specific order.
-     * It records the order ID, product ID, quantity, and subtotal for the item.
+     * Adds an item to an existing order.
      *
      * @param orderId The ID of the order to which the item will be added.
      * @param productId The ID of the product being added.
@@ -68,17 +72,94 @@ public class OrderDAO {
      * @param subtotal The subtotal for the item (price * quantity).
      */
     public void addOrderItem(int orderId, int productId, int quantity, double subtotal) {
-        String query = "INSERT INTO order_items (order_id, product_id, quantity, subtotal) VALUES (?, ?, ?, ?)";
+        storage.addOrderItem(orderId, productId, quantity, subtotal);
+    }
+
+    /**
+     * Adds the items of one or more orders in one batch.
+     *
+     * @param items The items to add; only order ID, product ID, quantity and subtotal are stored.
+     * @return true if all items were stored; false otherwise.
+     */
+    public boolean addOrderItems(List<OrderItem> items) {
+        return storage.addOrderItems(items);
+    }
+
+    /**
+     * Stores the promotion discounts granted on an order, so that a reprint of its receipt matches the
+     * order total.
+     *
+     * @param orderId   The ID of the order.
+     * @param discounts The discounts, in the order they were printed on the receipt.
+     * @return true if the discounts were stored; false otherwise.
+     * @throws IllegalArgumentException if discounts is null.
+     */
+    public boolean addOrderDiscounts(int orderId, List<AppliedDiscount> discounts) {
+        if (discounts == null) {
+            throw new IllegalArgumentException("Discounts cannot be null");
+        }
+        return discounts.isEmpty() || storage.addOrderDiscounts(orderId, discounts);
+    }
+
+    /**
+     * Loads an order together with all of its order items and discounts.
+     *
+     * The order, its lines (with product names and VAT rates) and its discounts are read with three
+     * queries, so rebuilding a receipt costs a constant number of round trips regardless of the number
+     * of lines.
+     *
+     * @param orderId The ID of the order to load.
+     * @return The order, its items and discounts, or null if the order does not exist or cannot be read.
+     */
+    public OrderDetails getOrderWithItems(int orderId) {
+        Order order = storage.getOrder(orderId);
+        if (order == null) {
+            return null;
+        }
+        return new OrderDetails(order, storage.getOrderItems(orderId), storage.getOrderDiscounts(orderId));
+    }
 
-        try (Connection conn = db.getConnection();  // Use instance method for DB connection
-             PreparedStatement stmt = conn.prepareStatement(query)) {
-            stmt.setInt(1, orderId);
-            stmt.setInt(2, productId);
-            stmt.setInt(3, quantity);
-            stmt.setDouble(4, subtotal);
-            stmt.executeUpdate();
-        } catch (SQLException e) {
-            e.printStackTrace();
+    /**
+     * Retrieves one page of the orders placed in a time range, oldest first.
+     *
+     * Pages are read with keyset (seek) pagination on (`order_time`, `id`) instead of OFFSET: pass the ID of
+     * the last order of the previous page as {@code afterId} to get the next page. A late page costs the
+     * same as the first.
+     *
+     * @param from    The start of the range (inclusive).
+     * @param to      The end of the range (exclusive).
+     * @param afterId The ID of the last order of the previous page, or 0 for the first page.
+     * @param limit   The maximum number of orders to return (must be greater than zero).
+     * @return The orders of the page, empty if there are no more orders or they cannot be read.
+     * @throws IllegalArgumentException if from or to is null, or limit is not positive.
+     */
+    public List<Order> getOrdersBetween(LocalDateTime from, LocalDateTime to, int afterId, int limit) {
+        if (from == null || to == null) {
+            throw new IllegalArgumentException("Time range cannot be null");
+        }
+        if (limit <= 0) {
+            throw new IllegalArgumentException("Limit must be greater than zero");
         }
+        return storage.getOrdersBetween(from, to, afterId, limit);
+    }
+
+    /**
+     * Looks up an order by its receipt number.
+     *
+     * @param receiptNumber The receipt number printed on the receipt.
+     * @return The order, or null if no order has that receipt number or it cannot be read.
+     */
+    public Order getOrderByReceiptNumber(int receiptNumber) {
+        return storage.getOrderByReceiptNumber(receiptNumber);
+    }
+
+    /**
+     * Retrieves the lines of an order, with product names and VAT rates.
+     *
+     * @param orderId The ID of the order.
+     * @return The order items, empty if the order has no lines or they cannot be read.
+     */
+    public List<OrderItem> getOrderItems(int orderId) {
+        return storage.getOrderItems(orderId);
     }
 }
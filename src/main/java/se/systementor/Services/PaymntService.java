@@ -1,37 +1,141 @@
 package se.systementor.Services;
 
+import se.systementor.Audit.AuditLog;
+import se.systementor.DatabaseConnect.Storage;
+import se.systementor.DatabaseConnect.StorageFactory;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+
 /**
  * PaymntService is a service class responsible for processing payments through various payment methods,
  * including credit card, cash, and PayPal.
  *
- * It provides a unified method `processPayment()` to handle payments, which delegates the actual payment
- * processing to specific methods based on the chosen payment method.
+ * It provides a unified method `processPayment()` to pay an existing order, which delegates the actual
+ * payment processing to specific methods based on the chosen payment method.
+ *
+ * Every payment is stored with the order it paid for, so that payments can be reconciled with orders,
+ * and recorded in the {@link AuditLog} under the correlation id of its checkout.
+ *
+ * A checkout takes the payment in two steps: {@link #authorize} charges the customer before the order
+ * exists, so a declined payment leaves nothing behind but the declined attempt, and
+ * {@link #recordPayment} stores the approved payment with the order created after it.
  */
 public class PaymntService {
+    private final Storage storage;
+    private final AuditLog auditLog;
+
+    /**
+     * Creates a payment service that uses the storage configured in pos.properties.
+     */
+    public PaymntService() {
+        this(StorageFactory.create());
+    }
+
+    /**
+     * Creates a payment service that stores payments in the given storage and records them in the
+     * register's default audit log.
+     *
+     * @param storage The storage to store payments in.
+     */
+    public PaymntService(Storage storage) {
+        this(storage, AuditLog.getDefault());
+    }
+
+    /**
+     * Creates a payment service.
+     *
+     * @param storage The storage to store payments in.
+     * @param auditLog The audit log to record payments in.
+     */
+    public PaymntService(Storage storage, AuditLog auditLog) {
+        this.storage = storage;
+        this.auditLog = auditLog;
+    }
 
     /**
-     * Processes a payment based on the specified payment method.
+     * Processes the payment of an order and stores it with the order ID.
      *
-     * This method checks the payment method provided and delegates the processing to the appropriate
-     * method for handling credit card, cash, or PayPal payments. If an unsupported payment method is
-     * provided, an exception is thrown.
+     * The order has to exist already; a checkout that creates its order after the payment uses
+     * {@link #authorize} and {@link #recordPayment} instead.
      *
-     * @param amount The amount to be paid.
+     * @param orderId The ID of the order being paid.
+     * @param amount The amount to be paid, including VAT.
      * @param paymentMethod The payment method to use ("creditcard", "cash", "paypal").
+     * @param correlationId The correlation id of the checkout the payment belongs to.
      * @return true if the payment was successfully processed, false otherwise.
+     * @throws IllegalArgumentException if the order ID is not positive or the payment method is unsupported.
+     */
+    public boolean processPayment(int orderId, double amount, String paymentMethod, String correlationId) {
+        if (orderId <= 0) {
+            throw new IllegalArgumentException("A payment needs the ID of the order it pays for");
+        }
+        if (!authorize(amount, paymentMethod, correlationId)) {
+            return false;
+        }
+        recordPayment(orderId, amount, paymentMethod, correlationId);
+        return true;
+    }
+
+    /**
+     * Charges the customer without storing the payment yet. A declined payment is stored and audited
+     * right away, without an order; an approved one has to be stored with {@link #recordPayment} once
+     * its order exists.
+     *
+     * @param amount The amount to be paid, including VAT.
+     * @param paymentMethod The payment method to use ("creditcard", "cash", "paypal").
+     * @param correlationId The correlation id of the checkout the payment belongs to.
+     * @return true if the payment was approved, false if it was declined.
      * @throws IllegalArgumentException if the provided payment method is unsupported.
      */
-    public boolean processPayment(double amount, String paymentMethod) {
-        switch (paymentMethod.toLowerCase()) {
+    public boolean authorize(double amount, String paymentMethod, String correlationId) {
+        String method = paymentMethod.toLowerCase();
+        boolean success;
+        switch (method) {
             case "creditcard":
-                return processCreditCardPayment(amount);
+                success = processCreditCardPayment(amount);
+                break;
             case "cash":
-                return processCashPayment(amount);
+                success = processCashPayment(amount);
+                break;
             case "paypal":
-                return processPaypalPayment(amount);
+                success = processPaypalPayment(amount);
+                break;
             default:
-                throw new IllegalArgumentException("Unsupported payment method: " + paymentMethod);
+                IllegalArgumentException error = new IllegalArgumentException("Unsupported payment method: " + paymentMethod);
+                auditLog.failure(correlationId, "processPayment", 0, error);
+                throw error;
         }
+        if (!success) {
+            storage.recordPayment(0, correlationId, method, amount, false);
+            auditLog.payment(correlationId, 0, method, toCents(amount), false);
+        }
+        return success;
+    }
+
+    /**
+     * Stores an approved payment with the order it paid for. The payment is audited first, so it is on
+     * record even if storing it fails.
+     *
+     * @param orderId The ID of the order paid for, or 0 if no order could be created.
+     * @param amount The amount paid, including VAT.
+     * @param paymentMethod The payment method used.
+     * @param correlationId The correlation id of the checkout the payment belongs to.
+     * @return true if the payment was stored; false otherwise, in which case the reconciliation will
+     *         report the order as unpaid.
+     */
+    public boolean recordPayment(int orderId, double amount, String paymentMethod, String correlationId) {
+        String method = paymentMethod.toLowerCase();
+        auditLog.payment(correlationId, orderId, method, toCents(amount), true);
+        boolean recorded = storage.recordPayment(orderId, correlationId, method, amount, true);
+        if (!recorded) {
+            auditLog.failure(correlationId, "recordPayment", orderId, null);
+        }
+        return recorded;
+    }
+
+    private static long toCents(double amount) {
+        return BigDecimal.valueOf(amount).setScale(2, RoundingMode.HALF_UP).movePointRight(2).longValue();
     }
 
     /**
@@ -44,7 +148,6 @@ public class PaymntService {
      */
     private boolean processCreditCardPayment(double amount) {
         // Simulate processing a credit card payment
-        System.out.println("Processing credit card payment of: " + amount);
         return true;
     }
 
@@ -58,7 +161,6 @@ public class PaymntService {
      */
     private boolean processCashPayment(double amount) {
         // Simulate processing a cash payment
-        System.out.println("Processing cash payment of: " + amount);
         return true;
     }
 
@@ -72,7 +174,6 @@ public class PaymntService {
      */
     private boolean processPaypalPayment(double amount) {
         // Simulate processing a PayPal payment
-        System.out.println("Processing PayPal payment of: " + amount);
         return true;
     }
 }
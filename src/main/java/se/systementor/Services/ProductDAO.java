@@ -1,59 +1,188 @@
 package se.systementor.Services;
 
+import se.systementor.model.CatalogDelta;
+import se.systementor.model.CatalogSnapshot;
 import se.systementor.model.Item;
-import se.systementor.DatabaseConnect.Database;
+import se.systementor.DatabaseConnect.Storage;
 
-import java.math.BigDecimal;
-import java.sql.Connection;
-import java.sql.PreparedStatement;
-import java.sql.ResultSet;
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
-import java.util.logging.Level;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.logging.Logger;
 
 public class ProductDAO {
     private static final Logger LOGGER = Logger.getLogger(ProductDAO.class.getName());
-    private final Database database;
+    private final Storage storage;
+    // Products already read from storage, keyed by id
+    private final Map<Integer, Item> catalogCache = new ConcurrentHashMap<>();
+    // The same products keyed by barcode, for the scanner
+    private final Map<String, Item> barcodeIndex = new ConcurrentHashMap<>();
+    // The catalog version the cache is up to date with
+    private final AtomicLong catalogVersion = new AtomicLong();
 
-    // Constructor to inject Database dependency
-    public ProductDAO(Database database) {
-        this.database = database;
+    // Constructor to inject Storage dependency
+    public ProductDAO(Storage storage) {
+        this.storage = storage;
     }
 
     /**
-     * Retrieves a list of all products from the database.
+     * Retrieves a list of all products from storage.
+     *
+     * The products and the catalog version come from one snapshot, so the next {@link #syncCatalog()}
+     * starts exactly where the loaded products end.
      *
      * @return A list of {@link Item} objects representing all products.
      */
     public List<Item> getAllProducts() {
-        List<Item> items = new ArrayList<>();
-        String query = "SELECT id, name, price, vat_rate, category, stock_quantity, barcode FROM items";
-
-        try (Connection conn = database.getConnection();
-             PreparedStatement stmt = conn.prepareStatement(query);
-             ResultSet rs = stmt.executeQuery()) {
-
-            while (rs.next()) {
-                Item item = new Item(
-                        rs.getInt("id"),
-                        rs.getString("name"),
-                        rs.getBigDecimal("price"),
-                        rs.getBigDecimal("vat_rate"),
-                        rs.getString("category"),
-                        rs.getInt("stock_quantity"),
-                        rs.getString("barcode")
-                );
-                items.add(item);
+        CatalogSnapshot snapshot = storage.getCatalogSnapshot();
+        for (Item item : snapshot.getItems()) {
+            cache(item);
+        }
+        catalogVersion.accumulateAndGet(snapshot.getVersion(), Math::max);
+        return new ArrayList<>(snapshot.getItems());
+    }
+
+    /**
+     * Retrieves the catalog changes after a version and applies them to the catalog cache.
+     *
+     * Only the changed rows are read, so a price update of 50 items costs 50 rows instead of the
+     * whole assortment.
+     *
+     * @param version The catalog version to read changes after.
+     * @return The changed and removed items, and the version they bring the cache up to.
+     */
+    public CatalogDelta getChangesSince(long version) {
+        CatalogDelta delta = storage.getCatalogChangesSince(version);
+        for (Item item : delta.getChangedItems()) {
+            cache(item);
+        }
+        for (Integer id : delta.getRemovedIds()) {
+            Item removed = catalogCache.remove(id);
+            if (removed != null) {
+                barcodeIndex.remove(removed.getBarcode(), removed);
+            }
+        }
+        catalogVersion.accumulateAndGet(delta.getVersion(), Math::max);
+        return delta;
+    }
+
+    /**
+     * Brings the catalog cache up to date with the changes since the last load or sync.
+     *
+     * @return The changes that were applied.
+     */
+    public CatalogDelta syncCatalog() {
+        return getChangesSince(catalogVersion.get());
+    }
+
+    /**
+     * Returns the catalog version the catalog cache is up to date with.
+     */
+    public long getCatalogVersion() {
+        return catalogVersion.get();
+    }
+
+    /**
+     * Retrieves the products with the given ids.
+     *
+     * Products already in the catalog cache are returned without touching storage. The remaining
+     * ids are fetched in bulk (for MySQL one {@code IN (...)} query per chunk of 500 ids), so loading
+     * the products of a whole order costs at most a few round trips instead of one per line.
+     *
+     * @param ids The product ids to look up; duplicates are ignored.
+     * @return A map from product id to {@link Item}. Ids that do not exist are absent from the map.
+     */
+    public Map<Integer, Item> getProductsByIds(Collection<Integer> ids) {
+        Map<Integer, Item> result = new HashMap<>();
+        if (ids == null || ids.isEmpty()) {
+            return result;
+        }
+
+        List<Integer> missing = new ArrayList<>();
+        for (Integer id : new LinkedHashSet<>(ids)) {
+            Item cached = id == null ? null : catalogCache.get(id);
+            if (cached != null) {
+                result.put(id, cached);
+            } else if (id != null) {
+                missing.add(id);
+            }
+        }
+        if (missing.isEmpty()) {
+            return result;
+        }
+
+        for (Item item : storage.getProductsByIds(missing).values()) {
+            cache(item);
+            result.put(item.getId(), item);
+        }
+        return result;
+    }
+
+    /**
+     * Looks up a product by its barcode in the catalog cache, without touching storage, so it can
+     * be called for every scan. The cache is filled by {@link #getAllProducts()}.
+     *
+     * @param barcode The barcode of the product.
+     * @return The product, or null if no cached product has this barcode.
+     */
+    public Item getProductByBarcode(String barcode) {
+        return barcode == null ? null : barcodeIndex.get(barcode.trim());
+    }
+
+    /**
+     * Looks up a product by id in the catalog cache only. Unlike {@link #getProductsByIds}, a miss
+     * does not fall back to storage, so it is safe to call for every request of a lookup service.
+     *
+     * @param id The product id.
+     * @return The cached product, or null if no cached product has this id.
+     */
+    public Item getCachedProduct(int id) {
+        return catalogCache.get(id);
+    }
+
+    /**
+     * Searches the catalog cache for products whose name contains the query, ignoring case, without
+     * touching storage.
+     *
+     * @param query The text to search for.
+     * @param limit The maximum number of products to return.
+     * @return The matching products in product id order, at most {@code limit} of them.
+     */
+    public List<Item> searchCachedProducts(String query, int limit) {
+        List<Item> result = new ArrayList<>();
+        if (query == null || query.trim().isEmpty() || limit <= 0) {
+            return result;
+        }
+        String text = query.trim();
+        for (Item item : catalogCache.values()) {
+            if (containsIgnoreCase(item.getName(), text)) {
+                result.add(item);
+            }
+        }
+        result.sort(Comparator.comparingInt(Item::getId));
+        return result.size() > limit ? new ArrayList<>(result.subList(0, limit)) : result;
+    }
+
+    private static boolean containsIgnoreCase(String name, String text) {
+        if (name == null) {
+            return false;
+        }
+        for (int i = 0; i + text.length() <= name.length(); i++) {
+            if (name.regionMatches(true, i, text, 0, text.length())) {
+                return true;
             }
-        } catch (Exception e) {
-            LOGGER.log(Level.SEVERE, "Error retrieving products", e);
         }
-        return items;
+        return false;
     }
 
     /**
-     * Inserts a new product into the database.
+     * Inserts a new product into storage.
      *
      * @param item The {@link Item} object to insert.
      * @return true if successful, false otherwise.
@@ -63,6 +192,14 @@ public class ProductDAO {
             LOGGER.warning("Attempted to insert a null item");
             return false;
         }
-        return database.insertItem(item);
+        return storage.insertItem(item);
+    }
+
+    private void cache(Item item) {
+        Item previous = catalogCache.put(item.getId(), item);
+        if (previous != null && !previous.getBarcode().equals(item.getBarcode())) {
+            barcodeIndex.remove(previous.getBarcode(), previous);
+        }
+        barcodeIndex.put(item.getBarcode(), item);
     }
 }
@@ -0,0 +1,24 @@
+package se.systementor.Services;
+
+import se.systementor.DatabaseConnect.Storage;
+import se.systementor.Promotions.PromotionRule;
+
+import java.util.List;
+
+public class PromotionDAO {
+    private final Storage storage;
+
+    // Constructor to inject Storage dependency
+    public PromotionDAO(Storage storage) {
+        this.storage = storage;
+    }
+
+    /**
+     * Retrieves all active promotion rules.
+     *
+     * @return A list of {@link PromotionRule} objects, empty if none could be loaded.
+     */
+    public List<PromotionRule> getActivePromotions() {
+        return storage.getActivePromotions();
+    }
+}
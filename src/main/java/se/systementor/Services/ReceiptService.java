@@ -1,8 +1,13 @@
 package se.systementor.Services;
 
+import se.systementor.model.Item;
 import se.systementor.model.Order;
+import se.systementor.model.OrderDetails;
 import se.systementor.model.OrderItem;
+import se.systementor.Promotions.AppliedDiscount;
 import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.util.Collections;
 import java.util.List;
 import java.util.Objects;
 
@@ -22,9 +27,39 @@ public class ReceiptService {
      * @throws IllegalArgumentException if order or orderItems is null.
      */
     public static String generateReceipt(Order order, List<OrderItem> orderItems) {
+        return generateReceipt(order, orderItems, Collections.<AppliedDiscount>emptyList());
+    }
+
+    /**
+     * Regenerates the receipt of a stored order, as loaded by {@link OrderDAO#getOrderWithItems(int)}.
+     *
+     * @param details The order together with its order items and discounts.
+     * @return A formatted receipt as a string.
+     * @throws IllegalArgumentException if details is null.
+     */
+    public static String generateReceipt(OrderDetails details) {
+        Objects.requireNonNull(details, "Order details cannot be null");
+        return generateReceipt(details.getOrder(), details.getOrderItems(), details.getDiscounts());
+    }
+
+    /**
+     * Generates a formatted receipt for a given order, its order items and the promotion discounts
+     * granted on it. Each discount is listed under the items and reduces the subtotal and the VAT.
+     *
+     * The subtotal of an order item is the line total (price * quantity), as stored in `order_items`;
+     * the unit price shown on the line is derived from it.
+     *
+     * @param order      The {@link Order} object representing the order details, including receipt number and order time.
+     * @param orderItems A list of {@link OrderItem} objects representing the items in the order.
+     * @param discounts  A list of {@link AppliedDiscount} objects granted by active promotions.
+     * @return A formatted receipt as a string.
+     * @throws IllegalArgumentException if order, orderItems or discounts is null.
+     */
+    public static String generateReceipt(Order order, List<OrderItem> orderItems, List<AppliedDiscount> discounts) {
         // Validate input
         Objects.requireNonNull(order, "Order cannot be null");
         Objects.requireNonNull(orderItems, "Order items cannot be null");
+        Objects.requireNonNull(discounts, "Discounts cannot be null");
 
         StringBuilder receipt = new StringBuilder();
 
@@ -38,13 +73,24 @@ public class ReceiptService {
         BigDecimal subtotal = BigDecimal.ZERO;
         BigDecimal totalVat = BigDecimal.ZERO;
         for (OrderItem item : orderItems) {
-            BigDecimal itemTotal = item.getSubtotal().multiply(BigDecimal.valueOf(item.getQuantity()));
-            BigDecimal itemVat = itemTotal.multiply(item.getVatRate()).divide(BigDecimal.valueOf(100)); // Calculate VAT for the item
+            BigDecimal itemTotal = item.getSubtotal();
+            BigDecimal unitPrice = item.getQuantity() == 0 ? itemTotal
+                    : itemTotal.divide(BigDecimal.valueOf(item.getQuantity()), 2, RoundingMode.HALF_UP);
+            BigDecimal itemVat = Item.vatOf(itemTotal, item.getVatRate()); // Calculate VAT for the item
             subtotal = subtotal.add(itemTotal);
             totalVat = totalVat.add(itemVat);
 
             receipt.append(String.format("%-25s %3d x %10.2f = %10.2f\n",
-                    item.getProductName(), item.getQuantity(), item.getSubtotal(), itemTotal));
+                    item.getProductName(), item.getQuantity(), unitPrice, itemTotal));
+        }
+
+        // Discounts
+        for (AppliedDiscount discount : discounts) {
+            BigDecimal discountVat = Item.vatOf(discount.getAmount(), discount.getVatRate());
+            subtotal = subtotal.subtract(discount.getAmount());
+            totalVat = totalVat.subtract(discountVat);
+
+            receipt.append(String.format("%-44s %10.2f\n", "Rabatt: " + discount.getDescription(), discount.getAmount().negate()));
         }
 
         // Footer
@@ -0,0 +1,41 @@
+package se.systementor.model;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Objects;
+import java.util.Set;
+
+/**
+ * The CatalogDelta class holds the catalog changes after a given catalog version: the items that
+ * were added or changed, in their current state, and the ids of the items that were removed.
+ * A register that has applied a delta is up to date as of {@link #getVersion()}.
+ */
+public class CatalogDelta {
+    private final long version;
+    private final List<Item> changedItems;
+    private final Set<Integer> removedIds;
+
+    public CatalogDelta(long version, List<Item> changedItems, Set<Integer> removedIds) {
+        this.version = version;
+        this.changedItems = Collections.unmodifiableList(Objects.requireNonNull(changedItems, "Changed items cannot be null"));
+        this.removedIds = Collections.unmodifiableSet(Objects.requireNonNull(removedIds, "Removed ids cannot be null"));
+    }
+
+    // Getters
+    public long getVersion() { return version; }
+    public List<Item> getChangedItems() { return changedItems; }
+    public Set<Integer> getRemovedIds() { return removedIds; }
+
+    public boolean isEmpty() {
+        return changedItems.isEmpty() && removedIds.isEmpty();
+    }
+
+    @Override
+    public String toString() {
+        return "CatalogDelta{" +
+                "version=" + version +
+                ", changedItems=" + changedItems.size() +
+                ", removedIds=" + removedIds.size() +
+                '}';
+    }
+}
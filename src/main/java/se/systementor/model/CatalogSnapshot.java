@@ -0,0 +1,32 @@
+package se.systementor.model;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Objects;
+
+/**
+ * The CatalogSnapshot class holds all items of the catalog together with the catalog version they
+ * are current as of. Both are read from the same consistent view, so a register that loads a snapshot
+ * and then applies the deltas after {@link #getVersion()} neither misses nor skips a change.
+ */
+public class CatalogSnapshot {
+    private final long version;
+    private final List<Item> items;
+
+    public CatalogSnapshot(long version, List<Item> items) {
+        this.version = version;
+        this.items = Collections.unmodifiableList(Objects.requireNonNull(items, "Items cannot be null"));
+    }
+
+    // Getters
+    public long getVersion() { return version; }
+    public List<Item> getItems() { return items; }
+
+    @Override
+    public String toString() {
+        return "CatalogSnapshot{" +
+                "version=" + version +
+                ", items=" + items.size() +
+                '}';
+    }
+}
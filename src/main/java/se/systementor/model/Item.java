@@ -161,7 +161,19 @@ public class Item {
      * @return The price including VAT.
      */
     public BigDecimal getPriceWithVat() {
-        return price.add(price.multiply(vatRate));
+        return price.add(vatOf(price, vatRate));
+    }
+
+    /**
+     * Calculates the VAT of an amount. VAT rates are stored as percentages (12.00 for 12%), so this is
+     * the one place that converts a rate into a fraction; every VAT total should go through it.
+     *
+     * @param amount  The amount excluding VAT.
+     * @param vatRate The VAT rate in percent.
+     * @return The VAT of the amount.
+     */
+    public static BigDecimal vatOf(BigDecimal amount, BigDecimal vatRate) {
+        return amount.multiply(vatRate).movePointLeft(2);
     }
 
     /**
@@ -0,0 +1,41 @@
+package se.systementor.model;
+
+import se.systementor.Promotions.AppliedDiscount;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Objects;
+
+/**
+ * The OrderDetails class bundles an {@link Order} with all of its {@link OrderItem}s and the promotion
+ * discounts granted on it, which is everything needed to rebuild the receipt of a past sale.
+ */
+public class OrderDetails {
+    private final Order order;
+    private final List<OrderItem> orderItems;
+    private final List<AppliedDiscount> discounts;
+
+    public OrderDetails(Order order, List<OrderItem> orderItems) {
+        this(order, orderItems, Collections.<AppliedDiscount>emptyList());
+    }
+
+    public OrderDetails(Order order, List<OrderItem> orderItems, List<AppliedDiscount> discounts) {
+        this.order = Objects.requireNonNull(order, "Order cannot be null");
+        this.orderItems = Collections.unmodifiableList(Objects.requireNonNull(orderItems, "Order items cannot be null"));
+        this.discounts = Collections.unmodifiableList(Objects.requireNonNull(discounts, "Discounts cannot be null"));
+    }
+
+    // Getters
+    public Order getOrder() { return order; }
+    public List<OrderItem> getOrderItems() { return orderItems; }
+    public List<AppliedDiscount> getDiscounts() { return discounts; }
+
+    @Override
+    public String toString() {
+        return "OrderDetails{" +
+                "order=" + order +
+                ", orderItems=" + orderItems.size() +
+                ", discounts=" + discounts.size() +
+                '}';
+    }
+}
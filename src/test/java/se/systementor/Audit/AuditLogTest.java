@@ -0,0 +1,63 @@
+package se.systementor.Audit;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class AuditLogTest {
+
+    @Test
+    void writesEveryRecordInOrderBeforeClosing(@TempDir Path directory) throws IOException {
+        Path file = directory.resolve("audit.jsonl");
+        AuditLog log = new AuditLog(file, 1024, 1024 * 1024, 3);
+        String correlationId = AuditLog.newCorrelationId();
+        log.order(correlationId, 7, 10000, 1200);
+        log.payment(correlationId, 7, "Card \"Visa\"", 11200, true);
+        log.failure(null, "createOrder", 0, new IllegalStateException("down"));
+        log.close(5000);
+
+        List<String> lines = Files.readAllLines(file, StandardCharsets.UTF_8);
+        assertEquals(3, lines.size());
+        assertTrue(lines.get(0).contains("\"type\":\"ORDER\""));
+        assertTrue(lines.get(0).contains("\"correlationId\":\"" + correlationId + "\""));
+        assertTrue(lines.get(0).contains("\"amountCents\":10000,\"vatCents\":1200"));
+        assertFalse(lines.get(1).contains("vatCents"));
+        assertTrue(lines.get(1).contains("\"amountCents\":11200"));
+        assertTrue(lines.get(1).contains("Card \\\"Visa\\\""));
+        assertTrue(lines.get(2).contains("\"type\":\"FAILURE\""));
+        assertEquals(0, log.getDroppedCount());
+    }
+
+    @Test
+    void rotatesAndKeepsOnlyTheConfiguredNumberOfFiles(@TempDir Path directory) throws IOException {
+        Path file = directory.resolve("audit.jsonl");
+        AuditLog log = new AuditLog(file, 1024, 200, 2);
+        for (int i = 1; i <= 50; i++) {
+            log.order("c-" + i, i, i * 100, 0);
+        }
+        log.close(5000);
+
+        assertTrue(Files.exists(file));
+        assertTrue(Files.exists(directory.resolve("audit.jsonl.1")));
+        assertTrue(Files.exists(directory.resolve("audit.jsonl.2")));
+        assertFalse(Files.exists(directory.resolve("audit.jsonl.3")));
+        List<String> newest = Files.readAllLines(file, StandardCharsets.UTF_8);
+        assertTrue(newest.get(newest.size() - 1).contains("\"orderId\":50"));
+    }
+
+    @Test
+    void rejectsCapacityThatIsNotAPowerOfTwo(@TempDir Path directory) {
+        assertThrows(IllegalArgumentException.class,
+                () -> new AuditLog(directory.resolve("audit.jsonl"), 1000, 1024, 1));
+    }
+}
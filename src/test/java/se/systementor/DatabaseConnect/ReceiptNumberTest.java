@@ -0,0 +1,62 @@
+package se.systementor.DatabaseConnect;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+import se.systementor.model.Order;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Round trip of receipt numbers: an order created by a storage can be found again by the receipt
+ * number it was given. The MySQL test runs when a test database is configured with
+ * {@code -Dpos.test.db.url=jdbc:mysql://...} (and {@code pos.db.user}/{@code pos.db.password}).
+ */
+class ReceiptNumberTest {
+
+    private static void assertRoundTrip(Storage storage) {
+        Set<Integer> receiptNumbers = new HashSet<>();
+        for (int i = 0; i < 5; i++) {
+            int orderId = storage.createOrder(100 + i, 12);
+            assertTrue(orderId > 0, "order was not created");
+
+            Order order = storage.getOrder(orderId);
+            assertNotNull(order);
+            assertTrue(order.getReceiptNumber() > 0, "order has no receipt number");
+            assertTrue(receiptNumbers.add(order.getReceiptNumber()), "receipt number was reused");
+
+            Order found = storage.getOrderByReceiptNumber(order.getReceiptNumber());
+            assertNotNull(found);
+            assertEquals(orderId, found.getId());
+        }
+    }
+
+    @Test
+    void inMemoryOrdersCanBeFoundByReceiptNumber() {
+        assertRoundTrip(new InMemoryStorage());
+    }
+
+    @Test
+    void shardedOrdersCanBeFoundByReceiptNumber() {
+        assertRoundTrip(new ShardedStorage(Arrays.asList(new InMemoryStorage(), new InMemoryStorage()), 1));
+    }
+
+    @Test
+    @EnabledIfSystemProperty(named = "pos.test.db.url", matches = ".+")
+    void mysqlOrdersTakeReceiptNumbersFromTheSequence() {
+        Database database = new Database(DatabaseConfig.load().with("pos.db.url", System.getProperty("pos.test.db.url")));
+        assertTrue(new SchemaMigrator(database).migrate());
+        assertRoundTrip(database);
+
+        int first = database.getOrder(database.createOrder(1, 0)).getReceiptNumber();
+        int second = database.getOrder(database.createOrder(1, 0)).getReceiptNumber();
+        assertNotEquals(first, second);
+        assertEquals(first + 1, second);
+    }
+}
@@ -0,0 +1,191 @@
+package se.systementor.DatabaseConnect;
+
+import org.junit.jupiter.api.Test;
+
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ReplicaSetTest {
+
+    private static final List<String> REPLICAS = Arrays.asList("replica-a", "replica-b", "replica-c");
+
+    /**
+     * Stands in for MySQL: hands out connections that report their URL as catalog, and lag per URL.
+     */
+    private static final class FakeServers {
+        final Map<String, Long> lagSeconds = new HashMap<>();
+        final Set<String> down = new HashSet<>();
+        final List<Connection> opened = new ArrayList<>();
+        final List<String> attempts = new ArrayList<>();
+
+        Connection open(String url, String user, String password) throws SQLException {
+            attempts.add(url);
+            if (down.contains(url)) {
+                throw new SQLException("Connection refused: " + url);
+            }
+            boolean[] closed = new boolean[1];
+            Connection conn = (Connection) Proxy.newProxyInstance(Connection.class.getClassLoader(), new Class<?>[]{Connection.class},
+                    (proxy, method, args) -> {
+                        switch (method.getName()) {
+                            case "getCatalog": return url;
+                            case "close": closed[0] = true; return null;
+                            case "isClosed": return closed[0];
+                            default: throw new UnsupportedOperationException(method.getName());
+                        }
+                    });
+            opened.add(conn);
+            return conn;
+        }
+
+        /**
+         * Returns the configured lag, null for a replica that is not replicating, and 0 by default.
+         */
+        Long lag(Connection conn) throws SQLException {
+            String url = conn.getCatalog();
+            if (lagSeconds.containsKey(url)) {
+                return lagSeconds.get(url);
+            }
+            return 0L;
+        }
+
+        ReplicaSet replicaSet(ReplicaSet.Selection selection) {
+            return new ReplicaSet(REPLICAS, "pos", "secret", selection, 5, this::open, this::lag);
+        }
+    }
+
+    private static String next(ReplicaSet replicas) throws SQLException {
+        Connection conn = replicas.getConnection();
+        return conn == null ? null : conn.getCatalog();
+    }
+
+    @Test
+    void roundRobinTakesTheReplicasInTurn() throws SQLException {
+        ReplicaSet replicas = new FakeServers().replicaSet(ReplicaSet.Selection.ROUND_ROBIN);
+
+        List<String> picked = new ArrayList<>();
+        for (int i = 0; i < 6; i++) {
+            picked.add(next(replicas));
+        }
+        assertEquals(Arrays.asList("replica-a", "replica-b", "replica-c", "replica-a", "replica-b", "replica-c"), picked);
+    }
+
+    @Test
+    void leastLoadedTakesTheReplicaWithFewestOpenConnections() throws SQLException {
+        ReplicaSet replicas = new FakeServers().replicaSet(ReplicaSet.Selection.LEAST_LOADED);
+
+        Connection a = replicas.getConnection();
+        Connection b = replicas.getConnection();
+        Connection c = replicas.getConnection();
+        assertEquals(Arrays.asList("replica-a", "replica-b", "replica-c"),
+                Arrays.asList(a.getCatalog(), b.getCatalog(), c.getCatalog()));
+
+        // All equally loaded: the first in list order wins
+        Connection secondA = replicas.getConnection();
+        assertEquals("replica-a", secondA.getCatalog());
+
+        b.close();
+        assertEquals("replica-b", next(replicas));
+    }
+
+    @Test
+    void closingATrackedConnectionTwiceReleasesItOnce() throws SQLException {
+        ReplicaSet replicas = new FakeServers().replicaSet(ReplicaSet.Selection.LEAST_LOADED);
+
+        Connection a = replicas.getConnection();
+        replicas.getConnection();
+        a.close();
+        a.close();
+        assertEquals("replica-a", next(replicas));
+        assertEquals("replica-c", next(replicas));
+    }
+
+    @Test
+    void laggingReplicaIsSkippedAndItsCheckConnectionClosed() throws SQLException {
+        FakeServers servers = new FakeServers();
+        servers.lagSeconds.put("replica-b", 60L);
+        ReplicaSet replicas = servers.replicaSet(ReplicaSet.Selection.ROUND_ROBIN);
+
+        List<String> picked = new ArrayList<>();
+        for (int i = 0; i < 6; i++) {
+            picked.add(next(replicas));
+        }
+        assertEquals(Arrays.asList("replica-a", "replica-c", "replica-c", "replica-a", "replica-c", "replica-c"), picked);
+        for (Connection conn : servers.opened) {
+            if (conn.getCatalog().equals("replica-b")) {
+                assertTrue(conn.isClosed());
+            }
+        }
+    }
+
+    @Test
+    void replicaThatIsNotReplicatingIsSkipped() throws SQLException {
+        FakeServers servers = new FakeServers();
+        servers.lagSeconds.put("replica-a", null);
+        servers.lagSeconds.put("replica-c", null);
+        ReplicaSet replicas = servers.replicaSet(ReplicaSet.Selection.ROUND_ROBIN);
+
+        for (int i = 0; i < 4; i++) {
+            assertEquals("replica-b", next(replicas));
+        }
+    }
+
+    @Test
+    void failedReplicaIsSkippedAndNotRetriedRightAway() throws SQLException {
+        FakeServers servers = new FakeServers();
+        servers.down.add("replica-a");
+        ReplicaSet replicas = servers.replicaSet(ReplicaSet.Selection.LEAST_LOADED);
+
+        assertEquals("replica-b", next(replicas));
+        assertEquals("replica-c", next(replicas));
+        assertEquals(1, servers.attempts.stream().filter("replica-a"::equals).count());
+    }
+
+    @Test
+    void noUsableReplicaGivesNoConnection() {
+        FakeServers servers = new FakeServers();
+        servers.down.addAll(REPLICAS);
+
+        assertNull(servers.replicaSet(ReplicaSet.Selection.ROUND_ROBIN).getConnection());
+    }
+
+    @Test
+    void readsGoToThePrimaryWhileTheRegisterWroteRecently() throws SQLException {
+        FakeServers servers = new FakeServers();
+        Properties properties = new Properties();
+        properties.setProperty("pos.db.url", "primary");
+        properties.setProperty("pos.db.replicas", "replica-a, replica-b");
+        properties.setProperty("pos.db.readYourWritesMillis", "60000");
+        Database database = new Database(new DatabaseConfig(properties), servers::open, servers::lag);
+
+        assertEquals("replica-a", database.getReadConnection().getCatalog());
+        assertEquals("primary", database.getWriteConnection().getCatalog());
+        assertEquals("primary", database.getReadConnection().getCatalog());
+        assertEquals("primary", database.getReadConnection().getCatalog());
+    }
+
+    @Test
+    void readsFallBackToThePrimaryWithoutAUsableReplica() throws SQLException {
+        FakeServers servers = new FakeServers();
+        servers.lagSeconds.put("replica-a", 60L);
+        servers.down.add("replica-b");
+        Properties properties = new Properties();
+        properties.setProperty("pos.db.url", "primary");
+        properties.setProperty("pos.db.replicas", "replica-a,replica-b");
+        Database database = new Database(new DatabaseConfig(properties), servers::open, servers::lag);
+
+        assertEquals("primary", database.getReadConnection().getCatalog());
+    }
+}
@@ -0,0 +1,91 @@
+package se.systementor.DatabaseConnect;
+
+import org.junit.jupiter.api.Test;
+import se.systementor.model.Item;
+import se.systementor.model.OrderItem;
+
+import java.math.BigDecimal;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ShardedStorageTest {
+
+    private static Item item(String name, String barcode) {
+        return new Item(0, name, new BigDecimal("10.00"), new BigDecimal("12.00"), "Groceries", 10, barcode);
+    }
+
+    @Test
+    void catalogIsKeptOnTheFirstShard() {
+        InMemoryStorage first = new InMemoryStorage();
+        InMemoryStorage second = new InMemoryStorage();
+        ShardedStorage storage = new ShardedStorage(Arrays.asList(first, second), 1);
+
+        assertTrue(storage.insertItem(item("Milk", "7310000000017")));
+        assertTrue(storage.insertItem(item("Bread", "7310000000024")));
+        int breadId = storage.getAllProducts().stream()
+                .filter(item -> item.getName().equals("Bread")).findFirst().get().getId();
+        assertTrue(storage.adjustStock(breadId, -3));
+
+        assertEquals(2, first.getAllProducts().size());
+        assertTrue(second.getAllProducts().isEmpty());
+        assertEquals(7, storage.getProductsByIds(Arrays.asList(breadId)).get(breadId).getStockQuantity());
+        assertEquals(first.getCatalogVersion(), storage.getCatalogVersion());
+    }
+
+    @Test
+    void orderLinesOnOtherShardsShowCatalogNames() {
+        InMemoryStorage second = new InMemoryStorage();
+        ShardedStorage storage = new ShardedStorage(Arrays.asList(new InMemoryStorage(), second), 1);
+        storage.insertItem(item("Milk", "7310000000017"));
+        int milkId = storage.getAllProducts().get(0).getId();
+
+        int orderId = storage.createOrder(20, 2.4);
+        assertNotNull(second.getOrder(1));
+        assertEquals(0, new BigDecimal("20").compareTo(storage.getOrder(orderId).getTotalPrice()));
+        storage.addOrderItem(orderId, milkId, 2, 20);
+
+        List<OrderItem> lines = storage.getOrderItems(orderId);
+        assertEquals(1, lines.size());
+        assertEquals(orderId, lines.get(0).getOrderId());
+        assertEquals("Milk", lines.get(0).getProductName());
+        assertEquals(0, new BigDecimal("12.00").compareTo(lines.get(0).getVatRate()));
+    }
+
+    @Test
+    void orderIdsKeepTheirShardWhenAShardIsAdded() {
+        InMemoryStorage first = new InMemoryStorage();
+        InMemoryStorage second = new InMemoryStorage();
+        ShardedStorage twoShards = new ShardedStorage(Arrays.asList(first, second), 1);
+        int orderId = twoShards.createOrder(20, 2.4);
+        int otherId = new ShardedStorage(Arrays.asList(first, second), 0).createOrder(30, 3.6);
+
+        ShardedStorage threeShards = new ShardedStorage(Arrays.asList(first, second, new InMemoryStorage()), 2);
+        assertEquals(0, new BigDecimal("20").compareTo(threeShards.getOrder(orderId).getTotalPrice()));
+        assertEquals(0, new BigDecimal("30").compareTo(threeShards.getOrder(otherId).getTotalPrice()));
+        assertEquals(orderId, threeShards.getOrder(orderId).getId());
+    }
+
+    @Test
+    void receiptNumbersAreUniqueAcrossShards() {
+        InMemoryStorage first = new InMemoryStorage();
+        InMemoryStorage second = new InMemoryStorage();
+        ShardedStorage firstRegister = new ShardedStorage(Arrays.asList(first, second), 0);
+        ShardedStorage secondRegister = new ShardedStorage(Arrays.asList(first, second), 1);
+
+        // Both shards number their first order 1
+        int firstOrder = firstRegister.createOrder(20, 2.4);
+        int secondOrder = secondRegister.createOrder(30, 3.6);
+        int firstReceipt = firstRegister.getOrder(firstOrder).getReceiptNumber();
+        int secondReceipt = secondRegister.getOrder(secondOrder).getReceiptNumber();
+        assertEquals(1, firstReceipt);
+        assertNotEquals(firstReceipt, secondReceipt);
+
+        assertEquals(secondOrder, firstRegister.getOrderByReceiptNumber(secondReceipt).getId());
+        assertEquals(firstOrder, secondRegister.getOrderByReceiptNumber(firstReceipt).getId());
+    }
+}
@@ -0,0 +1,127 @@
+package se.systementor.Events;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import se.systementor.DatabaseConnect.InMemoryStorage;
+import se.systementor.Services.OrderDAO;
+import se.systementor.model.OrderItem;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class SaleEventBusTest {
+
+    /**
+     * Counts how order items reach the storage.
+     */
+    private static final class CountingStorage extends InMemoryStorage {
+        final AtomicInteger singleInserts = new AtomicInteger();
+        final AtomicInteger batchInserts = new AtomicInteger();
+
+        @Override
+        public void addOrderItem(int orderId, int productId, int quantity, double subtotal) {
+            singleInserts.incrementAndGet();
+            super.addOrderItem(orderId, productId, quantity, subtotal);
+        }
+
+        @Override
+        public boolean addOrderItems(List<OrderItem> items) {
+            batchInserts.incrementAndGet();
+            return super.addOrderItems(items);
+        }
+    }
+
+    private static void publishSales(SaleEventBus bus, int[] orderIds, int linesPerSale) {
+        for (int orderId : orderIds) {
+            long sequence = bus.next();
+            try {
+                SaleCompleted event = bus.get(sequence);
+                event.reset(orderId, System.currentTimeMillis(), 1000, 120);
+                for (int line = 0; line < linesPerSale; line++) {
+                    event.addLine(line + 1, 2, 500);
+                }
+            } finally {
+                bus.publish(sequence);
+            }
+        }
+    }
+
+    @Test
+    void archivesEveryLineInBatchesAndDrainsOnShutdown() {
+        CountingStorage storage = new CountingStorage();
+        int[] orderIds = new int[200];
+        for (int i = 0; i < orderIds.length; i++) {
+            orderIds[i] = storage.createOrder(10, 1.2);
+        }
+
+        SaleEventBus bus = new SaleEventBus(64);
+        bus.addHandler("archive", new OrderArchiveHandler(new OrderDAO(storage)));
+        bus.start();
+        publishSales(bus, orderIds, 3);
+        bus.shutdown(5000);
+
+        for (int orderId : orderIds) {
+            List<OrderItem> items = storage.getOrderItems(orderId);
+            assertEquals(3, items.size());
+            assertEquals(0, items.get(0).getSubtotal().compareTo(new BigDecimal("5.00")));
+        }
+        assertEquals(0, storage.singleInserts.get());
+        assertTrue(storage.batchInserts.get() <= orderIds.length);
+    }
+
+    @Test
+    void exportFileIsCompleteAfterShutdown(@TempDir Path directory) throws IOException {
+        Path file = directory.resolve("export.csv");
+        SaleEventBus bus = new SaleEventBus(16);
+        bus.addHandler("export", new SalesExportHandler(file));
+        bus.start();
+        publishSales(bus, new int[] {1, 2, 3, 4, 5}, 2);
+        bus.shutdown(5000);
+
+        List<String> rows = Files.readAllLines(file, StandardCharsets.UTF_8);
+        assertEquals(10, rows.size());
+        assertTrue(rows.get(9).startsWith("5,"));
+    }
+
+    private static Thread findThread(String name) {
+        for (Thread thread : Thread.getAllStackTraces().keySet()) {
+            if (thread.getName().equals(name)) {
+                return thread;
+            }
+        }
+        return null;
+    }
+
+    @Test
+    void idleHandlerParksUntilTheNextPublish() throws InterruptedException {
+        CountDownLatch received = new CountDownLatch(1);
+        SaleEventBus bus = new SaleEventBus(16);
+        bus.addHandler("idle", (event, sequence, endOfBatch) -> received.countDown());
+        bus.start();
+
+        Thread handler = findThread("sale-events-idle");
+        assertNotNull(handler);
+        // An idle handler waits without a timeout instead of waking up periodically
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (handler.getState() != Thread.State.WAITING && System.nanoTime() < deadline) {
+            Thread.sleep(1);
+        }
+        assertEquals(Thread.State.WAITING, handler.getState());
+
+        publishSales(bus, new int[] {1}, 1);
+        assertTrue(received.await(5, TimeUnit.SECONDS));
+        bus.shutdown(5000);
+        assertEquals(Thread.State.TERMINATED, handler.getState());
+    }
+}
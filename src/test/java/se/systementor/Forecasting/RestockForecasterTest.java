@@ -0,0 +1,62 @@
+package se.systementor.Forecasting;
+
+import org.junit.jupiter.api.Test;
+import se.systementor.DatabaseConnect.InMemoryStorage;
+import se.systementor.model.Item;
+
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class RestockForecasterTest {
+
+    @Test
+    void everyRangeSeesOnlyTheSalesOfItsOwnItems() {
+        InMemoryStorage storage = new InMemoryStorage();
+        int count = 300;
+        for (int i = 0; i < count; i++) {
+            storage.insertItem(new Item(0, "Product " + i, new BigDecimal("10.00"), new BigDecimal("12.00"),
+                    "Groceries", 0, "barcode-" + i));
+        }
+        List<Item> items = storage.getAllProducts();
+        int orderId = storage.createOrder(100, 12);
+        for (Item item : items) {
+            // Product i sells 7 * (i % 3) units, a moving average of i % 3 per day
+            if (item.getId() % 3 != 0) {
+                storage.addOrderItem(orderId, item.getId(), 7 * (item.getId() % 3), 10);
+            }
+        }
+
+        ForkJoinPool pool = new ForkJoinPool(2);
+        try {
+            // The window ends at the start of the hour, so look from a little later to include the order
+            List<RestockSuggestion> suggestions = new RestockForecaster(storage)
+                    .forecast(items, LocalDateTime.now().plusHours(2), pool);
+
+            assertEquals(count, suggestions.size());
+            for (int i = 0; i < count; i++) {
+                RestockSuggestion suggestion = suggestions.get(i);
+                assertEquals(i + 1, suggestion.getProductId());
+                assertEquals(suggestion.getProductId() % 3, suggestion.getMovingAverage(), 1e-9);
+                if (suggestion.getProductId() % 3 == 0) {
+                    assertFalse(suggestion.needsReorder());
+                } else {
+                    assertTrue(suggestion.getSuggestedQuantity() > 0);
+                }
+            }
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    @Test
+    void rejectsAHistoryShorterThanTheMovingAverage() {
+        assertThrows(IllegalArgumentException.class, () -> new RestockForecaster(new InMemoryStorage(), 3, 2, 7, 1.65));
+    }
+}
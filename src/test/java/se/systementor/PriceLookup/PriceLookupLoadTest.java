@@ -0,0 +1,206 @@
+package se.systementor.PriceLookup;
+
+import se.systementor.DatabaseConnect.InMemoryStorage;
+import se.systementor.Services.ProductDAO;
+import se.systementor.model.Item;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.net.InetSocketAddress;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * The PriceLookupLoadTest class measures the {@link PriceLookupServer} on loopback.
+ *
+ * It fills an in-memory catalog, starts a server on a free port, and lets a number of clients, each
+ * with its own keep-alive connection, send batches of pipelined lookups (mostly barcodes, some ids and
+ * some name searches) for a fixed time. It prints the lookups per second and the round-trip time of
+ * a batch.
+ *
+ * Usage, after {@code mvn test-compile}: {@code java -cp target/classes:target/test-classes
+ * se.systementor.PriceLookup.PriceLookupLoadTest [connections] [pipelineDepth] [seconds] [items]},
+ * by default 8 connections, 16 requests per batch, 10 seconds and 10000 items.
+ */
+public class PriceLookupLoadTest {
+
+    public static void main(String[] args) throws Exception {
+        int connections = args.length > 0 ? Integer.parseInt(args[0]) : 8;
+        int depth = args.length > 1 ? Integer.parseInt(args[1]) : 16;
+        int seconds = args.length > 2 ? Integer.parseInt(args[2]) : 10;
+        int itemCount = args.length > 3 ? Integer.parseInt(args[3]) : 10_000;
+
+        InMemoryStorage storage = new InMemoryStorage();
+        String[] barcodes = new String[itemCount];
+        for (int i = 0; i < itemCount; i++) {
+            barcodes[i] = ean13("731" + String.format("%09d", i));
+            storage.insertItem(new Item(0, "Product " + i, BigDecimal.valueOf(995 + i % 5000, 2),
+                    new BigDecimal("12.00"), "Groceries", 100, barcodes[i]));
+        }
+        ProductDAO productDAO = new ProductDAO(storage);
+        productDAO.getAllProducts();
+
+        PriceLookupServer server = new PriceLookupServer(productDAO, new InetSocketAddress("127.0.0.1", 0));
+        server.start();
+        try {
+            InetSocketAddress address = new InetSocketAddress("127.0.0.1", server.getPort());
+            long deadline = System.nanoTime() + seconds * 1_000_000_000L;
+            AtomicLong errors = new AtomicLong();
+            List<Client> clients = new ArrayList<>();
+            for (int i = 0; i < connections; i++) {
+                Client client = new Client(address, depth, barcodes, deadline, errors);
+                clients.add(client);
+                client.start();
+            }
+
+            long lookups = 0;
+            List<long[]> latencies = new ArrayList<>();
+            for (Client client : clients) {
+                client.join();
+                if (client.failure != null) {
+                    throw client.failure;
+                }
+                lookups += client.lookups;
+                latencies.add(Arrays.copyOf(client.batchNanos, client.batches));
+            }
+            long[] all = latencies.stream().flatMapToLong(Arrays::stream).sorted().toArray();
+
+            System.out.println(String.format("%d connections, %d pipelined requests per batch, %d items",
+                    connections, depth, itemCount));
+            System.out.println(String.format("%d lookups in %d s: %.0f lookups/s, %d errors",
+                    lookups, seconds, (double) lookups / seconds, errors.get()));
+            if (all.length > 0) {
+                System.out.println(String.format("Batch round trip: p50 %.3f ms, p99 %.3f ms, max %.3f ms",
+                        all[all.length / 2] / 1e6, all[(int) (all.length * 0.99)] / 1e6, all[all.length - 1] / 1e6));
+            }
+        } finally {
+            server.stop();
+        }
+    }
+
+    /**
+     * Appends the GS1 check digit to twelve digits.
+     */
+    private static String ean13(String digits) {
+        int sum = 0;
+        for (int i = 0; i < digits.length(); i++) {
+            int digit = digits.charAt(i) - '0';
+            sum += i % 2 == 0 ? digit : digit * 3;
+        }
+        return digits + (10 - sum % 10) % 10;
+    }
+
+    /**
+     * One keep-alive connection sending pipelined batches until the deadline.
+     */
+    private static final class Client extends Thread {
+        private final InetSocketAddress address;
+        private final int depth;
+        private final String[] barcodes;
+        private final long deadline;
+        private final AtomicLong errors;
+        private final ByteBuffer in = ByteBuffer.allocate(256 * 1024);
+        private long[] batchNanos = new long[1024];
+        private int batches;
+        private long lookups;
+        private Exception failure;
+
+        Client(InetSocketAddress address, int depth, String[] barcodes, long deadline, AtomicLong errors) {
+            super("price-lookup-client");
+            this.address = address;
+            this.depth = depth;
+            this.barcodes = barcodes;
+            this.deadline = deadline;
+            this.errors = errors;
+        }
+
+        @Override
+        public void run() {
+            try (SocketChannel channel = SocketChannel.open(address)) {
+                channel.setOption(StandardSocketOptions.TCP_NODELAY, true);
+                ThreadLocalRandom random = ThreadLocalRandom.current();
+                StringBuilder batch = new StringBuilder(depth * 64);
+                while (System.nanoTime() < deadline) {
+                    batch.setLength(0);
+                    for (int i = 0; i < depth; i++) {
+                        int pick = random.nextInt(100);
+                        int item = random.nextInt(barcodes.length);
+                        if (pick < 80) {
+                            batch.append("GET /price?barcode=").append(barcodes[item]);
+                        } else if (pick < 95) {
+                            batch.append("GET /price?id=").append(item + 1);
+                        } else {
+                            batch.append("GET /search?name=Product+").append(item).append("&limit=5");
+                        }
+                        batch.append(" HTTP/1.1\r\nHost: localhost\r\n\r\n");
+                    }
+
+                    long start = System.nanoTime();
+                    ByteBuffer out = ByteBuffer.wrap(batch.toString().getBytes(StandardCharsets.ISO_8859_1));
+                    while (out.hasRemaining()) {
+                        channel.write(out);
+                    }
+                    for (int i = 0; i < depth; i++) {
+                        if (readResponse(channel) != 200) {
+                            errors.incrementAndGet();
+                        }
+                    }
+                    if (batches == batchNanos.length) {
+                        batchNanos = Arrays.copyOf(batchNanos, batches * 2);
+                    }
+                    batchNanos[batches++] = System.nanoTime() - start;
+                    lookups += depth;
+                }
+            } catch (Exception e) {
+                failure = e;
+            }
+        }
+
+        /**
+         * Reads one response and returns its status.
+         */
+        private int readResponse(SocketChannel channel) throws IOException {
+            int headEnd;
+            while ((headEnd = headEnd()) < 0) {
+                fill(channel);
+            }
+            // Includes the line break of the last header
+            String head = new String(in.array(), 0, headEnd + 2, StandardCharsets.ISO_8859_1);
+            int status = Integer.parseInt(head.substring(9, 12));
+            int lengthStart = head.indexOf("Content-Length: ") + "Content-Length: ".length();
+            int contentLength = Integer.parseInt(head.substring(lengthStart, head.indexOf("\r\n", lengthStart)));
+            int total = headEnd + 4 + contentLength;
+            while (in.position() < total) {
+                fill(channel);
+            }
+            in.flip();
+            in.position(total);
+            in.compact();
+            return status;
+        }
+
+        private int headEnd() {
+            byte[] bytes = in.array();
+            for (int i = 0; i + 3 < in.position(); i++) {
+                if (bytes[i] == '\r' && bytes[i + 1] == '\n' && bytes[i + 2] == '\r' && bytes[i + 3] == '\n') {
+                    return i;
+                }
+            }
+            return -1;
+        }
+
+        private void fill(SocketChannel channel) throws IOException {
+            if (channel.read(in) < 0) {
+                throw new EOFException("Server closed the connection");
+            }
+        }
+    }
+}
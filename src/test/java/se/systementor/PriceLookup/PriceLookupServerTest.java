@@ -0,0 +1,135 @@
+package se.systementor.PriceLookup;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import se.systementor.DatabaseConnect.InMemoryStorage;
+import se.systementor.Services.ProductDAO;
+import se.systementor.model.Item;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.math.BigDecimal;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class PriceLookupServerTest {
+
+    private PriceLookupServer server;
+
+    private static ProductDAO catalog(InMemoryStorage storage) {
+        storage.insertItem(new Item(0, "Milk", new BigDecimal("10.00"), new BigDecimal("12.00"), "Dairy", 5, "7310865004703"));
+        ProductDAO productDAO = new ProductDAO(storage);
+        productDAO.getAllProducts();
+        return productDAO;
+    }
+
+    private Socket connect(ProductDAO productDAO) throws IOException {
+        if (server == null) {
+            server = new PriceLookupServer(productDAO, new InetSocketAddress("127.0.0.1", 0));
+            server.start();
+        }
+        Socket socket = new Socket("127.0.0.1", server.getPort());
+        socket.setSoTimeout(5000);
+        return socket;
+    }
+
+    @AfterEach
+    void stopServer() {
+        if (server != null) {
+            server.stop();
+        }
+    }
+
+    private static void send(Socket socket, String... targets) throws IOException {
+        StringBuilder requests = new StringBuilder();
+        for (String target : targets) {
+            requests.append("GET ").append(target).append(" HTTP/1.1\r\nHost: localhost\r\n\r\n");
+        }
+        socket.getOutputStream().write(requests.toString().getBytes(StandardCharsets.ISO_8859_1));
+    }
+
+    /**
+     * Reads one response and returns its status line and body.
+     */
+    private static String[] readResponse(InputStream in) throws IOException {
+        ByteArrayOutputStream head = new ByteArrayOutputStream();
+        while (!head.toString("ISO-8859-1").endsWith("\r\n\r\n")) {
+            int b = in.read();
+            if (b < 0) {
+                throw new IOException("Connection closed");
+            }
+            head.write(b);
+        }
+        String text = head.toString("ISO-8859-1");
+        int lengthStart = text.indexOf("Content-Length: ") + "Content-Length: ".length();
+        int length = Integer.parseInt(text.substring(lengthStart, text.indexOf("\r\n", lengthStart)));
+        byte[] body = new byte[length];
+        for (int read = 0; read < length; ) {
+            int n = in.read(body, read, length - read);
+            if (n < 0) {
+                throw new IOException("Connection closed");
+            }
+            read += n;
+        }
+        return new String[] {text.substring(0, text.indexOf("\r\n")), new String(body, StandardCharsets.UTF_8)};
+    }
+
+    @Test
+    void answersPipelinedRequestsInOrderOnOneConnection() throws IOException {
+        ProductDAO productDAO = catalog(new InMemoryStorage());
+        try (Socket socket = connect(productDAO)) {
+            send(socket, "/price?barcode=7310865004703", "/nowhere", "/search?name=mil&limit=5");
+            InputStream in = socket.getInputStream();
+
+            String[] price = readResponse(in);
+            assertEquals("HTTP/1.1 200 OK", price[0]);
+            assertTrue(price[1].contains("\"priceWithVat\":11.20"), price[1]);
+            assertEquals("HTTP/1.1 404 Not Found", readResponse(in)[0]);
+            String[] search = readResponse(in);
+            assertEquals("HTTP/1.1 200 OK", search[0]);
+            assertTrue(search[1].startsWith("[{\"id\":1,\"name\":\"Milk\""), search[1]);
+        }
+    }
+
+    @Test
+    void malformedEncodingIsABadRequestAndTheServerKeepsServing() throws IOException {
+        ProductDAO productDAO = catalog(new InMemoryStorage());
+        try (Socket socket = connect(productDAO)) {
+            send(socket, "/price?barcode=%zz", "/price?id=1");
+            InputStream in = socket.getInputStream();
+
+            assertEquals("HTTP/1.1 400 Bad Request", readResponse(in)[0]);
+            assertEquals("HTTP/1.1 200 OK", readResponse(in)[0]);
+        }
+        try (Socket socket = connect(productDAO)) {
+            send(socket, "/price?id=1");
+            assertEquals("HTTP/1.1 200 OK", readResponse(socket.getInputStream())[0]);
+        }
+    }
+
+    @Test
+    void failingLookupClosesOnlyItsConnection() throws IOException {
+        ProductDAO failing = new ProductDAO(new InMemoryStorage()) {
+            @Override
+            public List<Item> searchCachedProducts(String query, int limit) {
+                throw new IllegalStateException("broken catalog");
+            }
+        };
+        try (Socket socket = connect(failing)) {
+            send(socket, "/search?name=milk");
+            InputStream in = socket.getInputStream();
+            assertEquals("HTTP/1.1 500 Internal Server Error", readResponse(in)[0]);
+            assertEquals(-1, in.read());
+        }
+        try (Socket socket = connect(failing)) {
+            send(socket, "/price?id=1");
+            assertEquals("HTTP/1.1 404 Not Found", readResponse(socket.getInputStream())[0]);
+        }
+    }
+}
@@ -0,0 +1,157 @@
+package se.systementor.Promotions;
+
+import org.junit.jupiter.api.Test;
+import se.systementor.model.Item;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class BasketTest {
+    private static final Set<Integer> NO_PRODUCTS = Collections.emptySet();
+    private static final Set<String> NO_CATEGORIES = Collections.emptySet();
+
+    private static Item item(int id, String price, String category) {
+        return new Item(id, "Item " + id, new BigDecimal(price), new BigDecimal("12.00"), category, 10, "code" + id);
+    }
+
+    private static Set<Integer> products(Integer... ids) {
+        return new HashSet<>(Arrays.asList(ids));
+    }
+
+    private static Basket basket(PromotionRule... rules) {
+        return PromotionEngine.compile(Arrays.asList(rules)).newBasket();
+    }
+
+    @Test
+    void multiBuyMakesTheCheapestItemOfEachGroupFree() {
+        Basket basket = basket(PromotionRule.multiBuy(1, "3 för 2", products(1, 2, 3), NO_CATEGORIES, 3, 2));
+        basket.addLine(item(1, "10.00", "Snacks"), 1);
+        basket.addLine(item(2, "20.00", "Snacks"), 1);
+        assertEquals(0, basket.getTotalDiscount().signum());
+
+        basket.addLine(item(3, "30.00", "Snacks"), 1);
+        assertEquals(new BigDecimal("10.00"), basket.getTotalDiscount());
+    }
+
+    @Test
+    void percentDiscountTargetsACategory() {
+        Basket basket = basket(PromotionRule.percentDiscount(1, "20% mejeri", NO_PRODUCTS,
+                Collections.singleton("Dairy"), new BigDecimal("20")));
+        basket.addLine(item(1, "12.50", "Dairy"), 2);
+        basket.addLine(item(2, "25.00", "Bakery"), 1);
+        assertEquals(new BigDecimal("5.00"), basket.getTotalDiscount());
+    }
+
+    @Test
+    void mixAndMatchPricesCompleteBundles() {
+        Basket basket = basket(PromotionRule.mixAndMatch(1, "3 för 50", products(1, 2), NO_CATEGORIES, 3, new BigDecimal("50")));
+        basket.addLine(item(1, "20.00", "Snacks"), 2);
+        basket.addLine(item(2, "20.00", "Snacks"), 2);
+        assertEquals(new BigDecimal("10.00"), basket.getTotalDiscount());
+    }
+
+    @Test
+    void removingALineWithdrawsItsDiscount() {
+        Basket basket = basket(PromotionRule.multiBuy(1, "2 för 1", products(1), NO_CATEGORIES, 2, 1));
+        basket.addLine(item(1, "10.00", "Snacks"), 1);
+        int line = basket.addLine(item(1, "10.00", "Snacks"), 1);
+        assertEquals(new BigDecimal("10.00"), basket.getTotalDiscount());
+
+        assertTrue(basket.removeLine(line));
+        assertEquals(0, basket.getTotalDiscount().signum());
+        assertTrue(basket.getDiscounts().isEmpty());
+    }
+
+    @Test
+    void stackedDiscountsNeverExceedTheLineValue() {
+        Basket basket = basket(
+                PromotionRule.percentDiscount(1, "Gratis", products(1), NO_CATEGORIES, new BigDecimal("100")),
+                PromotionRule.multiBuy(2, "3 för 2", products(1), NO_CATEGORIES, 3, 2));
+        basket.addLine(item(1, "10.00", "Snacks"), 3);
+        basket.addLine(item(2, "5.00", "Snacks"), 1);
+
+        assertEquals(new BigDecimal("30.00"), basket.getTotalDiscount());
+        List<AppliedDiscount> discounts = basket.getDiscounts();
+        assertEquals(1, discounts.size());
+        assertEquals(1, discounts.get(0).getPromotionId());
+    }
+
+    @Test
+    void stackedDiscountsShareTheLineValueInPromotionOrder() {
+        Basket basket = basket(
+                PromotionRule.percentDiscount(1, "50%", products(1), NO_CATEGORIES, new BigDecimal("50")),
+                PromotionRule.multiBuy(2, "2 för 1", products(1), NO_CATEGORIES, 2, 1));
+        basket.addLine(item(1, "10.00", "Snacks"), 2);
+
+        // 50% takes 10.00, leaving 10.00 for the 2-for-1 that would give another 10.00
+        assertEquals(new BigDecimal("20.00"), basket.getTotalDiscount());
+        basket.addLine(item(1, "10.00", "Snacks"), 1);
+        assertEquals(new BigDecimal("25.00"), basket.getTotalDiscount());
+    }
+
+    @Test
+    void clearRemovesAllDiscounts() {
+        Basket basket = basket(PromotionRule.multiBuy(1, "2 för 1", products(1), NO_CATEGORIES, 2, 1));
+        basket.addLine(item(1, "10.00", "Snacks"), 2);
+        basket.clear();
+        assertTrue(basket.isEmpty());
+        assertEquals(0, basket.getTotalDiscount().signum());
+    }
+
+    @Test
+    void discountsAreComputedOnceUntilTheBasketChanges() {
+        Basket basket = basket(PromotionRule.multiBuy(1, "2 för 1", products(1), NO_CATEGORIES, 2, 1));
+        basket.addLine(item(1, "10.00", "Snacks"), 2);
+        List<AppliedDiscount> discounts = basket.getDiscounts();
+        assertSame(discounts, basket.getDiscounts());
+
+        basket.addLine(item(2, "5.00", "Snacks"), 1);
+        assertEquals(discounts.get(0).getAmount(), basket.getDiscounts().get(0).getAmount());
+    }
+
+    @Test
+    void incrementalGrantsMatchABasketBuiltFromScratch() {
+        PromotionRule[] rules = {
+                PromotionRule.percentDiscount(1, "30%", products(1, 2), NO_CATEGORIES, new BigDecimal("30")),
+                PromotionRule.multiBuy(2, "3 för 2", products(2, 3), NO_CATEGORIES, 3, 2),
+                PromotionRule.mixAndMatch(3, "2 för 5", products(1, 3, 4), NO_CATEGORIES, 2, new BigDecimal("5")),
+                PromotionRule.percentDiscount(4, "90% snacks", NO_PRODUCTS, Collections.singleton("Snacks"), new BigDecimal("90"))
+        };
+        Random random = new Random(42);
+        Basket basket = basket(rules);
+        List<int[]> lines = new ArrayList<>();
+        for (int step = 0; step < 500; step++) {
+            if (!lines.isEmpty() && random.nextInt(3) == 0) {
+                int[] removed = lines.remove(random.nextInt(lines.size()));
+                assertTrue(basket.removeLine(removed[0]));
+            } else {
+                int product = 1 + random.nextInt(5);
+                int quantity = 1 + random.nextInt(3);
+                lines.add(new int[] {basket.addLine(item(product, "7.35", "Snacks"), quantity), product, quantity});
+            }
+
+            Basket fresh = basket(rules);
+            for (int[] line : lines) {
+                fresh.addLine(item(line[1], "7.35", "Snacks"), line[2]);
+            }
+            assertEquals(fresh.getTotalDiscount(), basket.getTotalDiscount(), "step " + step);
+            List<AppliedDiscount> expected = fresh.getDiscounts();
+            List<AppliedDiscount> actual = basket.getDiscounts();
+            assertEquals(expected.size(), actual.size(), "step " + step);
+            for (int i = 0; i < expected.size(); i++) {
+                assertEquals(expected.get(i).getPromotionId(), actual.get(i).getPromotionId());
+                assertEquals(expected.get(i).getAmount(), actual.get(i).getAmount());
+            }
+        }
+    }
+}
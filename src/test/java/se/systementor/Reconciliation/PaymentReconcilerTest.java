@@ -0,0 +1,81 @@
+package se.systementor.Reconciliation;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import se.systementor.DatabaseConnect.InMemoryStorage;
+
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class PaymentReconcilerTest {
+
+    @TempDir
+    Path spillDirectory;
+
+    private ReconciliationReport reconcile(InMemoryStorage storage) {
+        return new PaymentReconciler(storage, 4, 2, spillDirectory).reconcile(LocalDate.now());
+    }
+
+    @Test
+    void matchingPaymentsReconcile() {
+        InMemoryStorage storage = new InMemoryStorage();
+        int paid = storage.createOrder(100, 12);
+        storage.recordPayment(paid, "c-1", "card", 112, true);
+        int split = storage.createOrder(50, 6);
+        storage.recordPayment(split, "c-2", "cash", 20, true);
+        storage.recordPayment(split, "c-2", "card", 36, true);
+
+        ReconciliationReport report = reconcile(storage);
+
+        assertTrue(report.isReconciled());
+        assertTrue(report.isComplete());
+        assertEquals(2, report.getOrderCount());
+        assertEquals(3, report.getPaymentCount());
+        assertEquals(2, report.getMatchedCount());
+    }
+
+    @Test
+    void reportsEveryKindOfDiscrepancy() {
+        InMemoryStorage storage = new InMemoryStorage();
+        int unpaid = storage.createOrder(10, 1.2);
+        storage.recordPayment(unpaid, "c-1", "card", 11.2, false);
+        int underpaid = storage.createOrder(100, 12);
+        storage.recordPayment(underpaid, "c-2", "card", 100, true);
+        storage.recordPayment(0, "c-3", "cash", 5, true);
+        storage.recordPayment(9999, "c-4", "card", 7, true);
+
+        ReconciliationReport report = reconcile(storage);
+
+        assertFalse(report.isReconciled());
+        assertEquals(0, report.getMatchedCount());
+        Map<Discrepancy.Type, Discrepancy> byType = new HashMap<>();
+        Map<Integer, Discrepancy> orphans = new HashMap<>();
+        for (Discrepancy discrepancy : report.getDiscrepancies()) {
+            if (discrepancy.getType() == Discrepancy.Type.PAYMENT_WITHOUT_ORDER) {
+                orphans.put(discrepancy.getOrderId(), discrepancy);
+            } else {
+                byType.put(discrepancy.getType(), discrepancy);
+            }
+        }
+        assertEquals(4, report.getDiscrepancies().size());
+
+        Discrepancy missing = byType.get(Discrepancy.Type.ORDER_WITHOUT_PAYMENT);
+        assertEquals(unpaid, missing.getOrderId());
+        assertEquals(1120, missing.getOrderCents());
+
+        Discrepancy mismatch = byType.get(Discrepancy.Type.AMOUNT_MISMATCH);
+        assertEquals(underpaid, mismatch.getOrderId());
+        assertEquals(11200, mismatch.getOrderCents());
+        assertEquals(10000, mismatch.getPaidCents());
+
+        assertEquals(500, orphans.get(0).getPaidCents());
+        assertTrue(orphans.get(0).getPaymentId() > 0);
+        assertEquals(700, orphans.get(9999).getPaidCents());
+    }
+}
@@ -0,0 +1,66 @@
+package se.systementor.Scanner;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class BarcodeTest {
+
+    /**
+     * Appends the GS1 check digit to the digits.
+     */
+    private static String withCheckDigit(String digits) {
+        for (char check = '0'; check <= '9'; check++) {
+            if (Barcode.hasValidCheckDigit(digits + check)) {
+                return digits + check;
+            }
+        }
+        throw new AssertionError("No check digit for " + digits);
+    }
+
+    @Test
+    void recognizesFormatsByLength() {
+        assertEquals(Barcode.Format.EAN_8, Barcode.parse("96385074").getFormat());
+        assertEquals(Barcode.Format.UPC_A, Barcode.parse("036000291452").getFormat());
+        Barcode ean13 = Barcode.parse("4006381333931");
+        assertEquals(Barcode.Format.EAN_13, ean13.getFormat());
+        assertEquals("4006381333931", ean13.getLookupKey());
+        assertFalse(ean13.hasEmbeddedPrice());
+        assertFalse(ean13.hasEmbeddedWeight());
+    }
+
+    @Test
+    void checksTheCheckDigit() {
+        assertTrue(Barcode.hasValidCheckDigit("4006381333931"));
+        assertFalse(Barcode.hasValidCheckDigit("4006381333932"));
+        assertThrows(IllegalArgumentException.class, () -> Barcode.parse("4006381333932"));
+    }
+
+    @Test
+    void rejectsMalformedCodes() {
+        assertThrows(IllegalArgumentException.class, () -> Barcode.parse(null));
+        assertThrows(IllegalArgumentException.class, () -> Barcode.parse("12345"));
+        assertThrows(IllegalArgumentException.class, () -> Barcode.parse("40063813339A1"));
+    }
+
+    @Test
+    void readsPriceFromVariableMeasureCode() {
+        Barcode barcode = Barcode.parse(withCheckDigit("210123401995"));
+        assertEquals("2101234", barcode.getLookupKey());
+        assertTrue(barcode.hasEmbeddedPrice());
+        assertEquals(1995, barcode.getEmbeddedPriceCents());
+        assertEquals(-1, barcode.getEmbeddedWeightGrams());
+    }
+
+    @Test
+    void readsWeightFromVariableMeasureCode() {
+        Barcode barcode = Barcode.parse(withCheckDigit("250123400750"));
+        assertEquals("2501234", barcode.getLookupKey());
+        assertTrue(barcode.hasEmbeddedWeight());
+        assertEquals(750, barcode.getEmbeddedWeightGrams());
+        assertEquals(-1, barcode.getEmbeddedPriceCents());
+    }
+}
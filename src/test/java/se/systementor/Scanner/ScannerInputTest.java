@@ -0,0 +1,165 @@
+package se.systementor.Scanner;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import javax.swing.JTextField;
+import java.awt.event.KeyEvent;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ScannerInputTest {
+
+    private static final long MAX_GAP_MILLIS = 30;
+
+    private final BlockingQueue<String> scans = new LinkedBlockingQueue<>();
+    private ScannerInput scanner;
+
+    @BeforeEach
+    void startScanner() {
+        scanner = new ScannerInput(new ScanListener() {
+            @Override
+            public void onScan(Barcode barcode) {
+                scans.add(barcode.getCode());
+            }
+
+            @Override
+            public void onInvalidScan(String code, String reason) {
+                scans.add("invalid " + code);
+            }
+        }, MAX_GAP_MILLIS);
+        scanner.start();
+    }
+
+    @AfterEach
+    void stopScanner() {
+        scanner.stop();
+    }
+
+    /**
+     * Types the characters of a string, the given number of milliseconds apart, starting at a time.
+     */
+    private long type(String text, long startMillis, long gapMillis) {
+        long when = startMillis;
+        for (char c : text.toCharArray()) {
+            scanner.type(c, when);
+            when += gapMillis;
+        }
+        return when;
+    }
+
+    private String nextScan() throws InterruptedException {
+        return scans.poll(2, TimeUnit.SECONDS);
+    }
+
+    private String noScan() throws InterruptedException {
+        return scans.poll(MAX_GAP_MILLIS * 5, TimeUnit.MILLISECONDS);
+    }
+
+    @Test
+    void assemblesABurstEndedByEnter() throws InterruptedException {
+        type("4006381333931\n", 1000, 2);
+
+        assertEquals("4006381333931", nextScan());
+        assertNull(noScan());
+    }
+
+    @Test
+    void tabEndsABurstToo() throws InterruptedException {
+        type("96385074\t", 1000, 2);
+
+        assertEquals("96385074", nextScan());
+    }
+
+    @Test
+    void burstWithoutTerminatorEndsWhenTheScannerGoesQuiet() throws InterruptedException {
+        type("96385074", 1000, 2);
+
+        assertEquals("96385074", nextScan());
+    }
+
+    @Test
+    void charactersTooFarApartAreNotAScan() throws InterruptedException {
+        // A person typing: every character starts a new burst
+        type("4006381333931\n", 1000, MAX_GAP_MILLIS + 20);
+
+        assertNull(noScan());
+    }
+
+    @Test
+    void aPauseStartsANewBurst() throws InterruptedException {
+        long when = type("123456", 1000, 2);
+        type("4006381333931\n", when + MAX_GAP_MILLIS + 100, 2);
+
+        assertEquals("4006381333931", nextScan());
+        assertNull(noScan());
+    }
+
+    @Test
+    void shortBurstsAreIgnoredAndBadCheckDigitsReported() throws InterruptedException {
+        long when = type("12345\n", 1000, 2);
+        type("4006381333932\n", when + 1000, 2);
+
+        assertEquals("invalid 4006381333932", nextScan());
+        assertNull(noScan());
+    }
+
+    private static KeyEvent typed(JTextField field, char c, long when) {
+        return new KeyEvent(field, KeyEvent.KEY_TYPED, when, 0, KeyEvent.VK_UNDEFINED, c);
+    }
+
+    private static KeyEvent pressed(JTextField field, int keyCode, long when) {
+        return new KeyEvent(field, KeyEvent.KEY_PRESSED, when, 0, keyCode, KeyEvent.CHAR_UNDEFINED);
+    }
+
+    /**
+     * Dispatches a typed character the way the focus manager does: when the scanner does not take it,
+     * it reaches the field.
+     */
+    private boolean dispatch(JTextField field, char c, long when) {
+        boolean taken = scanner.dispatchKeyEvent(typed(field, c, when));
+        if (!taken && c != '\n') {
+            field.replaceSelection(String.valueOf(c));
+            // Without a display the caret does not follow the insert by itself
+            field.setCaretPosition(field.getDocument().getLength());
+        }
+        return taken;
+    }
+
+    @Test
+    void typingIntoAFocusedFieldIsLeftAlone() throws InterruptedException {
+        JTextField field = new JTextField();
+
+        assertFalse(dispatch(field, '1', 1000));
+        assertFalse(dispatch(field, '2', 1200));
+        assertFalse(scanner.dispatchKeyEvent(pressed(field, KeyEvent.VK_ENTER, 1300)));
+        assertFalse(dispatch(field, '\n', 1300));
+
+        assertEquals("12", field.getText());
+        assertNull(noScan());
+    }
+
+    @Test
+    void scanIntoAFocusedFieldIsTakenOutOfTheField() throws InterruptedException {
+        JTextField field = new JTextField();
+        dispatch(field, '3', 500);
+
+        long when = 2000;
+        for (char c : "4006381333931".toCharArray()) {
+            dispatch(field, c, when);
+            when += 2;
+        }
+        assertTrue(scanner.dispatchKeyEvent(pressed(field, KeyEvent.VK_ENTER, when)));
+        assertTrue(dispatch(field, '\n', when));
+
+        assertEquals("3", field.getText());
+        assertEquals("4006381333931", nextScan());
+    }
+}
@@ -0,0 +1,104 @@
+package se.systementor.Services;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import se.systementor.Audit.AuditLog;
+import se.systementor.Promotions.AppliedDiscount;
+import se.systementor.Reconciliation.Discrepancy;
+import se.systementor.Reconciliation.PaymentReconciler;
+import se.systementor.Reconciliation.ReconciliationReport;
+
+import java.math.BigDecimal;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class CheckoutServiceTest {
+
+    @TempDir
+    Path directory;
+
+    private AuditLog auditLog;
+    private RecordingStorage storage;
+    private CheckoutService checkout;
+
+    @BeforeEach
+    void setUp() {
+        auditLog = new AuditLog(directory.resolve("audit.jsonl"), 64, 1024 * 1024, 1);
+        storage = new RecordingStorage();
+        checkout = new CheckoutService(new OrderDAO(storage, auditLog), new PaymntService(storage, auditLog));
+    }
+
+    @AfterEach
+    void closeAuditLog() {
+        auditLog.close(5000);
+    }
+
+    @Test
+    void storesThePaymentAndDiscountsWithTheNewOrder() {
+        List<AppliedDiscount> discounts = Collections.singletonList(
+                new AppliedDiscount(3, "10% off dairy", new BigDecimal("2.50"), new BigDecimal("12.00")));
+
+        CheckoutService.Result result = checkout.checkout(new BigDecimal("22.50"), new BigDecimal("2.70"), "Cash", discounts);
+
+        assertEquals(CheckoutService.Status.COMPLETED, result.getStatus());
+        assertTrue(result.hasOrder());
+        assertEquals(1, storage.payments.size());
+        RecordingStorage.StoredPayment payment = storage.payments.get(0);
+        assertEquals(result.getOrderId(), payment.orderId);
+        assertEquals(25.20, payment.amount, 0.001);
+        assertTrue(payment.success);
+        assertEquals(1, storage.getOrderDiscounts(result.getOrderId()).size());
+
+        ReconciliationReport report = new PaymentReconciler(storage, 4, 2, directory).reconcile(LocalDate.now());
+        assertTrue(report.isReconciled(), report.toString());
+    }
+
+    @Test
+    void paymentIsKeptWithoutAnOrderWhenTheOrderCannotBeCreated() {
+        storage.failOrders = true;
+
+        CheckoutService.Result result = checkout.checkout(new BigDecimal("100.00"), new BigDecimal("25.00"), "creditcard",
+                Collections.<AppliedDiscount>emptyList());
+
+        assertEquals(CheckoutService.Status.ORDER_FAILED, result.getStatus());
+        assertFalse(result.hasOrder());
+        assertEquals(1, storage.payments.size());
+        RecordingStorage.StoredPayment payment = storage.payments.get(0);
+        assertEquals(0, payment.orderId);
+        assertEquals(125.00, payment.amount, 0.001);
+        assertEquals("creditcard", payment.method);
+        assertTrue(payment.success);
+
+        // The reconciliation flags the payment so the customer can be refunded
+        ReconciliationReport report = new PaymentReconciler(storage, 4, 2, directory).reconcile(LocalDate.now());
+        assertEquals(1, report.getDiscrepancies().size());
+        assertEquals(Discrepancy.Type.PAYMENT_WITHOUT_ORDER, report.getDiscrepancies().get(0).getType());
+    }
+
+    @Test
+    void reportsAPaymentThatCouldNotBeStored() {
+        RecordingStorage failing = new RecordingStorage() {
+            @Override
+            public boolean recordPayment(int orderId, String correlationId, String method, double amount, boolean success) {
+                super.recordPayment(orderId, correlationId, method, amount, success);
+                return false;
+            }
+        };
+        CheckoutService service = new CheckoutService(new OrderDAO(failing, auditLog), new PaymntService(failing, auditLog));
+
+        CheckoutService.Result result = service.checkout(new BigDecimal("10.00"), new BigDecimal("1.20"), "cash",
+                Collections.<AppliedDiscount>emptyList());
+
+        assertEquals(CheckoutService.Status.PAYMENT_NOT_STORED, result.getStatus());
+        assertTrue(result.hasOrder());
+        assertEquals(result.getOrderId(), failing.payments.get(0).orderId);
+    }
+}
@@ -0,0 +1,94 @@
+package se.systementor.Services;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import se.systementor.Audit.AuditLog;
+import se.systementor.DatabaseConnect.InMemoryStorage;
+
+import java.nio.file.Path;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class PaymntServiceTest {
+
+    @TempDir
+    Path directory;
+
+    private AuditLog auditLog;
+
+    @BeforeEach
+    void openAuditLog() {
+        auditLog = new AuditLog(directory.resolve("audit.jsonl"), 64, 1024 * 1024, 1);
+    }
+
+    @AfterEach
+    void closeAuditLog() {
+        auditLog.close(5000);
+    }
+
+    @Test
+    void reportsAPaymentThatCouldNotBeStored() {
+        InMemoryStorage failing = new InMemoryStorage() {
+            @Override
+            public boolean recordPayment(int orderId, String correlationId, String method, double amount, boolean success) {
+                return false;
+            }
+        };
+        PaymntService service = new PaymntService(failing, auditLog);
+
+        assertTrue(service.authorize(112, "creditcard", "c-1"));
+        assertFalse(service.recordPayment(1, 112, "creditcard", "c-1"));
+    }
+
+    @Test
+    void storesAnApprovedPaymentWithItsOrder() {
+        RecordingStorage storage = new RecordingStorage();
+        PaymntService service = new PaymntService(storage, auditLog);
+
+        assertTrue(service.authorize(112, "Cash", "c-1"));
+        assertTrue(storage.payments.isEmpty());
+        assertTrue(service.recordPayment(1, 112, "Cash", "c-1"));
+
+        assertEquals(1, storage.payments.size());
+        RecordingStorage.StoredPayment payment = storage.payments.get(0);
+        assertEquals(1, payment.orderId);
+        assertEquals(112, payment.amount, 0.001);
+        assertEquals("cash", payment.method);
+        assertEquals("c-1", payment.correlationId);
+        assertTrue(payment.success);
+    }
+
+    @Test
+    void processPaymentStoresThePaymentWithItsOrder() {
+        RecordingStorage storage = new RecordingStorage();
+        PaymntService service = new PaymntService(storage, auditLog);
+
+        assertTrue(service.processPayment(5, 49.90, "paypal", "c-2"));
+
+        assertEquals(1, storage.payments.size());
+        assertEquals(5, storage.payments.get(0).orderId);
+        assertEquals(49.90, storage.payments.get(0).amount, 0.001);
+        assertTrue(storage.payments.get(0).success);
+    }
+
+    @Test
+    void processPaymentRequiresAnOrder() {
+        RecordingStorage storage = new RecordingStorage();
+        PaymntService service = new PaymntService(storage, auditLog);
+
+        assertThrows(IllegalArgumentException.class, () -> service.processPayment(0, 10, "cash", "c-3"));
+        assertTrue(storage.payments.isEmpty());
+    }
+
+    @Test
+    void rejectsAnUnsupportedMethod() {
+        PaymntService service = new PaymntService(new InMemoryStorage(), auditLog);
+
+        assertThrows(IllegalArgumentException.class, () -> service.authorize(10, "cheque", "c-1"));
+    }
+}
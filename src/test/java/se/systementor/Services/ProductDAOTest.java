@@ -0,0 +1,58 @@
+package se.systementor.Services;
+
+import org.junit.jupiter.api.Test;
+import se.systementor.DatabaseConnect.InMemoryStorage;
+import se.systementor.model.CatalogDelta;
+import se.systementor.model.Item;
+
+import java.math.BigDecimal;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ProductDAOTest {
+
+    private static Item item(int number, String price) {
+        return new Item(0, "Product " + number, new BigDecimal(price), new BigDecimal("12.00"), "Groceries", 10,
+                "barcode-" + number);
+    }
+
+    @Test
+    void syncAfterLoadOnlyReturnsLaterChanges() {
+        InMemoryStorage storage = new InMemoryStorage();
+        storage.insertItem(item(1, "10.00"));
+        storage.insertItem(item(2, "20.00"));
+
+        ProductDAO dao = new ProductDAO(storage);
+        assertEquals(2, dao.getAllProducts().size());
+        assertEquals(storage.getCatalogVersion(), dao.getCatalogVersion());
+        assertTrue(dao.syncCatalog().isEmpty());
+
+        storage.insertItem(item(2, "25.00"));
+        CatalogDelta delta = dao.syncCatalog();
+        assertEquals(1, delta.getChangedItems().size());
+        assertEquals(0, new BigDecimal("25.00").compareTo(dao.getProductByBarcode("barcode-2").getPrice()));
+    }
+
+    @Test
+    void loadWhileTheCatalogChangesMissesNothing() throws InterruptedException {
+        InMemoryStorage storage = new InMemoryStorage();
+        int count = 5000;
+        Thread writer = new Thread(() -> {
+            for (int i = 0; i < count; i++) {
+                storage.insertItem(item(i, "1.00"));
+            }
+        });
+        writer.start();
+
+        ProductDAO dao = new ProductDAO(storage);
+        dao.getAllProducts();
+        writer.join();
+        dao.syncCatalog();
+
+        for (int i = 0; i < count; i++) {
+            assertNotNull(dao.getProductByBarcode("barcode-" + i), "missing item " + i);
+        }
+    }
+}
@@ -0,0 +1,104 @@
+package se.systementor.Services;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import se.systementor.Audit.AuditLog;
+import se.systementor.DatabaseConnect.InMemoryStorage;
+import se.systementor.Promotions.AppliedDiscount;
+import se.systementor.model.Item;
+import se.systementor.model.Order;
+import se.systementor.model.OrderDetails;
+
+import java.math.BigDecimal;
+import java.nio.file.Path;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ReceiptServiceTest {
+
+    @TempDir
+    Path directory;
+
+    private AuditLog auditLog;
+    private InMemoryStorage storage;
+    private OrderDAO orderDAO;
+    private int milkId;
+    private int breadId;
+
+    @BeforeEach
+    void setUp() {
+        auditLog = new AuditLog(directory.resolve("audit.jsonl"), 64, 1024 * 1024, 1);
+        storage = new InMemoryStorage();
+        storage.insertItem(new Item(0, "Milk", new BigDecimal("10.00"), new BigDecimal("12.00"), "Dairy", 10, "milk"));
+        storage.insertItem(new Item(0, "Bread", new BigDecimal("25.00"), new BigDecimal("12.00"), "Bakery", 10, "bread"));
+        milkId = 1;
+        breadId = 2;
+        orderDAO = new OrderDAO(storage, auditLog);
+    }
+
+    @AfterEach
+    void closeAuditLog() {
+        auditLog.close(5000);
+    }
+
+    /**
+     * Returns the amount printed after a label at the start of a receipt line.
+     */
+    private static String amountOn(String receipt, String label) {
+        for (String line : receipt.split("\n")) {
+            if (line.startsWith(label)) {
+                return line.substring(label.length()).trim();
+            }
+        }
+        throw new AssertionError("No line " + label + " in\n" + receipt);
+    }
+
+    private static String money(String amount) {
+        return String.format("%.2f", new BigDecimal(amount));
+    }
+
+    @Test
+    void reprintedLinesUseTheStoredLineTotal() {
+        // 3 x 10.00 + 1 x 25.00 = 55.00, VAT 12% = 6.60
+        int orderId = orderDAO.createOrder(55.00, 6.60);
+        orderDAO.addOrderItem(orderId, milkId, 3, 30.00);
+        orderDAO.addOrderItem(orderId, breadId, 1, 25.00);
+
+        OrderDetails details = orderDAO.getOrderWithItems(orderId);
+        assertNotNull(details);
+        String receipt = ReceiptService.generateReceipt(details);
+
+        assertTrue(receipt.contains(String.format("%-25s %3d x %10.2f = %10.2f", "Milk", 3, new BigDecimal("10.00"), new BigDecimal("30.00"))), receipt);
+        assertEquals(money("55.00"), amountOn(receipt, "Subtotal:"));
+        assertEquals(money("6.60"), amountOn(receipt, "Moms:"));
+        assertEquals(money("61.60"), amountOn(receipt, "Total:"));
+    }
+
+    @Test
+    void reprintMatchesTheStoredOrderTotalWithDiscounts() {
+        // 3 x 10.00 with 5.00 off: 25.00 excluding VAT, 3.00 VAT
+        int orderId = orderDAO.createOrder(25.00, 3.00);
+        orderDAO.addOrderItem(orderId, milkId, 3, 30.00);
+        List<AppliedDiscount> discounts = Collections.singletonList(
+                new AppliedDiscount(7, "3 for 2 on milk", new BigDecimal("5.00"), new BigDecimal("12.00")));
+        assertTrue(orderDAO.addOrderDiscounts(orderId, discounts));
+
+        OrderDetails details = orderDAO.getOrderWithItems(orderId);
+        assertNotNull(details);
+        assertEquals(1, details.getDiscounts().size());
+        String receipt = ReceiptService.generateReceipt(details);
+
+        Order order = details.getOrder();
+        BigDecimal storedTotal = order.getTotalPrice().add(order.getTotalVat());
+        assertTrue(receipt.contains("Rabatt: 3 for 2 on milk"), receipt);
+        assertEquals(money("25.00"), amountOn(receipt, "Subtotal:"));
+        assertEquals(money("3.00"), amountOn(receipt, "Moms:"));
+        assertEquals(money(storedTotal.toPlainString()), amountOn(receipt, "Total:"));
+    }
+}
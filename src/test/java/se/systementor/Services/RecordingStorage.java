@@ -0,0 +1,42 @@
+package se.systementor.Services;
+
+import se.systementor.DatabaseConnect.InMemoryStorage;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * An in-memory storage that keeps every payment it is asked to record, declined ones included, and can
+ * be told to fail order creation.
+ */
+class RecordingStorage extends InMemoryStorage {
+    final List<StoredPayment> payments = new CopyOnWriteArrayList<>();
+    volatile boolean failOrders;
+
+    @Override
+    public int createOrder(double totalPrice, double totalVat) {
+        return failOrders ? -1 : super.createOrder(totalPrice, totalVat);
+    }
+
+    @Override
+    public boolean recordPayment(int orderId, String correlationId, String method, double amount, boolean success) {
+        payments.add(new StoredPayment(orderId, correlationId, method, amount, success));
+        return super.recordPayment(orderId, correlationId, method, amount, success);
+    }
+
+    static final class StoredPayment {
+        final int orderId;
+        final String correlationId;
+        final String method;
+        final double amount;
+        final boolean success;
+
+        StoredPayment(int orderId, String correlationId, String method, double amount, boolean success) {
+            this.orderId = orderId;
+            this.correlationId = correlationId;
+            this.method = method;
+            this.amount = amount;
+            this.success = success;
+        }
+    }
+}
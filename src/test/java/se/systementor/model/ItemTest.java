@@ -0,0 +1,22 @@
+package se.systementor.model;
+
+import org.junit.jupiter.api.Test;
+
+import java.math.BigDecimal;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class ItemTest {
+
+    @Test
+    void vatRatesArePercentages() {
+        assertEquals(0, new BigDecimal("12.00").compareTo(Item.vatOf(new BigDecimal("100.00"), new BigDecimal("12.00"))));
+        assertEquals(0, new BigDecimal("1.50").compareTo(Item.vatOf(new BigDecimal("12.50"), new BigDecimal("12.00"))));
+    }
+
+    @Test
+    void priceWithVatAddsThePercentage() {
+        Item milk = new Item(1, "Milk", new BigDecimal("12.50"), new BigDecimal("12.00"), "Dairy", 5, "123456789012");
+        assertEquals(0, new BigDecimal("14.00").compareTo(milk.getPriceWithVat()));
+    }
+}